@@ -0,0 +1,92 @@
+package com.twitter.finagle.easy.benchmarks;
+
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.twitter.finagle.easy.server.InboundServiceRequest;
+import com.twitter.finagle.easy.server.OutboundServiceResponse;
+import com.twitter.finagle.httpx.Request;
+
+/**
+ * Micro-benchmarks for building the Resteasy request/response adapters around
+ * Netty messages, which happens once per dispatched call.
+ *
+ * @author denis.rangel
+ */
+@State(Scope.Thread)
+public class AdapterBenchmark {
+
+	/**
+	 * Response body size in bytes
+	 */
+	@Param({ "1024", "51200" })
+	public int bodySize;
+
+	private Request getRequest;
+	private Request getRequestWithQuery;
+	private byte[] body;
+
+	@Setup
+	public void setUp() {
+		this.getRequest = Requests.get("/bench/items/7", MediaType.APPLICATION_JSON);
+		this.getRequestWithQuery = Requests.get("/bench/items?limit=5&sort=name", MediaType.APPLICATION_JSON);
+		this.body = new byte[this.bodySize];
+		Arrays.fill(this.body, (byte) 'x');
+	}
+
+	@Benchmark
+	public InboundServiceRequest newInboundRequest() {
+		return new InboundServiceRequest(this.getRequest);
+	}
+
+	@Benchmark
+	public InboundServiceRequest newInboundRequestWithQuery() {
+		return new InboundServiceRequest(this.getRequestWithQuery);
+	}
+
+	@Benchmark
+	public Object inboundRequestHeaderLookups() {
+		InboundServiceRequest request = new InboundServiceRequest(this.getRequest);
+		request.getHttpHeaders().getAcceptableMediaTypes();
+		request.getHttpHeaders().getMediaType();
+		return request.getUri().getPathSegments();
+	}
+
+	@Benchmark
+	public OutboundServiceResponse writeResponseHeaders() {
+		OutboundServiceResponse response = new OutboundServiceResponse(HTTP_1_1);
+		MultivaluedMap<String, Object> headers = response.getOutputHeaders();
+		headers.putSingle("Content-Type", MediaType.APPLICATION_JSON_TYPE);
+		headers.putSingle("Cache-Control", "max-age=60");
+		headers.add("X-Request-Id", "a4f1c3e2-9b8d-4e7f-a6b5-c4d3e2f1a0b9");
+		headers.getFirst("Content-Type");
+		headers.containsKey("Content-Encoding");
+		headers.size();
+		return response;
+	}
+
+	@Benchmark
+	public OutboundServiceResponse writeResponseBody() throws Exception {
+		OutboundServiceResponse response = new OutboundServiceResponse(HTTP_1_1);
+		response.getOutputHeaders().putSingle("Content-Type", MediaType.APPLICATION_JSON_TYPE);
+		OutputStream out = response.getOutputStream();
+		// Resteasy providers typically write through a buffered writer in
+		// chunks of a few KB
+		for (int offset = 0; offset < this.body.length; offset += 4096) {
+			out.write(this.body, offset, Math.min(4096, this.body.length - offset));
+		}
+		out.flush();
+		return response;
+	}
+}
@@ -0,0 +1,117 @@
+package com.twitter.finagle.easy.benchmarks;
+
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Resource used by the dispatch benchmarks. Every method is in-memory, so the
+ * measured cost is dominated by the adapter layer and Resteasy itself.
+ *
+ * @author denis.rangel
+ */
+@Path("/bench")
+public class BenchmarkResource {
+
+	private final List<Item> items;
+
+	public BenchmarkResource(int itemCount) {
+		ImmutableList.Builder<Item> builder = ImmutableList.builder();
+		for (int i = 0; i < itemCount; i++) {
+			builder.add(new Item(i, "item-" + i, i * 1.5));
+		}
+		this.items = builder.build();
+	}
+
+	@GET
+	@Path("/ping")
+	@Produces(MediaType.TEXT_PLAIN)
+	public String ping() {
+		return "pong";
+	}
+
+	@GET
+	@Path("/items")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<Item> getItems(@QueryParam("limit") Integer limit) {
+		return limit == null || limit >= this.items.size() ? this.items : this.items.subList(0, limit);
+	}
+
+	@GET
+	@Path("/items/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Item getItem(@PathParam("id") int id) {
+		return this.items.get(id % this.items.size());
+	}
+
+	/**
+	 * Stands in for a blocking downstream call (JDBC, HTTP)
+	 */
+	@GET
+	@Path("/slow")
+	@Produces(MediaType.TEXT_PLAIN)
+	public String slow(@QueryParam("millis") int millis) throws InterruptedException {
+		Thread.sleep(millis);
+		return "done";
+	}
+
+	@POST
+	@Path("/items")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.TEXT_PLAIN)
+	public String postItems(List<Item> posted) {
+		return Integer.toString(posted.size());
+	}
+
+	/**
+	 * Simple JSON-serializable bean
+	 */
+	public static class Item {
+
+		private int id;
+		private String name;
+		private double price;
+
+		public Item() {
+		}
+
+		public Item(int id, String name, double price) {
+			this.id = id;
+			this.name = name;
+			this.price = price;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public void setId(int id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public void setPrice(double price) {
+			this.price = price;
+		}
+	}
+}
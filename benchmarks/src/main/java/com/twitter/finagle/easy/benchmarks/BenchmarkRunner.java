@@ -0,0 +1,38 @@
+package com.twitter.finagle.easy.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks twice: once in throughput mode (reported in ops/s) and
+ * once in sampling mode (reported in us/op, including p50/p99/p999), both with
+ * the GC profiler attached so every result carries
+ * {@code gc.alloc.rate.norm} (bytes allocated per operation).
+ *
+ * Usage: {@code java -jar target/benchmarks.jar [regexp]}; without arguments
+ * every benchmark in this module runs. For anything fancier, use
+ * {@code java -cp target/benchmarks.jar org.openjdk.jmh.Main} directly.
+ *
+ * @author denis.rangel
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+		new Runner(options(include).mode(Mode.Throughput).timeUnit(TimeUnit.SECONDS).build()).run();
+		new Runner(options(include).mode(Mode.SampleTime).timeUnit(TimeUnit.MICROSECONDS).build()).run();
+	}
+
+	private static ChainedOptionsBuilder options(String include) {
+		return new OptionsBuilder().include(include).addProfiler(GCProfiler.class).warmupIterations(5)
+				.measurementIterations(10).forks(1);
+	}
+}
@@ -0,0 +1,93 @@
+package com.twitter.finagle.easy.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.collect.Lists;
+import com.twitter.finagle.easy.server.AccessLog;
+import com.twitter.finagle.easy.server.ResteasyFinagleService;
+import com.twitter.finagle.easy.server.ServiceBuilder;
+import com.twitter.finagle.easy.server.VirtualThreadExecutor;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+import com.twitter.util.Future;
+
+/**
+ * Fires a burst of concurrent requests at a resource that blocks (standing in
+ * for JDBC or downstream HTTP calls) and waits for all of them, comparing a
+ * fixed pool of platform threads with one virtual thread per request (see
+ * {@link ServiceBuilder#withVirtualThreads(int)}). Throughput is reported per
+ * request; {@code executor=virtual} needs Java 21 or later.
+ *
+ * @author denis.rangel
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BlockingDispatchBenchmark {
+
+	private static final int CONCURRENCY = 10000;
+
+	@Param({ "pool", "virtual" })
+	public String executor;
+
+	@Param({ "200" })
+	public int poolSize;
+
+	@Param({ "20" })
+	public int blockMillis;
+
+	private ResteasyFinagleService service;
+	private String uri;
+
+	@Setup
+	public void setUp() {
+		ServiceBuilder builder = ServiceBuilder.get().withEndpoint(new BenchmarkResource(10))
+				.withAccessLog(AccessLog.disabled());
+		if ("virtual".equals(this.executor)) {
+			if (!VirtualThreadExecutor.isSupported()) {
+				throw new IllegalStateException("virtual threads need Java 21 or later");
+			}
+			builder.withVirtualThreads(CONCURRENCY);
+		} else {
+			builder.withThreadPoolSize(this.poolSize);
+		}
+		this.service = builder.build();
+		this.uri = "/bench/slow?millis=" + this.blockMillis;
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		Await.result(this.service.close());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CONCURRENCY)
+	public int burst() throws Exception {
+		List<Future<Response>> responses = Lists.newArrayListWithCapacity(CONCURRENCY);
+		for (int i = 0; i < CONCURRENCY; i++) {
+			responses.add(this.service.apply(Requests.get(this.uri, MediaType.TEXT_PLAIN)));
+		}
+		int ok = 0;
+		for (Future<Response> response : responses) {
+			if (Await.result(response).getStatus().getCode() == 200) {
+				ok++;
+			}
+		}
+		// errors come back fast, so counting them would flatter the run
+		if (ok != CONCURRENCY) {
+			throw new IllegalStateException(String.format("only %d of %d requests succeeded", ok, CONCURRENCY));
+		}
+		return ok;
+	}
+}
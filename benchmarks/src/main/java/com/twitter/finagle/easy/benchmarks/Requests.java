@@ -0,0 +1,83 @@
+package com.twitter.finagle.easy.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+
+/**
+ * Factories for realistic inbound requests. Requests are mutable (reading the
+ * content moves its reader index) so the benchmarks create a fresh one per
+ * invocation.
+ *
+ * @author denis.rangel
+ */
+public final class Requests {
+
+	/**
+	 * Roughly what our edge proxies add to every request
+	 */
+	private static final String[][] PROXY_HEADERS = {
+			{ "Host", "api.example.com:8080" },
+			{ "User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)" },
+			{ "Accept-Language", "en-US,en;q=0.8" },
+			{ "Accept-Encoding", "gzip, deflate" },
+			{ "Cache-Control", "no-cache" },
+			{ "Connection", "keep-alive" },
+			{ "Cookie", "session=4c7a3b2e9f; theme=dark; locale=en_US" },
+			{ "X-Forwarded-For", "10.1.2.3, 10.4.5.6" },
+			{ "X-Forwarded-Proto", "https" },
+			{ "X-Forwarded-Port", "443" },
+			{ "X-Request-Id", "a4f1c3e2-9b8d-4e7f-a6b5-c4d3e2f1a0b9" },
+			{ "X-B3-TraceId", "463ac35c9f6413ad" },
+			{ "X-B3-SpanId", "a2fb4a1d1a96d312" },
+			{ "X-B3-ParentSpanId", "0020000000000001" },
+			{ "X-B3-Sampled", "1" },
+			{ "Via", "1.1 edge-proxy-17" } };
+
+	private Requests() {
+	}
+
+	public static Request get(String uri, String accept) {
+		Request request = Request.apply(Method.apply("GET"), uri);
+		addProxyHeaders(request);
+		request.headers().set("Accept", accept);
+		return request;
+	}
+
+	public static Request post(String uri, String contentType, byte[] body) {
+		Request request = Request.apply(Method.apply("POST"), uri);
+		addProxyHeaders(request);
+		request.headers().set("Accept", MediaType.TEXT_PLAIN);
+		request.headers().set("Content-Type", contentType);
+		request.headers().set("Content-Length", Integer.toString(body.length));
+		request.setContent(ChannelBuffers.wrappedBuffer(body));
+		return request;
+	}
+
+	/**
+	 * @return a JSON array of {@code count} items, as accepted by
+	 *         {@link BenchmarkResource#postItems(java.util.List)}
+	 */
+	public static byte[] jsonItems(int count) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"price\":")
+					.append(i * 1.5).append('}');
+		}
+		return json.append(']').toString().getBytes(UTF_8);
+	}
+
+	private static void addProxyHeaders(Request request) {
+		for (String[] header : PROXY_HEADERS) {
+			request.headers().set(header[0], header[1]);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.twitter.finagle.easy.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.easy.server.ServiceBuilder;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+
+/**
+ * Drives {@link com.twitter.finagle.easy.server.ResteasyFinagleService#apply}
+ * in-process (no sockets), so the numbers reflect the per-request cost of the
+ * adapter layer plus Resteasy dispatch and serialization.
+ *
+ * With {@code executor=direct} everything runs on the benchmark thread, which
+ * keeps the GC profiler's bytes/op honest; {@code executor=pool} adds the
+ * hand-off to the worker pool that production traffic pays.
+ *
+ * @author denis.rangel
+ */
+@State(Scope.Benchmark)
+public class ServerDispatchBenchmark {
+
+	@Param({ "direct", "pool" })
+	public String executor;
+
+	@Param({ "10", "500" })
+	public int itemCount;
+
+	private ExecutorService pool;
+	private Service<Request, Response> service;
+	private byte[] jsonBody;
+
+	@Setup
+	public void setUp() {
+		ServiceBuilder builder = ServiceBuilder.get().withEndpoint(new BenchmarkResource(this.itemCount));
+		if ("pool".equals(this.executor)) {
+			this.pool = Executors.newFixedThreadPool(4);
+			builder.withExecutor(this.pool);
+		} else {
+			builder.withExecutor(MoreExecutors.directExecutor());
+		}
+		this.service = builder.build();
+		this.jsonBody = Requests.jsonItems(this.itemCount);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.service.close();
+		if (this.pool != null) {
+			this.pool.shutdownNow();
+		}
+	}
+
+	@Benchmark
+	public Response getText() throws Exception {
+		return Await.result(this.service.apply(Requests.get("/bench/ping", MediaType.TEXT_PLAIN)));
+	}
+
+	@Benchmark
+	public Response getJsonItem() throws Exception {
+		return Await.result(this.service.apply(Requests.get("/bench/items/7", MediaType.APPLICATION_JSON)));
+	}
+
+	@Benchmark
+	public Response getJsonList() throws Exception {
+		return Await.result(this.service.apply(Requests.get("/bench/items", MediaType.APPLICATION_JSON)));
+	}
+
+	@Benchmark
+	public Response getJsonListWithQuery() throws Exception {
+		return Await.result(this.service.apply(Requests.get("/bench/items?limit=5", MediaType.APPLICATION_JSON)));
+	}
+
+	@Benchmark
+	public Response postJson() throws Exception {
+		return Await.result(this.service.apply(Requests.post("/bench/items", MediaType.APPLICATION_JSON,
+				this.jsonBody)));
+	}
+
+	@Benchmark
+	public Response notFound() throws Exception {
+		return Await.result(this.service.apply(Requests.get("/bench/missing", MediaType.APPLICATION_JSON)));
+	}
+}
@@ -0,0 +1,47 @@
+package com.twitter.finagle.easy.benchmarks;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.twitter.finagle.easy.util.ServiceUtils;
+import com.twitter.finagle.httpx.Request;
+
+/**
+ * Micro-benchmarks for the header and URI conversions in {@link ServiceUtils}.
+ *
+ * @author denis.rangel
+ */
+@State(Scope.Thread)
+public class ServiceUtilsBenchmark {
+
+	private Request request;
+	private Request requestWithQuery;
+
+	@Setup
+	public void setUp() {
+		this.request = Requests.get("/bench/items/7", MediaType.APPLICATION_JSON);
+		this.requestWithQuery = Requests.get("/bench/items?limit=5&sort=name&sort=price&q=%3Fx",
+				MediaType.APPLICATION_JSON);
+	}
+
+	@Benchmark
+	public MultivaluedMap<String, String> toMultimap() {
+		return ServiceUtils.toMultimap(this.request.getHttpMessage());
+	}
+
+	@Benchmark
+	public UriInfo toUriInfoFromRequest() {
+		return ServiceUtils.toUriInfo(this.request.httpRequest());
+	}
+
+	@Benchmark
+	public UriInfo toUriInfoWithQuery() {
+		return ServiceUtils.toUriInfo(this.requestWithQuery.getUri(), "api.example.com", 8080, false);
+	}
+}
@@ -5,6 +5,7 @@ import static com.twitter.common.quantity.Time.SECONDS;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -13,11 +14,13 @@ import org.jboss.resteasy.client.ProxyFactory;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
 import com.twitter.common.quantity.Amount;
 import com.twitter.common.quantity.Time;
 import com.twitter.finagle.Httpx;
 import com.twitter.finagle.Service;
 import com.twitter.finagle.builder.ClientConfig.Yes;
+import com.twitter.finagle.easy.util.SegmentPool;
 import com.twitter.finagle.easy.util.ServiceUtils;
 import com.twitter.finagle.httpx.Request;
 import com.twitter.finagle.httpx.Response;
@@ -62,8 +65,10 @@ public class ClientBuilder {
 	
 	private ClientExecutor executor;
 
+	private SegmentPool segmentPool;
+
 	protected ClientBuilder() {
-		this.providerFactory = ServiceUtils.getDefaultProviderFactory();
+		this.segmentPool = SegmentPool.getDefault();
 	}
 
 	public ClientBuilder withService(String uri) {
@@ -82,6 +87,34 @@ public class ClientBuilder {
 		return this;
 	}
 
+	/**
+	 * Uses a provider factory of the client's own, holding the
+	 * {@link ServiceUtils#CORE_PROVIDERS core providers} and the ones given
+	 * here, instead of the JVM-wide instance (see
+	 * {@link ServiceUtils#newProviderFactory(Iterable)}); to share providers
+	 * with a service, build the factory once and pass it to both builders
+	 * 
+	 * @param providers
+	 *            provider classes or instances
+	 * @return this (for chaining)
+	 */
+	public ClientBuilder withProviders(Object... providers) {
+		this.providerFactory = ServiceUtils.newProviderFactory(Iterables.concat(ServiceUtils.CORE_PROVIDERS,
+				Arrays.asList(providers)));
+		return this;
+	}
+
+	/**
+	 * @param segmentPool
+	 *            pool that request bodies are serialized into (by default, a
+	 *            pool of heap segments shared by all clients)
+	 * @return this (for chaining)
+	 */
+	public ClientBuilder withSegmentPool(SegmentPool segmentPool) {
+		this.segmentPool = checkNotNull(segmentPool, "segmentPool");
+		return this;
+	}
+
 	public void close() throws Exception {
 		this.executor.close();
 	}
@@ -90,8 +123,11 @@ public class ClientBuilder {
 		checkNotNull(this.service, "clientBuilder");
 
 		LOG.info(String.format("creating proxy with interface %s", serviceInterface.getName()));
+		if (this.providerFactory == null) {
+			this.providerFactory = ServiceUtils.getDefaultProviderFactory();
+		}
 		
-		this.executor = new FinagleBasedClientExecutor(this.providerFactory, service);
+		this.executor = new FinagleBasedClientExecutor(this.providerFactory, service, this.segmentPool);
 		return ProxyFactory.create(serviceInterface, DEFAULT_ENDPOINT_URI, executor, this.providerFactory);
 	}
 
@@ -15,6 +15,7 @@ import org.jboss.resteasy.specimpl.ResteasyUriBuilder;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
 import com.twitter.finagle.Service;
+import com.twitter.finagle.easy.util.SegmentPool;
 import com.twitter.finagle.httpx.Request;
 import com.twitter.finagle.httpx.Response;
 
@@ -35,11 +36,22 @@ public class FinagleBasedClientExecutor implements ClientExecutor {
 
 	private final ResteasyProviderFactory providerFactory;
 	private final Service<Request, Response> finagleService;
+	private final SegmentPool segmentPool;
 
 	public FinagleBasedClientExecutor(ResteasyProviderFactory providerFactory,
 			Service<Request, Response> finagleService) {
+		this(providerFactory, finagleService, SegmentPool.getDefault());
+	}
+
+	/**
+	 * @param segmentPool
+	 *            pool that outbound request bodies are serialized into
+	 */
+	public FinagleBasedClientExecutor(ResteasyProviderFactory providerFactory,
+			Service<Request, Response> finagleService, SegmentPool segmentPool) {
 		this.providerFactory = providerFactory;
 		this.finagleService = finagleService;
+		this.segmentPool = segmentPool;
 	}
 
 	@Override
@@ -59,10 +71,12 @@ public class FinagleBasedClientExecutor implements ClientExecutor {
 			LOG.debug(String.format("%s: %s", name, resteasyRequest.getHeaders().get(name)));
 		}
 
+		final OutboundClientRequest outboundRequest;
 		Request nettyRequest = null;
 		try {
+			outboundRequest = new OutboundClientRequest(resteasyRequest, this.segmentPool);
 			nettyRequest = new Request() {
-				private HttpRequest httpRequest = new OutboundClientRequest(resteasyRequest);
+				private HttpRequest httpRequest = outboundRequest;
 
 				@Override
 				public HttpRequest httpRequest() {
@@ -91,6 +105,10 @@ public class FinagleBasedClientExecutor implements ClientExecutor {
 		} catch (Exception e) {
 			throw new RuntimeException("error invoking Finagle service", e);
 		}
+		// Finagle only reads the response once the request has been written,
+		// so the body's segments are free again (after a failure we can't be
+		// sure, so they're left to the garbage collector)
+		outboundRequest.releaseContent();
 
 		LOG.debug(String.format("inbound %s", nettyResponse.getStatus()));
 		for (Entry<String, String> entry : nettyResponse.headers()) {
@@ -1,6 +1,8 @@
 package com.twitter.finagle.easy.client;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.twitter.finagle.easy.util.SegmentPool;
+import com.twitter.finagle.easy.util.SegmentedOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
 import org.jboss.netty.handler.codec.http.HttpMethod;
@@ -10,7 +12,6 @@ import org.jboss.resteasy.util.CaseInsensitiveMap;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
@@ -26,15 +27,31 @@ import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
  */
 public class OutboundClientRequest extends DefaultHttpRequest {
 
+    private final SegmentedOutputStream body;
+
+    /**
+     * Wraps up the supplied Resteasy message in a Netty message, serializing
+     * the body into segments from the default {@link SegmentPool}.
+     *
+     * @param resteasyRequest a Resteasy request
+     * @throws Exception if something goes wrong
+     */
+    public OutboundClientRequest(ClientRequest resteasyRequest)
+            throws Exception {
+        this(resteasyRequest, SegmentPool.getDefault());
+    }
+
     /**
      * Wraps up the supplied Resteasy message in a Netty message.  This
      * requires us to get the Resteasy message to serialize itself (to
      * trigger processing by any registered Resteasy providers).
      *
      * @param resteasyRequest a Resteasy request
+     * @param segments pool the serialized body is written into (see
+     *        {@link #releaseContent()})
      * @throws Exception if something goes wrong
      */
-    public OutboundClientRequest(ClientRequest resteasyRequest)
+    public OutboundClientRequest(ClientRequest resteasyRequest, SegmentPool segments)
             throws Exception {
 
         super(
@@ -46,20 +63,30 @@ public class OutboundClientRequest extends DefaultHttpRequest {
         // into memory -- obviously this sucks for large requests.
         // will the structure of the APIs allow us to do better?
 
-        HeadersAndBody message = writeMessage(resteasyRequest);
+        HeadersAndBody message = writeMessage(resteasyRequest, segments);
         for (String name : message.headers.keySet()) {
         	headers().add(name, message.headers.get(name));
         }
 
-        byte [] bytes = message.getBody().toByteArray();
-        if (bytes.length == 0) {
+        this.body = message.getBody();
+        if (this.body.size() == 0) {
         	headers().set(CONTENT_LENGTH, "0");
         } else {
-        	headers().set(CONTENT_LENGTH, Integer.toString(bytes.length));
-            setContent(ChannelBuffers.wrappedBuffer(bytes));
+        	headers().set(CONTENT_LENGTH, Integer.toString(this.body.size()));
+            setContent(this.body.toChannelBuffer());
         }
     }
 
+    /**
+     * Gives the body's segments back to their pool.  Only call this once the
+     * request has been written out (e.g. once its response has arrived);
+     * the content is empty afterwards.
+     */
+    public void releaseContent() {
+        setContent(ChannelBuffers.EMPTY_BUFFER);
+        this.body.release();
+    }
+
     /**
      * Strips off a preceding "protocol://host/" string, if there is one
      * at the beginning of the supplied URI.  Since we're going to dispatch
@@ -86,9 +113,9 @@ public class OutboundClientRequest extends DefaultHttpRequest {
      * @throws java.io.IOException if something goes wrong
      */
     @VisibleForTesting
-    static HeadersAndBody writeMessage(ClientRequest resteasyRequest)
+    static HeadersAndBody writeMessage(ClientRequest resteasyRequest, SegmentPool segments)
             throws IOException {
-        HeadersAndBody message = new HeadersAndBody();
+        HeadersAndBody message = new HeadersAndBody(segments);
         message.headers.putAll((MultivaluedMap) resteasyRequest.getHeaders());
         message.headers.remove(CONTENT_TYPE);
         message.setContentType(resteasyRequest.getBodyContentType());
@@ -105,14 +132,14 @@ public class OutboundClientRequest extends DefaultHttpRequest {
     static class HeadersAndBody {
 
         private final MultivaluedMap<String,Object> headers;
-        private final ByteArrayOutputStream bytes;
+        private final SegmentedOutputStream bytes;
 
-        public HeadersAndBody() {
+        public HeadersAndBody(SegmentPool segments) {
             this.headers = new CaseInsensitiveMap<Object>();
-            this.bytes = new ByteArrayOutputStream();
+            this.bytes = new SegmentedOutputStream(segments);
         }
 
-        public ByteArrayOutputStream getBody() {
+        public SegmentedOutputStream getBody() {
             return bytes;
         }
 
@@ -0,0 +1,239 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Access log for a {@link ResteasyFinagleService}. Request threads only
+ * capture raw values into an {@link AccessLogEntry} and drop it into a bounded
+ * buffer; a daemon writer thread hands entries to the {@link AccessLogSink},
+ * which is where any formatting or I/O happens. If the writer falls behind
+ * and the buffer fills up, entries are dropped (and counted) rather than
+ * slowing requests down.
+ * <p>
+ * By default every request is logged, without bodies. Use
+ * {@link #withSampleRate(double)} to log a fraction of requests and
+ * {@link #withBodies(int)} to capture (the start of) request and response
+ * bodies.
+ *
+ * @author denis.rangel
+ */
+public class AccessLog {
+
+	private static final Log LOG = LogFactory.getLog(AccessLog.class);
+
+	/**
+	 * Default number of entries buffered for the writer thread
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private static final int BATCH_SIZE = 64;
+
+	private final AccessLogSink sink;
+	private final AtomicBoolean started;
+	private final AtomicLong dropped;
+	private volatile boolean closed;
+	private double sampleRate;
+	private int maxBodyBytes;
+	private volatile BlockingQueue<AccessLogEntry> buffer;
+	private volatile Thread writer;
+
+	/**
+	 * @param sink
+	 *            where entries are written
+	 */
+	public AccessLog(AccessLogSink sink) {
+		this.sink = Preconditions.checkNotNull(sink, "sink");
+		this.started = new AtomicBoolean();
+		this.dropped = new AtomicLong();
+		this.sampleRate = 1.0;
+		this.maxBodyBytes = -1;
+		this.buffer = new ArrayBlockingQueue<AccessLogEntry>(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @return an access log that writes to commons-logging (see
+	 *         {@link LoggingAccessLogSink})
+	 */
+	public static AccessLog logging() {
+		return new AccessLog(new LoggingAccessLogSink());
+	}
+
+	/**
+	 * @return an access log that doesn't record anything
+	 */
+	public static AccessLog disabled() {
+		return logging().withSampleRate(0.0);
+	}
+
+	/**
+	 * @param rate
+	 *            fraction of requests to log, between 0 (none) and 1 (all)
+	 * @return this (for chaining)
+	 */
+	public AccessLog withSampleRate(double rate) {
+		Preconditions.checkArgument(rate >= 0.0 && rate <= 1.0, "rate");
+		this.sampleRate = rate;
+		return this;
+	}
+
+	/**
+	 * Captures request and response bodies in logged entries
+	 * 
+	 * @param maxBytes
+	 *            maximum number of bytes kept from each body
+	 * @return this (for chaining)
+	 */
+	public AccessLog withBodies(int maxBytes) {
+		Preconditions.checkArgument(maxBytes >= 0, "maxBytes");
+		this.maxBodyBytes = maxBytes;
+		return this;
+	}
+
+	/**
+	 * @param capacity
+	 *            number of entries buffered for the writer thread; entries
+	 *            recorded while the buffer is full are dropped
+	 * @return this (for chaining)
+	 */
+	public AccessLog withCapacity(int capacity) {
+		Preconditions.checkArgument(capacity > 0, "capacity");
+		Preconditions.checkState(!this.started.get(), "access log already started");
+		this.buffer = new ArrayBlockingQueue<AccessLogEntry>(capacity);
+		return this;
+	}
+
+	/**
+	 * @return true if the current request should be logged
+	 */
+	public boolean isSampled() {
+		double rate = this.sampleRate;
+		return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+	}
+
+	/**
+	 * @return true if entries should carry request and response bodies
+	 */
+	public boolean isLoggingBodies() {
+		return this.maxBodyBytes >= 0;
+	}
+
+	/**
+	 * @return the start of the supplied body (up to the configured limit,
+	 *         without moving its reader index), or null if bodies aren't being
+	 *         logged
+	 */
+	public byte[] captureBody(ChannelBuffer body) {
+		if (this.maxBodyBytes < 0 || body == null) {
+			return null;
+		}
+		byte[] bytes = new byte[Math.min(body.readableBytes(), this.maxBodyBytes)];
+		body.getBytes(body.readerIndex(), bytes);
+		return bytes;
+	}
+
+	/**
+	 * Queues an entry for the writer thread; never blocks. Entries recorded
+	 * once the log is closed are dropped.
+	 * 
+	 * @param entry
+	 *            a completed request
+	 */
+	public void record(AccessLogEntry entry) {
+		if (this.closed) {
+			this.dropped.incrementAndGet();
+			return;
+		}
+		if (this.started.compareAndSet(false, true)) {
+			start();
+		}
+		if (!this.buffer.offer(entry)) {
+			this.dropped.incrementAndGet();
+		} else if (this.closed && this.buffer.remove(entry)) {
+			// closed while we were queueing, and the writer may already have
+			// made its last pass
+			this.dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return number of entries dropped because the writer fell behind, or
+	 *         because the log was closed
+	 */
+	public long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Stops the writer thread, once it has written the entries already
+	 * buffered
+	 */
+	public void close() {
+		this.closed = true;
+		Thread thread = this.writer;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	private void start() {
+		Thread thread = new Thread(new Writer(this.buffer), "finagle-easy-access-log");
+		thread.setDaemon(true);
+		// visible before it runs, so close() can't miss it
+		this.writer = thread;
+		thread.start();
+	}
+
+	/*
+	 * Drains the buffer into the sink, in batches
+	 */
+	private class Writer implements Runnable {
+
+		private final BlockingQueue<AccessLogEntry> buffer;
+
+		Writer(BlockingQueue<AccessLogEntry> buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public void run() {
+			List<AccessLogEntry> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+			try {
+				while (!closed && !Thread.currentThread().isInterrupted()) {
+					batch.add(this.buffer.take());
+					this.buffer.drainTo(batch, BATCH_SIZE - 1);
+					write(batch);
+				}
+			} catch (InterruptedException e) {
+				// closed while waiting for entries
+			}
+			// closed (the interrupt may have come in the middle of a batch);
+			// write whatever made it in before
+			this.buffer.drainTo(batch);
+			write(batch);
+		}
+
+		private void write(List<AccessLogEntry> batch) {
+			for (AccessLogEntry entry : batch) {
+				try {
+					sink.write(entry);
+				} catch (RuntimeException e) {
+					LOG.warn("access log sink failed", e);
+				}
+			}
+			batch.clear();
+		}
+	}
+
+}
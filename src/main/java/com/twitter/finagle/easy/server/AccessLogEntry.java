@@ -0,0 +1,152 @@
+package com.twitter.finagle.easy.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One completed request, as recorded by the {@link AccessLog}. Entries only
+ * hold raw values captured on the request thread; anything that needs
+ * formatting or decoding (including {@link #toString()}) is meant to happen on
+ * the access log's writer thread.
+ *
+ * @author denis.rangel
+ */
+public class AccessLogEntry {
+
+	private final long timestamp;
+	private final InetSocketAddress remoteAddress;
+	private final String method;
+	private final String uri;
+	private final String protocol;
+	private final String route;
+	private final int status;
+	private final long requestLength;
+	private final long responseLength;
+	private final long queueNanos;
+	private final long durationNanos;
+	private final byte[] requestBody;
+	private final byte[] responseBody;
+
+	public AccessLogEntry(long timestamp, InetSocketAddress remoteAddress, String method, String uri,
+			String protocol, String route, int status, long requestLength, long responseLength, long queueNanos,
+			long durationNanos, byte[] requestBody, byte[] responseBody) {
+		this.timestamp = timestamp;
+		this.remoteAddress = remoteAddress;
+		this.method = method;
+		this.uri = uri;
+		this.protocol = protocol;
+		this.route = route;
+		this.status = status;
+		this.requestLength = requestLength;
+		this.responseLength = responseLength;
+		this.queueNanos = queueNanos;
+		this.durationNanos = durationNanos;
+		this.requestBody = requestBody;
+		this.responseBody = responseBody;
+	}
+
+	/**
+	 * @return when the request was received, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * @return the caller's address, if known
+	 */
+	public InetSocketAddress getRemoteAddress() {
+		return this.remoteAddress;
+	}
+
+	public String getMethod() {
+		return this.method;
+	}
+
+	public String getUri() {
+		return this.uri;
+	}
+
+	public String getProtocol() {
+		return this.protocol;
+	}
+
+	/**
+	 * @return name of the resource method that handled the request, or null
+	 *         if it wasn't resolved ahead of dispatch
+	 */
+	public String getRoute() {
+		return this.route;
+	}
+
+	public int getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return size of the request body, in bytes
+	 */
+	public long getRequestLength() {
+		return this.requestLength;
+	}
+
+	/**
+	 * @return size of the response body, in bytes
+	 */
+	public long getResponseLength() {
+		return this.responseLength;
+	}
+
+	/**
+	 * @return time spent waiting for a worker thread
+	 */
+	public long getQueueTime(TimeUnit unit) {
+		return unit.convert(this.queueNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return time between receiving the request and completing the response
+	 */
+	public long getDuration(TimeUnit unit) {
+		return unit.convert(this.durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the first bytes of the request body, or null if bodies aren't
+	 *         being logged
+	 */
+	public byte[] getRequestBody() {
+		return this.requestBody;
+	}
+
+	/**
+	 * @return the first bytes of the response body, or null if bodies aren't
+	 *         being logged
+	 */
+	public byte[] getResponseBody() {
+		return this.responseBody;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(128);
+		builder.append(this.remoteAddress == null ? "-" : this.remoteAddress.getHostString());
+		builder.append(" \"").append(this.method).append(' ').append(this.uri).append(' ').append(this.protocol);
+		builder.append("\" ").append(this.status).append(' ').append(this.responseLength);
+		builder.append(' ').append(this.durationNanos / 1000L).append("us");
+		builder.append(" queue=").append(this.queueNanos / 1000L).append("us");
+		if (this.route != null) {
+			builder.append(" route=").append(this.route);
+		}
+		if (this.requestBody != null) {
+			builder.append(" request=").append(new String(this.requestBody, UTF_8));
+		}
+		if (this.responseBody != null) {
+			builder.append(" response=").append(new String(this.responseBody, UTF_8));
+		}
+		return builder.toString();
+	}
+
+}
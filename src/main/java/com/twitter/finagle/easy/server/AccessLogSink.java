@@ -0,0 +1,19 @@
+package com.twitter.finagle.easy.server;
+
+/**
+ * Destination for access log entries. Sinks are only ever called from the
+ * access log's writer thread, so they're free to format and do I/O.
+ *
+ * @author denis.rangel
+ *
+ * @see AccessLog
+ */
+public interface AccessLogSink {
+
+	/**
+	 * @param entry
+	 *            a completed request
+	 */
+	void write(AccessLogEntry entry);
+
+}
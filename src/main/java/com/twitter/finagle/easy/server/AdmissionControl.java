@@ -0,0 +1,144 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides whether queued requests are still worth dispatching, and keeps count
+ * of the ones we turned away. Requests are shed in two places:
+ * <ul>
+ * <li>when the executor refuses them (e.g. its bounded queue is full)</li>
+ * <li>when they've been waiting in the queue longer than the configured
+ * maximum by the time a worker picks them up</li>
+ * </ul>
+ * In both cases the caller gets an immediate 503 with a Retry-After header,
+ * produced without involving Resteasy.
+ *
+ * @author denis.rangel
+ */
+public class AdmissionControl {
+
+	/**
+	 * Default value for the Retry-After header on shed requests, in seconds
+	 */
+	public static final int DEFAULT_RETRY_AFTER = 1;
+
+	private final Executor executor;
+	private final long maxQueueWaitNanos;
+	private final int retryAfterSeconds;
+	private final AtomicLong rejected;
+	private final AtomicLong expired;
+
+	/**
+	 * @param executor
+	 *            the executor requests are queued on (only used to report
+	 *            queue depth)
+	 * @param maxQueueWait
+	 *            how long a request may wait before it's shed (zero or less
+	 *            means forever)
+	 * @param unit
+	 *            units for maxQueueWait
+	 * @param retryAfterSeconds
+	 *            value for the Retry-After header on shed requests
+	 */
+	public AdmissionControl(Executor executor, long maxQueueWait, TimeUnit unit, int retryAfterSeconds) {
+		Preconditions.checkArgument(retryAfterSeconds >= 0, "retryAfterSeconds");
+		this.executor = Preconditions.checkNotNull(executor, "executor");
+		this.maxQueueWaitNanos = maxQueueWait > 0 ? unit.toNanos(maxQueueWait) : 0L;
+		this.retryAfterSeconds = retryAfterSeconds;
+		this.rejected = new AtomicLong();
+		this.expired = new AtomicLong();
+	}
+
+	/**
+	 * @param executor
+	 *            the executor requests are queued on
+	 * @return admission control that never sheds requests for waiting too long
+	 */
+	public static AdmissionControl unbounded(Executor executor) {
+		return new AdmissionControl(executor, 0L, TimeUnit.NANOSECONDS, DEFAULT_RETRY_AFTER);
+	}
+
+	/**
+	 * @param enqueuedAt
+	 *            {@link System#nanoTime()} when the request was queued
+	 * @return true if the request has waited too long to be worth
+	 *         dispatching
+	 */
+	public boolean isExpired(long enqueuedAt) {
+		return this.maxQueueWaitNanos > 0 && System.nanoTime() - enqueuedAt > this.maxQueueWaitNanos;
+	}
+
+	/**
+	 * Records a request refused by the executor
+	 */
+	public void recordRejected() {
+		this.rejected.incrementAndGet();
+	}
+
+	/**
+	 * Records a request shed for waiting in the queue too long
+	 */
+	public void recordExpired() {
+		this.expired.incrementAndGet();
+	}
+
+	/**
+	 * @return number of requests refused by the executor so far
+	 */
+	public long getRejectedCount() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * @return number of requests shed for waiting too long so far
+	 */
+	public long getExpiredCount() {
+		return this.expired.get();
+	}
+
+	/**
+	 * @return number of requests currently waiting for a worker, or -1 if the
+	 *         executor doesn't tell us
+	 */
+	public int getQueueDepth() {
+		if (this.executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) this.executor).getQueue().size();
+		}
+		if (this.executor instanceof PriorityExecutor) {
+			return ((PriorityExecutor) this.executor).getQueueDepth();
+		}
+		if (this.executor instanceof VirtualThreadExecutor) {
+			return ((VirtualThreadExecutor) this.executor).getQueueDepth();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return number of workers currently handling a request, or -1 if the
+	 *         executor doesn't tell us
+	 */
+	public int getActiveCount() {
+		if (this.executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) this.executor).getActiveCount();
+		}
+		if (this.executor instanceof PriorityExecutor) {
+			return ((PriorityExecutor) this.executor).getActiveCount();
+		}
+		if (this.executor instanceof VirtualThreadExecutor) {
+			return ((VirtualThreadExecutor) this.executor).getActiveCount();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return value for the Retry-After header on shed requests, in seconds
+	 */
+	public int getRetryAfterSeconds() {
+		return this.retryAfterSeconds;
+	}
+}
@@ -0,0 +1,69 @@
+package com.twitter.finagle.easy.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+/**
+ * Fails the request with a 413 once more than a given number of bytes have
+ * been read; used on decoded request bodies, whose size we can't know up
+ * front.
+ *
+ * @author denis.rangel
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+	private final long maxBytes;
+	private long total;
+
+	/**
+	 * @param in
+	 *            the stream to bound
+	 * @param maxBytes
+	 *            maximum number of bytes that may be read
+	 */
+	public BoundedInputStream(InputStream in, long maxBytes) {
+		super(in);
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		int count = super.read(bytes, offset, length);
+		if (count > 0) {
+			count(count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(long bytes) {
+		this.total += bytes;
+		if (this.total > this.maxBytes) {
+			throw new WebApplicationException(Status.REQUEST_ENTITY_TOO_LARGE);
+		}
+	}
+}
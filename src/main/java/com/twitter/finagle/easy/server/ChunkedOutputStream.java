@@ -0,0 +1,195 @@
+package com.twitter.finagle.easy.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.google.common.base.Preconditions;
+import com.twitter.io.Bufs;
+import com.twitter.io.Writer;
+import com.twitter.util.Await;
+import com.twitter.util.Closable;
+
+/**
+ * Response body stream used in streaming mode (see
+ * {@link ServiceBuilder#withStreamingResponses(int)}). Writes are buffered
+ * until the flush threshold is reached; the first time that happens, the
+ * response is committed and sent with chunked transfer encoding, and every
+ * later flush becomes another chunk. Flushes before then are ignored (some
+ * providers flush after every entity they write), so a small body isn't
+ * committed just because it was flushed.
+ * Each chunk is handed to Finagle's response writer and the writing thread
+ * waits until the connection has taken it, so a slow client slows the
+ * producer down rather than filling up the heap.
+ * <p>
+ * Bodies that never reach the threshold are never committed; they're sent
+ * as ordinary, non-chunked content.
+ *
+ * @author denis.rangel
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+	private final Writer writer;
+	private final Runnable onCommit;
+	private final int threshold;
+	private byte[] buffer;
+	private int count;
+	private boolean committed;
+	private boolean closed;
+	private long written;
+
+	/**
+	 * @param writer
+	 *            the writer for the Finagle response
+	 * @param threshold
+	 *            number of bytes buffered before a chunk is sent
+	 * @param onCommit
+	 *            called (once) just before the first chunk is sent, to send
+	 *            the response headers
+	 */
+	public ChunkedOutputStream(Writer writer, int threshold, Runnable onCommit) {
+		Preconditions.checkArgument(threshold > 0, "threshold");
+		this.writer = Preconditions.checkNotNull(writer, "writer");
+		this.onCommit = Preconditions.checkNotNull(onCommit, "onCommit");
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (this.buffer == null) {
+			this.buffer = new byte[this.threshold];
+		}
+		this.buffer[this.count++] = (byte) b;
+		if (this.count == this.threshold) {
+			sendChunk();
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+		ensureOpen();
+		while (length > 0) {
+			if (this.buffer == null) {
+				this.buffer = new byte[this.threshold];
+			}
+			int chunk = Math.min(length, this.threshold - this.count);
+			System.arraycopy(bytes, offset, this.buffer, this.count, chunk);
+			this.count += chunk;
+			offset += chunk;
+			length -= chunk;
+			if (this.count == this.threshold) {
+				sendChunk();
+			}
+		}
+	}
+
+	/**
+	 * Sends whatever is buffered as a chunk, once the response has been
+	 * committed; until then, does nothing
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (this.committed && this.count > 0) {
+			sendChunk();
+		}
+	}
+
+	/**
+	 * Sends whatever is buffered and ends the chunked response. Does nothing
+	 * to a response that was never committed (see {@link #getBuffered()}).
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed || !this.committed) {
+			return;
+		}
+		if (this.count > 0) {
+			sendChunk();
+		}
+		this.closed = true;
+		try {
+			// the writer of a Finagle message is always Closable
+			Await.result(((Closable) this.writer).close());
+		} catch (Exception e) {
+			throw asIOException(e);
+		}
+	}
+
+	/**
+	 * Aborts a committed response; the client sees the connection fail
+	 * rather than a truncated body that looks complete
+	 */
+	public void fail(Throwable cause) {
+		if (this.committed && !this.closed) {
+			this.closed = true;
+			this.writer.fail(cause);
+		}
+	}
+
+	/**
+	 * @return true once the headers (and at least one chunk) have been sent
+	 */
+	public boolean isCommitted() {
+		return this.committed;
+	}
+
+	/**
+	 * @return total number of bytes written to this stream
+	 */
+	public long getWrittenCount() {
+		return this.written + this.count;
+	}
+
+	/**
+	 * @return everything written to a stream that was never committed
+	 */
+	public ChannelBuffer getBuffered() {
+		Preconditions.checkState(!this.committed, "response already committed");
+		return this.count == 0 ? ChannelBuffers.EMPTY_BUFFER : ChannelBuffers.wrappedBuffer(this.buffer, 0,
+				this.count);
+	}
+
+	private void sendChunk() throws IOException {
+		if (!this.committed) {
+			this.committed = true;
+			this.onCommit.run();
+		}
+		// the writer owns the chunk from here on
+		byte[] chunk = this.count == this.buffer.length ? this.buffer : Arrays.copyOf(this.buffer, this.count);
+		if (chunk == this.buffer) {
+			this.buffer = null;
+		}
+		this.written += this.count;
+		this.count = 0;
+		try {
+			Await.result(this.writer.write(Bufs.ownedBuf(chunk)));
+		} catch (Exception e) {
+			this.closed = true;
+			throw asIOException(e);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("response stream is closed");
+		}
+	}
+
+	private static IOException asIOException(Exception e) {
+		if (e instanceof IOException) {
+			return (IOException) e;
+		}
+		if (e instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+			return new InterruptedIOException("interrupted while writing response");
+		}
+		return new IOException("error writing response chunk", e);
+	}
+}
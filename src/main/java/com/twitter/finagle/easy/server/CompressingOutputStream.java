@@ -0,0 +1,204 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.VARY;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compresses a response body on its way into the response's own output
+ * stream (see {@link CompressionPolicy}). The first few bytes are held back
+ * until there are enough of them to be worth compressing; at that point the
+ * response headers are checked (a media type that isn't on the allowlist, or
+ * a body the resource already encoded, is passed through untouched), the
+ * Content-Encoding is set and everything after that goes through a deflater
+ * straight into the underlying stream. Bodies that never reach the minimum
+ * size are written as they are when the stream is finished.
+ *
+ * @author denis.rangel
+ */
+public class CompressingOutputStream extends OutputStream {
+
+	private static final int DEFLATER_BUFFER_SIZE = 8192;
+
+	private final OutputStream out;
+	private final HttpHeaders headers;
+	private final CompressionPolicy policy;
+	private final String encoding;
+	private byte[] pending;
+	private int pendingCount;
+	private OutputStream target;
+	private Deflater deflater;
+	private DeflaterOutputStream compressor;
+	private boolean finished;
+
+	/**
+	 * @param out
+	 *            the response's body stream
+	 * @param headers
+	 *            the response's headers
+	 * @param policy
+	 *            what to compress, and how
+	 * @param encoding
+	 *            the negotiated encoding ({@link CompressionPolicy#GZIP} or
+	 *            {@link CompressionPolicy#DEFLATE})
+	 */
+	public CompressingOutputStream(OutputStream out, HttpHeaders headers, CompressionPolicy policy,
+			String encoding) {
+		this.out = Preconditions.checkNotNull(out, "out");
+		this.headers = Preconditions.checkNotNull(headers, "headers");
+		this.policy = Preconditions.checkNotNull(policy, "policy");
+		Preconditions.checkArgument(CompressionPolicy.GZIP.equals(encoding)
+				|| CompressionPolicy.DEFLATE.equals(encoding), "encoding");
+		this.encoding = encoding;
+		this.pending = new byte[Math.max(policy.getMinSize(), 1)];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.target != null) {
+			this.target.write(b);
+			return;
+		}
+		this.pending[this.pendingCount++] = (byte) b;
+		if (this.pendingCount == this.pending.length) {
+			decide();
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+		if (this.target == null) {
+			int count = Math.min(length, this.pending.length - this.pendingCount);
+			System.arraycopy(bytes, offset, this.pending, this.pendingCount, count);
+			this.pendingCount += count;
+			offset += count;
+			length -= count;
+			if (this.pendingCount < this.pending.length) {
+				return;
+			}
+			decide();
+		}
+		if (length > 0) {
+			this.target.write(bytes, offset, length);
+		}
+	}
+
+	/**
+	 * Flushes whatever has been compressed so far; bytes held back until the
+	 * minimum size is reached stay where they are
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.target != null) {
+			this.target.flush();
+		}
+	}
+
+	/**
+	 * Writes out whatever is still held back or buffered in the deflater
+	 * (including the gzip trailer). The underlying stream is left open.
+	 */
+	public void finish() throws IOException {
+		if (this.finished) {
+			return;
+		}
+		this.finished = true;
+		if (this.target == null) {
+			// never reached the minimum size
+			this.out.write(this.pending, 0, this.pendingCount);
+			this.pending = null;
+			return;
+		}
+		if (this.compressor != null) {
+			try {
+				this.compressor.finish();
+			} finally {
+				this.deflater.end();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	/**
+	 * @return true if the body is being compressed
+	 */
+	public boolean isCompressing() {
+		return this.compressor != null;
+	}
+
+	/*
+	 * Enough bytes to be worth compressing: compress, if the response
+	 * headers allow it, and write out what we've held back
+	 */
+	private void decide() throws IOException {
+		if (this.headers.contains(CONTENT_ENCODING) || !this.policy.isCompressible(this.headers.get(CONTENT_TYPE))) {
+			this.target = this.out;
+		} else {
+			this.headers.set(CONTENT_ENCODING, this.encoding);
+			this.headers.remove(CONTENT_LENGTH);
+			this.headers.add(VARY, ACCEPT_ENCODING);
+			boolean gzip = CompressionPolicy.GZIP.equals(this.encoding);
+			this.deflater = new Deflater(this.policy.getLevel(), gzip);
+			this.compressor = gzip ? new GzipStream(this.out, this.deflater) : new DeflaterOutputStream(this.out,
+					this.deflater, DEFLATER_BUFFER_SIZE, true);
+			this.target = this.compressor;
+		}
+		this.target.write(this.pending, 0, this.pendingCount);
+		this.pending = null;
+	}
+
+	/*
+	 * GZIPOutputStream won't take a deflater (so the level can't be set),
+	 * so we write the (fixed, 10-byte) header and 8-byte trailer ourselves
+	 * around a raw deflate stream
+	 */
+	private static class GzipStream extends DeflaterOutputStream {
+
+		private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+		private final CRC32 crc;
+
+		GzipStream(OutputStream out, Deflater deflater) throws IOException {
+			super(out, deflater, DEFLATER_BUFFER_SIZE, true);
+			this.crc = new CRC32();
+			out.write(HEADER);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			super.write(bytes, offset, length);
+			this.crc.update(bytes, offset, length);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			super.finish();
+			writeInt((int) this.crc.getValue());
+			writeInt((int) this.def.getBytesRead());
+		}
+
+		private void writeInt(int value) throws IOException {
+			this.out.write(value & 0xff);
+			this.out.write((value >>> 8) & 0xff);
+			this.out.write((value >>> 16) & 0xff);
+			this.out.write((value >>> 24) & 0xff);
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import javax.ws.rs.core.MediaType;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Decides which responses a {@link ResteasyFinagleService} compresses, and
+ * how. A response is compressed when the client accepts gzip or deflate (gzip
+ * wins a tie), its media type is on the allowlist, and its body reaches the
+ * minimum size; see {@link CompressingOutputStream}. Unless turned off with
+ * {@link #withRequestDecoding(boolean)}, request bodies sent with a
+ * Content-Encoding of gzip or deflate are decoded before Resteasy reads them.
+ * <p>
+ * By default, textual media types (text/*, JSON, XML and JavaScript) of at
+ * least {@link #DEFAULT_MIN_SIZE} bytes are compressed at the default level.
+ *
+ * @author denis.rangel
+ */
+public class CompressionPolicy {
+
+	public static final String GZIP = "gzip";
+
+	public static final String DEFLATE = "deflate";
+
+	public static final String IDENTITY = "identity";
+
+	/**
+	 * Default minimum body size, in bytes; below this, compression usually
+	 * costs more than it saves
+	 */
+	public static final int DEFAULT_MIN_SIZE = 1024;
+
+	/**
+	 * Media types compressed by default
+	 */
+	public static final List<MediaType> DEFAULT_MEDIA_TYPES = ImmutableList.of(new MediaType("text", "*"),
+			MediaType.APPLICATION_JSON_TYPE, MediaType.APPLICATION_XML_TYPE,
+			new MediaType("application", "javascript"), new MediaType("application", "*+json"),
+			new MediaType("application", "*+xml"));
+
+	private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+
+	private final List<MediaType> mediaTypes;
+	private int minSize;
+	private int level;
+	private boolean requestDecoding;
+
+	public CompressionPolicy() {
+		this.mediaTypes = Lists.newArrayList(DEFAULT_MEDIA_TYPES);
+		this.minSize = DEFAULT_MIN_SIZE;
+		this.level = Deflater.DEFAULT_COMPRESSION;
+		this.requestDecoding = true;
+	}
+
+	/**
+	 * @param bytes
+	 *            smallest body that's compressed
+	 * @return this (for chaining)
+	 */
+	public CompressionPolicy withMinSize(int bytes) {
+		Preconditions.checkArgument(bytes >= 0, "bytes");
+		this.minSize = bytes;
+		return this;
+	}
+
+	/**
+	 * @param level
+	 *            deflater level, from 1 (fastest) to 9 (smallest), or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}
+	 * @return this (for chaining)
+	 */
+	public CompressionPolicy withLevel(int level) {
+		Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION
+				|| (level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION), "level");
+		this.level = level;
+		return this;
+	}
+
+	/**
+	 * Replaces the allowlist of compressed media types; wildcards (e.g.
+	 * "text/*" or "application/*+json") are allowed
+	 * 
+	 * @param types
+	 *            media types to compress
+	 * @return this (for chaining)
+	 */
+	public CompressionPolicy withMediaTypes(String... types) {
+		this.mediaTypes.clear();
+		for (String type : types) {
+			this.mediaTypes.add(MediaType.valueOf(type));
+		}
+		return this;
+	}
+
+	/**
+	 * @param decode
+	 *            whether compressed request bodies are decoded
+	 * @return this (for chaining)
+	 */
+	public CompressionPolicy withRequestDecoding(boolean decode) {
+		this.requestDecoding = decode;
+		return this;
+	}
+
+	public int getMinSize() {
+		return this.minSize;
+	}
+
+	public int getLevel() {
+		return this.level;
+	}
+
+	public boolean isRequestDecoding() {
+		return this.requestDecoding;
+	}
+
+	/**
+	 * Picks a response encoding from an Accept-Encoding header
+	 * 
+	 * @param acceptEncoding
+	 *            the header value (may be null)
+	 * @return {@link #GZIP}, {@link #DEFLATE}, or null if the response
+	 *         shouldn't be compressed
+	 */
+	public String negotiate(String acceptEncoding) {
+		if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+			return null;
+		}
+		float gzip = -1f;
+		float deflate = -1f;
+		float wildcard = -1f;
+		for (String element : COMMA.split(acceptEncoding)) {
+			int semicolon = element.indexOf(';');
+			String coding = (semicolon < 0 ? element : element.substring(0, semicolon)).trim()
+					.toLowerCase(Locale.ENGLISH);
+			float q = semicolon < 0 ? 1f : quality(element.substring(semicolon + 1));
+			if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+				gzip = Math.max(gzip, q);
+			} else if (coding.equals(DEFLATE)) {
+				deflate = Math.max(deflate, q);
+			} else if (coding.equals("*")) {
+				wildcard = q;
+			}
+		}
+		// codings that weren't listed get the wildcard's weight
+		gzip = gzip < 0 ? wildcard : gzip;
+		deflate = deflate < 0 ? wildcard : deflate;
+		if (gzip <= 0f && deflate <= 0f) {
+			return null;
+		}
+		return gzip >= deflate ? GZIP : DEFLATE;
+	}
+
+	/**
+	 * @param contentType
+	 *            the Content-Type of a response (may be null)
+	 * @return true if it's on the allowlist
+	 */
+	public boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		MediaType type;
+		try {
+			type = MediaType.valueOf(contentType);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		for (MediaType allowed : this.mediaTypes) {
+			if (matches(allowed, type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Like MediaType.isCompatible, but also understands suffix wildcards
+	 * such as application/*+json
+	 */
+	private static boolean matches(MediaType allowed, MediaType type) {
+		if (!allowed.getType().equals("*") && !allowed.getType().equalsIgnoreCase(type.getType())) {
+			return false;
+		}
+		String subtype = allowed.getSubtype();
+		if (subtype.equals("*")) {
+			return true;
+		}
+		if (subtype.startsWith("*+")) {
+			return type.getSubtype().toLowerCase(Locale.ENGLISH).endsWith(subtype.substring(1));
+		}
+		return subtype.equalsIgnoreCase(type.getSubtype());
+	}
+
+	private static float quality(String parameters) {
+		for (String parameter : Splitter.on(';').trimResults().split(parameters)) {
+			if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+				try {
+					return Float.parseFloat(parameter.substring(2));
+				} catch (NumberFormatException e) {
+					return 0f;
+				}
+			}
+		}
+		return 1f;
+	}
+}
@@ -0,0 +1,106 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+
+import java.nio.ByteBuffer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+
+import com.google.common.base.Splitter;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Entity tags for rendered responses (see
+ * {@link ServiceBuilder#withEntityTags(boolean)}): a strong ETag is a 128-bit
+ * murmur3 hash of the body, which is quick to compute and (unlike a
+ * cryptographic hash) costs a small fraction of what serializing the body
+ * did. Also implements the If-None-Match check, for these tags and for tags
+ * set by resources.
+ *
+ * @author denis.rangel
+ */
+public final class EntityTags {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+
+	private EntityTags() {
+	}
+
+	/**
+	 * @param content
+	 *            a response body
+	 * @return a strong entity tag for it (quoted, as sent in the ETag header)
+	 */
+	public static String of(ChannelBuffer content) {
+		Hasher hasher = HASH.newHasher();
+		for (ByteBuffer part : content.toByteBuffers()) {
+			if (part.hasArray()) {
+				hasher.putBytes(part.array(), part.arrayOffset() + part.position(), part.remaining());
+			} else {
+				byte[] bytes = new byte[part.remaining()];
+				part.duplicate().get(bytes);
+				hasher.putBytes(bytes);
+			}
+		}
+		return '"' + hasher.hash().toString() + '"';
+	}
+
+	/**
+	 * Compares an If-None-Match header with an entity tag, the way RFC 7232
+	 * says to for GET and HEAD (i.e. weak tags match their strong
+	 * counterparts)
+	 * 
+	 * @param ifNoneMatch
+	 *            the header value (may be null)
+	 * @param etag
+	 *            the current entity tag (may be null)
+	 * @return true if the client's copy is current
+	 */
+	public static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null || etag == null) {
+			return false;
+		}
+		String opaque = opaque(etag);
+		for (String candidate : COMMA.split(ifNoneMatch)) {
+			if (candidate.equals("*") || opaque(candidate).equals(opaque)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Turns a 200 response into a 304 (keeping its headers, but dropping its
+	 * body) if the client already has it
+	 * 
+	 * @param ifNoneMatch
+	 *            the request's If-None-Match header (may be null)
+	 * @param response
+	 *            a complete, non-chunked response
+	 * @return true if the response was changed
+	 */
+	public static boolean notModified(String ifNoneMatch, HttpResponse response) {
+		if (response.getStatus().getCode() != HttpResponseStatus.OK.getCode()
+				|| !matches(ifNoneMatch, response.headers().get(ETAG))) {
+			return false;
+		}
+		response.setStatus(HttpResponseStatus.NOT_MODIFIED);
+		response.headers().remove(CONTENT_LENGTH);
+		response.headers().remove(CONTENT_TYPE);
+		response.setContent(ChannelBuffers.EMPTY_BUFFER);
+		return true;
+	}
+
+	private static String opaque(String tag) {
+		return tag.startsWith("W/") ? tag.substring(2) : tag;
+	}
+}
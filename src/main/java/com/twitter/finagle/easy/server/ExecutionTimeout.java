@@ -0,0 +1,39 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds how long the service spends answering requests for a resource method
+ * (or every method of a resource class), counting from the moment the request
+ * was received. Requests that are still waiting for a worker when the time is
+ * up are never dispatched, and ones still running (or suspended) are answered
+ * with a 504 right away; the resource method itself isn't interrupted, and
+ * whatever it produces afterwards is discarded.
+ *
+ * The annotation may be placed on the implementation class or on the
+ * JAX-RS-annotated interface, and only applies to routes resolved when the
+ * service is built (see {@link RouteTable}). The caller's own deadline (see
+ * {@link RequestDeadline}) applies as well, if it's earlier.
+ *
+ * @author denis.rangel
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface ExecutionTimeout {
+
+	/**
+	 * @return the timeout
+	 */
+	long value();
+
+	/**
+	 * @return units for the timeout
+	 */
+	TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
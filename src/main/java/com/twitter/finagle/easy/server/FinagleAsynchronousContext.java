@@ -0,0 +1,275 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.core.AbstractAsynchronousResponse;
+import org.jboss.resteasy.core.SynchronousDispatcher;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.HttpResponse;
+import org.jboss.resteasy.spi.ResteasyAsynchronousContext;
+import org.jboss.resteasy.spi.ResteasyAsynchronousResponse;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Asynchronous processing support for requests dispatched through
+ * {@link ResteasyFinagleService}. When a resource suspends the request (e.g.
+ * by taking a {@code @Suspended AsyncResponse} parameter), the worker thread
+ * returns without answering the caller; the Finagle promise is completed
+ * later, from whichever thread resumes (or cancels, or times out) the
+ * response.
+ *
+ * @author denis.rangel
+ *
+ * @see "http://bill.burkecentral.com/2008/10/09/jax-rs-asynch-http/"
+ */
+public class FinagleAsynchronousContext implements ResteasyAsynchronousContext {
+
+	private final SynchronousDispatcher dispatcher;
+	private final HttpRequest request;
+	private final HttpResponse response;
+	private final ScheduledExecutorService timer;
+	private final Runnable onComplete;
+	private volatile FinagleAsynchronousResponse asyncResponse;
+
+	/**
+	 * @param dispatcher
+	 *            the dispatcher handling the request
+	 * @param request
+	 *            the Resteasy request
+	 * @param response
+	 *            the Resteasy response that a resumed request is written to
+	 * @param timer
+	 *            used to schedule suspend timeouts
+	 * @param onComplete
+	 *            invoked once the response has been written, to hand it back
+	 *            to Finagle
+	 */
+	public FinagleAsynchronousContext(SynchronousDispatcher dispatcher, HttpRequest request, HttpResponse response,
+			ScheduledExecutorService timer, Runnable onComplete) {
+		this.dispatcher = Preconditions.checkNotNull(dispatcher, "dispatcher");
+		this.request = Preconditions.checkNotNull(request, "request");
+		this.response = Preconditions.checkNotNull(response, "response");
+		this.timer = Preconditions.checkNotNull(timer, "timer");
+		this.onComplete = Preconditions.checkNotNull(onComplete, "onComplete");
+	}
+
+	@Override
+	public boolean isSuspended() {
+		return this.asyncResponse != null;
+	}
+
+	@Override
+	public ResteasyAsynchronousResponse getAsyncResponse() {
+		return this.asyncResponse;
+	}
+
+	@Override
+	public ResteasyAsynchronousResponse suspend() throws IllegalStateException {
+		return suspend(0L, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public ResteasyAsynchronousResponse suspend(long millis) throws IllegalStateException {
+		return suspend(millis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized ResteasyAsynchronousResponse suspend(long time, TimeUnit unit) throws IllegalStateException {
+		if (this.asyncResponse != null) {
+			throw new IllegalStateException("request is already suspended");
+		}
+		if (this.response instanceof OutboundServiceResponse) {
+			// the response is written when the request is resumed, possibly
+			// on a Finagle thread, so it's buffered rather than streamed
+			((OutboundServiceResponse) this.response).disableStreaming();
+		}
+		FinagleAsynchronousResponse suspended = new FinagleAsynchronousResponse();
+		if (time > 0) {
+			suspended.setTimeout(time, unit);
+		}
+		this.asyncResponse = suspended;
+		return suspended;
+	}
+
+	/**
+	 * {@link javax.ws.rs.container.AsyncResponse} that writes the resumed
+	 * response through the dispatcher, then completes the Finagle promise.
+	 * Whichever of resume/cancel/timeout happens first wins; the rest are
+	 * no-ops.
+	 */
+	protected class FinagleAsynchronousResponse extends AbstractAsynchronousResponse {
+
+		private final Object responseLock;
+		private boolean done;
+		private boolean cancelled;
+		private ScheduledFuture<?> timeoutFuture;
+		private TimeoutHandler handler;
+
+		protected FinagleAsynchronousResponse() {
+			super(dispatcher, request, response);
+			this.responseLock = new Object();
+		}
+
+		@Override
+		public void initialRequestThreadFinished() {
+			// nothing to do: the worker thread has already moved on
+		}
+
+		@Override
+		public boolean resume(Object entity) {
+			synchronized (this.responseLock) {
+				if (this.done || this.cancelled) {
+					return false;
+				}
+				this.done = true;
+				cancelTimeout();
+				try {
+					return internalResume(entity);
+				} finally {
+					onComplete.run();
+				}
+			}
+		}
+
+		@Override
+		public boolean resume(Throwable error) {
+			synchronized (this.responseLock) {
+				if (this.done || this.cancelled) {
+					return false;
+				}
+				this.done = true;
+				cancelTimeout();
+				try {
+					return internalResume(error);
+				} finally {
+					onComplete.run();
+				}
+			}
+		}
+
+		@Override
+		public boolean cancel() {
+			return cancel(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+		}
+
+		@Override
+		public boolean cancel(int retryAfter) {
+			return cancel(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, retryAfter).build());
+		}
+
+		@Override
+		public boolean cancel(Date retryAfter) {
+			return cancel(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, retryAfter).build());
+		}
+
+		protected boolean cancel(Response cancellation) {
+			synchronized (this.responseLock) {
+				if (this.cancelled) {
+					return true;
+				}
+				if (this.done) {
+					return false;
+				}
+				this.done = true;
+				this.cancelled = true;
+				cancelTimeout();
+				try {
+					return internalResume(cancellation);
+				} finally {
+					onComplete.run();
+				}
+			}
+		}
+
+		@Override
+		public boolean isSuspended() {
+			synchronized (this.responseLock) {
+				return !this.done && !this.cancelled;
+			}
+		}
+
+		@Override
+		public boolean isCancelled() {
+			synchronized (this.responseLock) {
+				return this.cancelled;
+			}
+		}
+
+		@Override
+		public boolean isDone() {
+			synchronized (this.responseLock) {
+				return this.done;
+			}
+		}
+
+		@Override
+		public void setTimeoutHandler(TimeoutHandler handler) {
+			synchronized (this.responseLock) {
+				this.handler = handler;
+			}
+		}
+
+		@Override
+		public boolean setTimeout(long time, TimeUnit unit) {
+			synchronized (this.responseLock) {
+				if (this.done || this.cancelled) {
+					return false;
+				}
+				if (this.timeoutFuture != null && !this.timeoutFuture.cancel(false)) {
+					// the previous timeout is already firing
+					return false;
+				}
+				this.timeoutFuture = timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						handleTimeout();
+					}
+				}, time, unit);
+				return true;
+			}
+		}
+
+		/*
+		 * Gives the resource's TimeoutHandler a chance to respond (or extend
+		 * the timeout); otherwise answers with a 503, per the JAX-RS spec.
+		 */
+		protected void handleTimeout() {
+			TimeoutHandler timeoutHandler;
+			synchronized (this.responseLock) {
+				if (this.done || this.cancelled) {
+					return;
+				}
+				this.timeoutFuture = null;
+				timeoutHandler = this.handler;
+			}
+			if (timeoutHandler != null) {
+				timeoutHandler.handleTimeout(this);
+			}
+			synchronized (this.responseLock) {
+				if (this.timeoutFuture != null) {
+					// the handler extended the timeout
+					return;
+				}
+			}
+			resume(new ServiceUnavailableException());
+		}
+
+		private void cancelTimeout() {
+			if (this.timeoutFuture != null) {
+				this.timeoutFuture.cancel(false);
+				this.timeoutFuture = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+import javax.ws.rs.NotAllowedException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.core.AsynchronousDispatcher;
+import org.jboss.resteasy.core.ResourceInvoker;
+import org.jboss.resteasy.specimpl.BuiltResponse;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.HttpResponse;
+import org.jboss.resteasy.spi.ResteasyAsynchronousResponse;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+
+import com.google.common.base.Preconditions;
+import com.twitter.util.Future;
+import com.twitter.util.FutureEventListener;
+
+/**
+ * Dispatcher that lets resource methods return a Twitter
+ * {@link com.twitter.util.Future} or a {@link CompletionStage} instead of a
+ * finished entity. Rather than serializing the future itself, the request is
+ * suspended (see {@link FinagleAsynchronousContext}) and the value is
+ * serialized once it's available, on whichever thread satisfies the future.
+ * Failures go through the usual exception mappers.
+ * <p>
+ * Also short-circuits Resteasy's resource matching for requests it has seen
+ * before (see {@link RouteCache}).
+ *
+ * @author denis.rangel
+ */
+public class FinagleDispatcher extends AsynchronousDispatcher {
+
+	/**
+	 * Request attribute holding the {@link System#nanoTime()} at which the
+	 * response started to be written (used to split dispatch time from
+	 * serialization time)
+	 */
+	public static final String WRITE_STARTED = FinagleDispatcher.class.getName() + ".writeStarted";
+
+	/*
+	 * Request attribute in which Resteasy's matcher leaves the media type it
+	 * chose from the Accept header (SegmentNode.RESTEASY_CHOSEN_ACCEPT)
+	 */
+	private static final String CHOSEN_ACCEPT = "RESTEASY_CHOSEN_ACCEPT";
+
+	private RouteCache routeCache;
+
+	public FinagleDispatcher(ResteasyProviderFactory providerFactory) {
+		super(providerFactory);
+		this.routeCache = RouteCache.DISABLED;
+	}
+
+	/**
+	 * @param routeCache
+	 *            remembers how requests were matched
+	 */
+	public void setRouteCache(RouteCache routeCache) {
+		this.routeCache = Preconditions.checkNotNull(routeCache, "routeCache");
+	}
+
+	@Override
+	public ResourceInvoker getInvoker(HttpRequest request) {
+		RouteCache.Key key = this.routeCache.keyFor(request);
+		if (key == null) {
+			return super.getInvoker(request);
+		}
+		RouteCache.Outcome outcome = this.routeCache.get(key);
+		if (outcome != null) {
+			if (outcome.getInvoker() == null) {
+				throw outcome.newFailure();
+			}
+			// literal paths have no parameters, so this is all matching does
+			request.getUri().pushMatchedPath(request.getUri().getMatchingPath());
+			if (outcome.getChosenAccept() != null) {
+				request.setAttribute(CHOSEN_ACCEPT, outcome.getChosenAccept());
+			}
+			return outcome.getInvoker();
+		}
+		ResourceInvoker invoker;
+		try {
+			invoker = super.getInvoker(request);
+		} catch (NotFoundException e) {
+			this.routeCache.recordNotFound(key);
+			throw e;
+		} catch (NotAllowedException e) {
+			this.routeCache.recordNotAllowed(key, e.getResponse().getAllowedMethods());
+			throw e;
+		}
+		this.routeCache.recordMatch(key, invoker, request.getAttribute(CHOSEN_ACCEPT));
+		return invoker;
+	}
+
+	@Override
+	public void writeResponse(HttpRequest request, HttpResponse response, Response jaxrsResponse) {
+		Object entity = jaxrsResponse.getEntity();
+		if (entity instanceof Future) {
+			final DeferredResponse deferred = new DeferredResponse(request, jaxrsResponse);
+			((Future<?>) entity).addEventListener(new FutureEventListener<Object>() {
+				@Override
+				public void onSuccess(Object value) {
+					deferred.resume(value);
+				}
+
+				@Override
+				public void onFailure(Throwable cause) {
+					deferred.fail(cause);
+				}
+			});
+		} else if (entity instanceof CompletionStage) {
+			final DeferredResponse deferred = new DeferredResponse(request, jaxrsResponse);
+			((CompletionStage<?>) entity).whenComplete(new BiConsumer<Object, Throwable>() {
+				@Override
+				public void accept(Object value, Throwable cause) {
+					if (cause == null) {
+						deferred.resume(value);
+					} else {
+						deferred.fail(cause instanceof CompletionException && cause.getCause() != null
+								? cause.getCause() : cause);
+					}
+				}
+			});
+		} else {
+			request.setAttribute(WRITE_STARTED, System.nanoTime());
+			super.writeResponse(request, response, jaxrsResponse);
+		}
+	}
+
+	/*
+	 * A suspended request waiting for the value of a future; the original
+	 * response supplies the status, headers and annotations to serialize that
+	 * value with.
+	 */
+	private static class DeferredResponse {
+
+		private final ResteasyAsynchronousResponse asyncResponse;
+		private final Response template;
+
+		DeferredResponse(HttpRequest request, Response template) {
+			this.asyncResponse = request.getAsyncContext().suspend();
+			this.template = template;
+		}
+
+		void resume(Object value) {
+			if (value instanceof Response) {
+				this.asyncResponse.resume(value);
+			} else if (value == null) {
+				this.asyncResponse.resume(Response.noContent().build());
+			} else {
+				BuiltResponse resolved = (BuiltResponse) Response.fromResponse(this.template).entity(value).build();
+				if (this.template instanceof BuiltResponse) {
+					BuiltResponse built = (BuiltResponse) this.template;
+					resolved.setAnnotations(built.getAnnotations());
+					resolved.setGenericType(valueType(built.getGenericType(), value));
+				}
+				this.asyncResponse.resume(resolved);
+			}
+		}
+
+		void fail(Throwable cause) {
+			this.asyncResponse.resume(cause);
+		}
+
+		/*
+		 * The declared type of the future's value (e.g. List<Item> for a
+		 * method returning Future<List<Item>>), so generic-aware providers
+		 * still work; falls back to the value's class
+		 */
+		private static Type valueType(Type futureType, Object value) {
+			if (futureType instanceof ParameterizedType) {
+				Type[] arguments = ((ParameterizedType) futureType).getActualTypeArguments();
+				if (arguments.length == 1
+						&& (arguments[0] instanceof Class || arguments[0] instanceof ParameterizedType)) {
+					return arguments[0];
+				}
+			}
+			return value.getClass();
+		}
+	}
+}
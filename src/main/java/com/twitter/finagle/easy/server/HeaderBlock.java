@@ -0,0 +1,111 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The response headers a route always sends, checked and turned into strings
+ * once, when the service is built, so that attaching them to a response is
+ * a few lookups and no formatting. Holds the route's {@link StaticHeader}s,
+ * plus the encoded form of each media type the route produces, which
+ * {@link NettyHeaderWrapper} writes in place of the media type Resteasy
+ * gives it.
+ *
+ * @author denis.rangel
+ */
+public class HeaderBlock {
+
+	/**
+	 * A block with no headers and no media types
+	 */
+	public static final HeaderBlock EMPTY = new HeaderBlock(Collections.<String, String> emptyMap(),
+			Collections.<MediaType> emptyList());
+
+	private final String[] names;
+	private final String[] values;
+	private final MediaType[] mediaTypes;
+	private final String[] encodedMediaTypes;
+
+	/**
+	 * @param headers
+	 *            static headers, by name
+	 * @param mediaTypes
+	 *            media types the route produces
+	 * @throws IllegalArgumentException
+	 *             if a header name or value isn't valid in HTTP
+	 */
+	public HeaderBlock(Map<String, String> headers, List<MediaType> mediaTypes) {
+		Preconditions.checkNotNull(headers, "headers");
+		Preconditions.checkNotNull(mediaTypes, "mediaTypes");
+		// Netty rejects invalid names and values as they're set
+		HttpHeaders validated = new DefaultHttpResponse(HTTP_1_1, OK).headers();
+		this.names = new String[headers.size()];
+		this.values = new String[headers.size()];
+		int i = 0;
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			validated.set(header.getKey(), header.getValue());
+			this.names[i] = header.getKey();
+			this.values[i] = header.getValue();
+			i++;
+		}
+		this.mediaTypes = mediaTypes.toArray(new MediaType[mediaTypes.size()]);
+		this.encodedMediaTypes = new String[this.mediaTypes.length];
+		for (int j = 0; j < this.mediaTypes.length; j++) {
+			this.encodedMediaTypes[j] = this.mediaTypes[j].toString();
+		}
+	}
+
+	/**
+	 * @return true if there are no static headers
+	 */
+	public boolean isEmpty() {
+		return this.names.length == 0;
+	}
+
+	/**
+	 * Adds the static headers the response doesn't have yet; error responses
+	 * are left alone
+	 *
+	 * @param response
+	 *            a response that hasn't been sent
+	 */
+	public void applyTo(HttpResponse response) {
+		if (this.names.length == 0 || response.getStatus().getCode() >= 400) {
+			return;
+		}
+		HttpHeaders headers = response.headers();
+		for (int i = 0; i < this.names.length; i++) {
+			if (!headers.contains(this.names[i])) {
+				headers.set(this.names[i], this.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param mediaType
+	 *            a media type about to be written as a header
+	 * @return its encoded form, or null if the route doesn't produce it
+	 */
+	public String encode(MediaType mediaType) {
+		// one or two types per route, so scanning beats hashing (and
+		// MediaType.hashCode() builds strings)
+		for (int i = 0; i < this.mediaTypes.length; i++) {
+			if (this.mediaTypes[i] == mediaType || this.mediaTypes[i].equals(mediaType)) {
+				return this.encodedMediaTypes[i];
+			}
+		}
+		return null;
+	}
+}
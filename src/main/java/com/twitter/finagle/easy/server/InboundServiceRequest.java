@@ -3,8 +3,9 @@ package com.twitter.finagle.easy.server;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.core.HttpHeaders;
@@ -12,16 +13,16 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.UriInfo;
 
 import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.jboss.resteasy.plugins.providers.FormUrlEncodedProvider;
-import org.jboss.resteasy.specimpl.ResteasyUriBuilder;
 import org.jboss.resteasy.spi.ResteasyAsynchronousContext;
 import org.jboss.resteasy.spi.ResteasyAsynchronousResponse;
 import org.jboss.resteasy.spi.ResteasyUriInfo;
 import org.jboss.resteasy.util.Encode;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
-import com.twitter.finagle.easy.util.ServiceUtils;
 import com.twitter.finagle.httpx.Request;
 
 /**
@@ -29,7 +30,14 @@ import com.twitter.finagle.httpx.Request;
  * Implements Resteasy's {@link org.jboss.resteasy.spi.HttpRequest} interface on
  * top of a Netty {@link org.jboss.netty.handler.codec.http.HttpRequest}
  *
- * Currently doesn't support asynchronous processing.
+ * Asynchronous processing is only available once the request has been given
+ * an asynchronous context by {@link ResteasyFinagleService} (see
+ * {@link FinagleAsynchronousContext}).
+ *
+ * The service recycles these adapters: each worker thread keeps the one it
+ * used last and resets it for its next request (see {@link #acquire} and
+ * {@link #release()}), and attributes and the body stream are only created
+ * when they're asked for.
  *
  * @author ed.peters
  * @author denis.rangel
@@ -38,40 +46,208 @@ import com.twitter.finagle.httpx.Request;
  */
 public class InboundServiceRequest implements org.jboss.resteasy.spi.HttpRequest {
 
-	private final Request nettyRequest;
-	private final Map<String, Object> attributeMap;
+	/*
+	 * Used until (unless) we're given a real asynchronous context
+	 */
+	private static final ResteasyAsynchronousContext UNSUPPORTED_ASYNC_CONTEXT = new ResteasyAsynchronousContext() {
+
+		@Override
+		public boolean isSuspended() {
+			return false;
+		}
+
+		@Override
+		public ResteasyAsynchronousResponse getAsyncResponse() {
+			return null;
+		}
+
+		@Override
+		public ResteasyAsynchronousResponse suspend() throws IllegalStateException {
+			throw new IllegalStateException("asynchronous processing is not available for this request");
+		}
+
+		@Override
+		public ResteasyAsynchronousResponse suspend(long millis) throws IllegalStateException {
+			return suspend();
+		}
+
+		@Override
+		public ResteasyAsynchronousResponse suspend(long time, TimeUnit unit) throws IllegalStateException {
+			return suspend();
+		}
+
+	};
+
+	/*
+	 * The adapter each thread released last, if it hasn't taken it back yet
+	 */
+	private static final ThreadLocal<InboundServiceRequest> RELEASED = new ThreadLocal<InboundServiceRequest>();
+
+	/*
+	 * What a released adapter's header map points at, so it doesn't keep the
+	 * last request alive (nothing should write to it)
+	 */
+	private static final org.jboss.netty.handler.codec.http.HttpHeaders NO_HEADERS = new DefaultHttpRequest(
+			HttpVersion.HTTP_1_1, HttpMethod.GET, "/").headers();
+
+	private Request nettyRequest;
+	private final NettyRequestHeaderWrapper headerWrapper;
 	private final HttpHeaders jaxrsHeaders;
-	private final UriInfo jaxrsUriInfo;
+	private UriInfo jaxrsUriInfo;
+	private String[] attributeNames;
+	private Object[] attributeValues;
+	private int attributeCount;
 	private InputStream overrideStream;
 	private InputStream underlyingStream;
 	private MultivaluedMap<String, String> rawFormParams;
 	private MultivaluedMap<String, String> decodedFormParams;
+	private ResteasyAsynchronousContext asyncContext;
 
 	public InboundServiceRequest(Request nettyRequest) {
-		this.nettyRequest = nettyRequest;
-		this.jaxrsHeaders = ServiceUtils.toHeaders(ServiceUtils.toMultimap(nettyRequest.getHttpMessage()));
-		this.jaxrsUriInfo = new ResteasyUriInfo(ResteasyUriBuilder.fromUri(nettyRequest.getUri()).build());
-		this.attributeMap = Maps.newHashMap();
+		this(nettyRequest, RequestTarget.parse(nettyRequest.getUri()));
+	}
+
+	/**
+	 * @param nettyRequest
+	 *            the request from Netty
+	 * @param target
+	 *            its request-target, already parsed
+	 */
+	public InboundServiceRequest(Request nettyRequest, RequestTarget target) {
+		this(nettyRequest, target, null);
+	}
+
+	/**
+	 * @param nettyRequest
+	 *            the request from Netty
+	 * @param target
+	 *            its request-target, already parsed
+	 * @param body
+	 *            the request body (e.g. a {@link ReaderInputStream} for a
+	 *            streamed request, whose content isn't aggregated), or null
+	 *            to read the request's content
+	 */
+	public InboundServiceRequest(Request nettyRequest, RequestTarget target, InputStream body) {
+		this.headerWrapper = new NettyRequestHeaderWrapper(nettyRequest.headers());
+		this.jaxrsHeaders = new LazyHttpHeaders(this.headerWrapper);
+		reset(nettyRequest, target, body);
+	}
+
+	/**
+	 * Takes back the adapter this thread released last, if there is one, and
+	 * resets it for the given request; otherwise creates a new one
+	 *
+	 * @param nettyRequest
+	 *            the request from Netty
+	 * @param target
+	 *            its request-target, already parsed
+	 * @param body
+	 *            the request body, or null to read the request's content
+	 * @return an adapter for the request
+	 */
+	static InboundServiceRequest acquire(Request nettyRequest, RequestTarget target, InputStream body) {
+		InboundServiceRequest request = RELEASED.get();
+		if (request == null) {
+			return new InboundServiceRequest(nettyRequest, target, body);
+		}
+		// taken out, so a request dispatched from within this one gets its own
+		RELEASED.set(null);
+		request.headerWrapper.reset(nettyRequest.headers());
+		request.reset(nettyRequest, target, body);
+		return request;
+	}
+
+	/**
+	 * Hands the adapter back for the next request on this thread. Only call
+	 * this once Resteasy is done with the request, and never for a suspended
+	 * one. The adapter lets go of the request (its headers, URI and body), so
+	 * an idle thread doesn't keep it alive; it can't be used again until it's
+	 * reset for another request.
+	 */
+	void release() {
+		this.nettyRequest = null;
+		this.jaxrsUriInfo = null;
+		this.headerWrapper.reset(NO_HEADERS);
+		this.overrideStream = null;
+		this.underlyingStream = null;
+		this.rawFormParams = null;
+		this.decodedFormParams = null;
+		this.asyncContext = UNSUPPORTED_ASYNC_CONTEXT;
+		clearAttributes();
+		RELEASED.set(this);
+	}
+
+	private void reset(Request nettyRequest, RequestTarget target, InputStream body) {
+		this.nettyRequest = Preconditions.checkNotNull(nettyRequest, "nettyRequest");
+		this.jaxrsUriInfo = new ResteasyUriInfo(target.toUri());
 		this.overrideStream = null;
-		this.underlyingStream = new ChannelBufferInputStream(nettyRequest.getContent());
+		this.underlyingStream = body;
+		this.rawFormParams = null;
+		this.decodedFormParams = null;
+		this.asyncContext = UNSUPPORTED_ASYNC_CONTEXT;
+		clearAttributes();
+	}
+
+	/*
+	 * Attributes are few (Resteasy and the dispatcher set two or three), so
+	 * they're kept in a pair of small arrays that are scanned rather than
+	 * hashed, and kept for the next request
+	 */
+	private int indexOfAttribute(String name) {
+		for (int i = 0; i < this.attributeCount; i++) {
+			if (this.attributeNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void clearAttributes() {
+		if (this.attributeCount > 0) {
+			Arrays.fill(this.attributeNames, 0, this.attributeCount, null);
+			Arrays.fill(this.attributeValues, 0, this.attributeCount, null);
+			this.attributeCount = 0;
+		}
 	}
 
 	@Override
 	public Object getAttribute(String name) {
 		Preconditions.checkNotNull(name, "name");
-		return this.attributeMap.get(name);
+		int index = indexOfAttribute(name);
+		return index < 0 ? null : this.attributeValues[index];
 	}
 
 	@Override
 	public void removeAttribute(String name) {
 		Preconditions.checkNotNull(name, "name");
-		this.attributeMap.remove(name);
+		int index = indexOfAttribute(name);
+		if (index >= 0) {
+			int last = --this.attributeCount;
+			System.arraycopy(this.attributeNames, index + 1, this.attributeNames, index, last - index);
+			System.arraycopy(this.attributeValues, index + 1, this.attributeValues, index, last - index);
+			this.attributeNames[last] = null;
+			this.attributeValues[last] = null;
+		}
 	}
 
 	@Override
 	public void setAttribute(String name, Object value) {
 		Preconditions.checkNotNull(name, "name");
-		this.attributeMap.put(name, value);
+		int index = indexOfAttribute(name);
+		if (index >= 0) {
+			this.attributeValues[index] = value;
+			return;
+		}
+		if (this.attributeNames == null) {
+			this.attributeNames = new String[4];
+			this.attributeValues = new Object[4];
+		} else if (this.attributeCount == this.attributeNames.length) {
+			this.attributeNames = Arrays.copyOf(this.attributeNames, this.attributeCount * 2);
+			this.attributeValues = Arrays.copyOf(this.attributeValues, this.attributeCount * 2);
+		}
+		this.attributeNames[this.attributeCount] = name;
+		this.attributeValues[this.attributeCount] = value;
+		this.attributeCount++;
 	}
 
 	@Override
@@ -89,7 +265,13 @@ public class InboundServiceRequest implements org.jboss.resteasy.spi.HttpRequest
 		// this is the same way RestEASY implements this on top of
 		// HttpServletRequests: as a temporary override of the underlying
 		// input stream
-		return this.overrideStream == null ? this.underlyingStream : this.overrideStream;
+		if (this.overrideStream != null) {
+			return this.overrideStream;
+		}
+		if (this.underlyingStream == null) {
+			this.underlyingStream = new ChannelBufferInputStream(this.nettyRequest.getContent());
+		}
+		return this.underlyingStream;
 	}
 
 	@Override
@@ -133,8 +315,8 @@ public class InboundServiceRequest implements org.jboss.resteasy.spi.HttpRequest
 
 	@Override
 	public MultivaluedMap<String, String> getMutableHeaders() {
-		// TODO Auto-generated method stub
-		return null;
+		// writes go straight through to the Netty request
+		return this.headerWrapper;
 	}
 
 	@Override
@@ -162,46 +344,21 @@ public class InboundServiceRequest implements org.jboss.resteasy.spi.HttpRequest
 
 	@Override
 	public Enumeration<String> getAttributeNames() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		return this.attributeCount == 0 ? Collections.<String> emptyEnumeration() : Collections
+				.enumeration(Arrays.asList(Arrays.copyOf(this.attributeNames, this.attributeCount)));
 	}
 
 	@Override
 	public ResteasyAsynchronousContext getAsyncContext() {
-		// TODO Auto-generated method stub
-		return new ResteasyAsynchronousContext() {
-
-			@Override
-			public boolean isSuspended() {
-				// TODO Auto-generated method stub
-				return false;
-			}
-
-			@Override
-			public ResteasyAsynchronousResponse getAsyncResponse() {
-				// TODO Auto-generated method stub
-				return null;
-			}
-
-			@Override
-			public ResteasyAsynchronousResponse suspend() throws IllegalStateException {
-				// TODO Auto-generated method stub
-				return null;
-			}
-
-			@Override
-			public ResteasyAsynchronousResponse suspend(long millis) throws IllegalStateException {
-				// TODO Auto-generated method stub
-				return null;
-			}
-
-			@Override
-			public ResteasyAsynchronousResponse suspend(long time, TimeUnit unit) throws IllegalStateException {
-				// TODO Auto-generated method stub
-				return null;
-			}
+		return this.asyncContext;
+	}
 
-		};
+	/**
+	 * @param asyncContext
+	 *            the context used to suspend and resume this request
+	 */
+	public void setAsyncContext(ResteasyAsynchronousContext asyncContext) {
+		this.asyncContext = Preconditions.checkNotNull(asyncContext, "asyncContext");
 	}
 
 	@Override
@@ -0,0 +1,102 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.resteasy.specimpl.ResteasyHttpHeaders;
+import org.jboss.resteasy.util.CookieParser;
+
+import com.google.common.collect.Maps;
+
+/**
+ * JAX-RS {@link javax.ws.rs.core.HttpHeaders} for an inbound request, backed
+ * by a {@link NettyRequestHeaderWrapper}. Nothing is parsed until it's asked
+ * for; parsed values (acceptable media types and languages, the content type
+ * and cookies) are then kept until the headers change.
+ *
+ * @author denis.rangel
+ */
+public class LazyHttpHeaders extends ResteasyHttpHeaders {
+
+	private static final int UNPARSED = -1;
+
+	private final NettyRequestHeaderWrapper headers;
+	private List<MediaType> acceptableMediaTypes;
+	private int acceptableMediaTypesVersion = UNPARSED;
+	private List<Locale> acceptableLanguages;
+	private int acceptableLanguagesVersion = UNPARSED;
+	private MediaType mediaType;
+	private int mediaTypeVersion = UNPARSED;
+	private Map<String, Cookie> cookies;
+	private int cookiesVersion = UNPARSED;
+
+	public LazyHttpHeaders(NettyRequestHeaderWrapper headers) {
+		super(headers);
+		this.headers = headers;
+	}
+
+	@Override
+	public List<MediaType> getAcceptableMediaTypes() {
+		if (this.acceptableMediaTypesVersion != this.headers.getModCount()) {
+			this.acceptableMediaTypes = super.getAcceptableMediaTypes();
+			this.acceptableMediaTypesVersion = this.headers.getModCount();
+		}
+		return this.acceptableMediaTypes;
+	}
+
+	@Override
+	public List<Locale> getAcceptableLanguages() {
+		if (this.acceptableLanguagesVersion != this.headers.getModCount()) {
+			this.acceptableLanguages = super.getAcceptableLanguages();
+			this.acceptableLanguagesVersion = this.headers.getModCount();
+		}
+		return this.acceptableLanguages;
+	}
+
+	@Override
+	public MediaType getMediaType() {
+		if (this.mediaTypeVersion != this.headers.getModCount()) {
+			this.mediaType = super.getMediaType();
+			this.mediaTypeVersion = this.headers.getModCount();
+		}
+		return this.mediaType;
+	}
+
+	@Override
+	public Map<String, Cookie> getCookies() {
+		return Collections.unmodifiableMap(getMutableCookies());
+	}
+
+	@Override
+	public Map<String, Cookie> getMutableCookies() {
+		if (this.cookiesVersion != this.headers.getModCount()) {
+			this.cookies = parseCookies();
+			this.cookiesVersion = this.headers.getModCount();
+		}
+		return this.cookies;
+	}
+
+	@Override
+	public void setCookies(Map<String, Cookie> cookies) {
+		this.cookies = cookies;
+		this.cookiesVersion = this.headers.getModCount();
+	}
+
+	private Map<String, Cookie> parseCookies() {
+		Map<String, Cookie> parsed = Maps.newHashMap();
+		List<String> values = this.headers.get(javax.ws.rs.core.HttpHeaders.COOKIE);
+		if (values != null) {
+			for (String value : values) {
+				for (Cookie cookie : CookieParser.parseCookies(value)) {
+					parsed.put(cookie.getName(), cookie);
+				}
+			}
+		}
+		return parsed;
+	}
+}
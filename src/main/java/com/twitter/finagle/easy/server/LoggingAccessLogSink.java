@@ -0,0 +1,36 @@
+package com.twitter.finagle.easy.server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes access log entries to commons-logging, at INFO, under the category
+ * {@value #CATEGORY}. This is the default sink.
+ *
+ * @author denis.rangel
+ */
+public class LoggingAccessLogSink implements AccessLogSink {
+
+	/**
+	 * Log category entries are written to by default
+	 */
+	public static final String CATEGORY = "com.twitter.finagle.easy.access";
+
+	private final Log log;
+
+	public LoggingAccessLogSink() {
+		this(LogFactory.getLog(CATEGORY));
+	}
+
+	public LoggingAccessLogSink(Log log) {
+		this.log = log;
+	}
+
+	@Override
+	public void write(AccessLogEntry entry) {
+		if (this.log.isInfoEnabled()) {
+			this.log.info(entry.toString());
+		}
+	}
+
+}
@@ -1,13 +1,17 @@
 package com.twitter.finagle.easy.server;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -17,45 +21,67 @@ import java.util.Set;
  * a Netty response object, so we can get Resteasy to write headers to
  * the correct location.
  *
+ * Resteasy reads the map over and over while writing a response, so nothing
+ * is copied: sizes, lookups and iteration go straight to the Netty headers.
+ * Media types the route is known to produce are written using the strings
+ * its {@link HeaderBlock} encoded when the service was built, rather than
+ * being formatted again for every response.
+ *
  * @author ed.peters
  * @author denis.rangel
  */
-public class NettyHeaderWrapper implements MultivaluedMap<String, Object> {
+public class NettyHeaderWrapper extends AbstractMap<String, List<Object>> implements MultivaluedMap<String, Object> {
 
     private final HttpResponse nettyResponse;
+    private final HeaderBlock headerBlock;
 
     public NettyHeaderWrapper(HttpResponse nettyResponse) {
-        this.nettyResponse = nettyResponse;
+        this(nettyResponse, HeaderBlock.EMPTY);
+    }
+
+    /**
+     * @param nettyResponse
+     *            the response the headers are written to
+     * @param headerBlock
+     *            pre-encoded headers of the route producing the response
+     */
+    public NettyHeaderWrapper(HttpResponse nettyResponse, HeaderBlock headerBlock) {
+        this.nettyResponse = Preconditions.checkNotNull(nettyResponse, "nettyResponse");
+        this.headerBlock = Preconditions.checkNotNull(headerBlock, "headerBlock");
+    }
+
+    private HttpHeaders headers() {
+        return this.nettyResponse.headers();
     }
 
     @Override
     public void add(String key, Object value) {
-        nettyResponse.headers().add(key, value);
+        headers().add(key, encode(value));
     }
 
     @Override
     public void putSingle(String key, Object value) {
-        nettyResponse.headers().set(key, value);
+        headers().set(key, encode(value));
     }
 
     @Override
     public Object getFirst(String key) {
-        return nettyResponse.headers().getAll(key).get(0);
+        return headers().get(key);
     }
 
     @Override
     public int size() {
-        return nettyResponse.headers().entries().size();
+        return headers().names().size();
     }
 
     @Override
     public boolean isEmpty() {
-        return size() > 0;
+        return headers().isEmpty();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return nettyResponse.headers().contains(key.toString());
+        return key != null && headers().contains(key.toString());
     }
 
     @Override
@@ -67,15 +93,15 @@ public class NettyHeaderWrapper implements MultivaluedMap<String, Object> {
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public List<Object> get(Object key) {
         // OK because we're returning a List
-        return (List) nettyResponse.headers().getAll(key.toString());
+        return (List) headers().getAll(key.toString());
     }
 
     @Override
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public List<Object> put(String key, List<Object> values) {
         // this is safe -- we're converting List<String> to List<Object>
-        List<Object> oldValue = (List) nettyResponse.headers().getAll(key.toString());
-        nettyResponse.headers().set(key, values);
+        List<Object> oldValue = (List) headers().getAll(key);
+        headers().set(key, encodeAll(values));
         return oldValue;
     }
 
@@ -83,64 +109,113 @@ public class NettyHeaderWrapper implements MultivaluedMap<String, Object> {
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public List<Object> remove(Object key) {
         // this is safe -- we're converting List<String> to List<Object>
-        List<Object> oldValue = (List) nettyResponse.headers().getAll(key.toString());
-        nettyResponse.headers().remove(key.toString());
+        List<Object> oldValue = (List) headers().getAll(key.toString());
+        headers().remove(key.toString());
         return oldValue;
     }
 
+    /**
+     * Sets every header in the map (this is how Resteasy commits a
+     * response's headers); unlike {@link #put(String, List)}, the old values
+     * aren't looked up
+     */
     @Override
     public void putAll(Map<? extends String, ? extends List<Object>> map) {
-        for (String key : map.keySet()) {
-            put(key, map.get(key));
+        for (Map.Entry<? extends String, ? extends List<Object>> entry : map.entrySet()) {
+            headers().set(entry.getKey(), encodeAll(entry.getValue()));
         }
     }
 
     @Override
     public void clear() {
-        nettyResponse.headers().clear();
+        headers().clear();
     }
 
     @Override
     public Set<String> keySet() {
-        return nettyResponse.headers().names();
+        return headers().names();
     }
 
     @Override
-    public Collection<List<Object>> values() {
-        List<List<Object>> all = Lists.newArrayList();
-        for (String key : keySet()) {
-            all.add(get(key));
-        }
-        return all;
+    public Set<Entry<String, List<Object>>> entrySet() {
+        return new AbstractSet<Entry<String, List<Object>>>() {
+
+            @Override
+            public Iterator<Entry<String, List<Object>>> iterator() {
+                final Iterator<String> names = headers().names().iterator();
+                return new Iterator<Entry<String, List<Object>>>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return names.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, List<Object>> next() {
+                        String name = names.next();
+                        return new SimpleImmutableEntry<String, List<Object>>(name, get(name));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return NettyHeaderWrapper.this.size();
+            }
+        };
     }
 
     @Override
-    public Set<Entry<String,List<Object>>> entrySet() {
-        Map<String,List<Object>> map = Maps.newHashMap();
-        for (String key : keySet()) {
-            map.put(key, get(key));
-        }
-        return map.entrySet();
+    public void addAll(String key, Object... values) {
+        addAll(key, Arrays.asList(values));
     }
 
-	@Override
-	public void addAll(String arg0, Object... arg1) {
-		this.addAll(arg0, Arrays.asList(arg1));
-	}
-
-	@Override
-	public void addAll(String arg0, List<Object> arg1) {
-		nettyResponse.headers().add(arg0, arg1);
-	}
+    @Override
+    public void addAll(String key, List<Object> values) {
+        headers().add(key, encodeAll(values));
+    }
 
-	@Override
-	public void addFirst(String arg0, Object arg1) {
-		nettyResponse.headers().add(arg0, arg1);
-	}
+    @Override
+    public void addFirst(String key, Object value) {
+        headers().add(key, encode(value));
+    }
 
-	@Override
-	public boolean equalsIgnoreValueOrder(MultivaluedMap<String, Object> arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
+    @Override
+    public boolean equalsIgnoreValueOrder(MultivaluedMap<String, Object> other) {
+        // TODO Auto-generated method stub
+        return false;
+    }
+
+    /*
+     * The pre-encoded form of a media type the route produces; anything else
+     * is left for Netty to turn into a string
+     */
+    private Object encode(Object value) {
+        if (value instanceof MediaType) {
+            String encoded = this.headerBlock.encode((MediaType) value);
+            if (encoded != null) {
+                return encoded;
+            }
+        }
+        return value;
+    }
+
+    /*
+     * Copies the values only if one of them has a pre-encoded form
+     */
+    private List<?> encodeAll(List<Object> values) {
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            Object encoded = encode(value);
+            if (encoded != value) {
+                List<Object> copy = Lists.newArrayList(values);
+                copy.set(i, encoded);
+                for (int j = i + 1; j < copy.size(); j++) {
+                    copy.set(j, encode(copy.get(j)));
+                }
+                return copy;
+            }
+        }
+        return values;
+    }
 }
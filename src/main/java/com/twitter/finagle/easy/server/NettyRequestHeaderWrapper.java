@@ -0,0 +1,199 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Implements the {@link javax.ws.rs.core.MultivaluedMap} API directly on top
+ * of the headers of an inbound Netty request, so Resteasy can read them
+ * without our copying every name and value up front. Lookups are
+ * case-insensitive (as they are in Netty). Writes go straight through to the
+ * Netty message.
+ *
+ * @author denis.rangel
+ */
+public class NettyRequestHeaderWrapper extends AbstractMap<String, List<String>> implements
+		MultivaluedMap<String, String> {
+
+	private HttpHeaders headers;
+	private int modCount;
+
+	public NettyRequestHeaderWrapper(HttpHeaders headers) {
+		this.headers = headers;
+	}
+
+	/**
+	 * Points the map at another request's headers (anything parsed from the
+	 * old ones is invalidated, as if they'd been modified)
+	 *
+	 * @param headers
+	 *            the headers of the next request
+	 */
+	void reset(HttpHeaders headers) {
+		this.headers = headers;
+		this.modCount++;
+	}
+
+	/**
+	 * @return a counter that changes whenever headers are modified through
+	 *         this map (used to invalidate anything parsed from them)
+	 */
+	public int getModCount() {
+		return this.modCount;
+	}
+
+	@Override
+	public List<String> get(Object key) {
+		if (key == null) {
+			return null;
+		}
+		List<String> values = this.headers.getAll(key.toString());
+		return values.isEmpty() ? null : values;
+	}
+
+	@Override
+	public String getFirst(String key) {
+		return this.headers.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key != null && this.headers.contains(key.toString());
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.headers.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return this.headers.names().size();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return this.headers.names();
+	}
+
+	@Override
+	public Set<Entry<String, List<String>>> entrySet() {
+		return new AbstractSet<Entry<String, List<String>>>() {
+
+			@Override
+			public Iterator<Entry<String, List<String>>> iterator() {
+				final Iterator<String> names = headers.names().iterator();
+				return new Iterator<Entry<String, List<String>>>() {
+
+					@Override
+					public boolean hasNext() {
+						return names.hasNext();
+					}
+
+					@Override
+					public Entry<String, List<String>> next() {
+						String name = names.next();
+						return new SimpleImmutableEntry<String, List<String>>(name, headers.getAll(name));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return NettyRequestHeaderWrapper.this.size();
+			}
+		};
+	}
+
+	@Override
+	public void putSingle(String key, String value) {
+		this.modCount++;
+		this.headers.set(key, value);
+	}
+
+	@Override
+	public void add(String key, String value) {
+		this.modCount++;
+		this.headers.add(key, value);
+	}
+
+	@Override
+	public void addAll(String key, String... values) {
+		addAll(key, Arrays.asList(values));
+	}
+
+	@Override
+	public void addAll(String key, List<String> values) {
+		this.modCount++;
+		this.headers.add(key, values);
+	}
+
+	@Override
+	public void addFirst(String key, String value) {
+		List<String> values = Lists.newArrayList(value);
+		values.addAll(this.headers.getAll(key));
+		this.modCount++;
+		this.headers.set(key, values);
+	}
+
+	@Override
+	public List<String> put(String key, List<String> values) {
+		List<String> old = get(key);
+		this.modCount++;
+		this.headers.set(key, values);
+		return old;
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends List<String>> map) {
+		for (Entry<? extends String, ? extends List<String>> entry : map.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public List<String> remove(Object key) {
+		List<String> old = get(key);
+		if (old != null) {
+			this.modCount++;
+			this.headers.remove(key.toString());
+		}
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		this.modCount++;
+		this.headers.clear();
+	}
+
+	@Override
+	public boolean equalsIgnoreValueOrder(MultivaluedMap<String, String> other) {
+		if (this == other) {
+			return true;
+		}
+		if (other == null || !keySet().equals(other.keySet())) {
+			return false;
+		}
+		for (Entry<String, List<String>> entry : entrySet()) {
+			List<String> otherValues = other.get(entry.getKey());
+			List<String> values = entry.getValue();
+			if (otherValues == null || values.size() != otherValues.size()
+					|| !values.containsAll(otherValues)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,28 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method (or every method of a resource class) as safe to run
+ * directly on the Finagle I/O thread that received the request. Use this for
+ * cheap, in-memory endpoints where handing the request off to the worker pool
+ * costs more than the call itself; anything that blocks (I/O, locks, sleeps)
+ * must not carry it, since it would stall every connection on that thread.
+ *
+ * The annotation may be placed on the implementation class or on the
+ * JAX-RS-annotated interface. Routes are resolved once, when the service is
+ * built (see {@link RouteTable}); requests that can't be matched to a single
+ * route unambiguously are always sent to the worker pool.
+ *
+ * @author denis.rangel
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface NonBlocking {
+
+}
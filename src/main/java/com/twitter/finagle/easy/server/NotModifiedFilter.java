@@ -0,0 +1,36 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Response.Status;
+
+/**
+ * Lets resources that know their version up front skip serialization: if a
+ * successful GET response already carries an ETag (e.g. from
+ * {@code Response.ok(entity).tag(version)}) that matches the request's
+ * If-None-Match, the entity is dropped and a 304 is sent instead, before any
+ * message body writer runs. Responses without an ETag are tagged after
+ * rendering (see {@link EntityTags}).
+ *
+ * @author denis.rangel
+ */
+public class NotModifiedFilter implements ContainerResponseFilter {
+
+	@Override
+	public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+		String method = request.getMethod();
+		if (response.getStatus() != Status.OK.getStatusCode()
+				|| !("GET".equals(method) || "HEAD".equals(method))) {
+			return;
+		}
+		String etag = response.getHeaderString(ETAG);
+		if (EntityTags.matches(request.getHeaderString(IF_NONE_MATCH), etag)) {
+			response.setStatus(Status.NOT_MODIFIED.getStatusCode());
+			response.setEntity(null);
+		}
+	}
+}
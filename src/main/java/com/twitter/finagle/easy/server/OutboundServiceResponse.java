@@ -1,5 +1,8 @@
 package com.twitter.finagle.easy.server;
 
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.TRANSFER_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Values.CHUNKED;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
 
 import java.io.IOException;
@@ -18,6 +21,11 @@ import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
 
+import com.google.common.base.Preconditions;
+import com.twitter.finagle.easy.util.SegmentPool;
+import com.twitter.finagle.easy.util.SegmentedOutputStream;
+import com.twitter.io.Writer;
+
 /**
  * Used when we're hosting a Resteasy-annotated service implementation. Converts
  * Resteasy's {@link org.jboss.resteasy.spi.HttpResponse} to a Netty
@@ -33,19 +41,179 @@ public class OutboundServiceResponse implements org.jboss.resteasy.spi.HttpRespo
 	// JBoss interface because of all the method name clashes
 	// TODO do we want cookie support? does netty even allow it?
 	// TODO no clue how to get #isCommitted() from netty
-	// TODO how would we support chunking?
+
+	/*
+	 * Finagle doesn't tell us when a response has been written, so segments
+	 * for large bodies can't be recycled; they still save us from copying
+	 * the body every time it outgrows its buffer
+	 */
+	private static final SegmentPool LARGE_BODY_SEGMENTS = SegmentPool.unpooled(SegmentPool.DEFAULT_SEGMENT_SIZE);
 
 	private final HttpResponse nettyResponse;
-	private final MultivaluedMap<String, Object> headerWrapper;
+	private MultivaluedMap<String, Object> headerWrapper;
+	private final SegmentedOutputStream segmentedBody;
+	private ChannelBufferOutputStream contentBody;
+	private HeaderBlock headerBlock = HeaderBlock.EMPTY;
+	private boolean headerBlockApplied;
+	private int segmentedSize;
+	private ChunkedOutputStream chunkedBody;
+	private CompressionPolicy compression;
+	private String encoding;
+	private CompressingOutputStream compressedBody;
 
 	public OutboundServiceResponse(HttpVersion version) {
+		this(version, ResponseSizePredictor.MIN_SIZE);
+	}
+
+	/**
+	 * @param version
+	 *            HTTP version of the response
+	 * @param initialCapacity
+	 *            how many bytes of content to make room for up front (see
+	 *            {@link ResponseSizePredictor}); bodies expected to be bigger
+	 *            than a segment are written into a chain of segments instead
+	 *            of one contiguous buffer
+	 */
+	public OutboundServiceResponse(HttpVersion version, int initialCapacity) {
 		this.nettyResponse = new DefaultHttpResponse(version, OK);
 		this.nettyResponse.setChunked(false);
-		this.nettyResponse.setContent(ChannelBuffers.dynamicBuffer());
-		this.headerWrapper = new NettyHeaderWrapper(this.nettyResponse);
+		if (initialCapacity > LARGE_BODY_SEGMENTS.getSegmentSize()) {
+			this.segmentedBody = new SegmentedOutputStream(LARGE_BODY_SEGMENTS);
+			this.nettyResponse.setContent(ChannelBuffers.EMPTY_BUFFER);
+		} else {
+			this.segmentedBody = null;
+			this.nettyResponse.setContent(ChannelBuffers.dynamicBuffer(initialCapacity));
+		}
+	}
+
+	/**
+	 * Uses the pre-encoded headers of the route producing this response;
+	 * must be called before any header is written
+	 *
+	 * @param headerBlock
+	 *            the route's headers (see {@link Route#getHeaderBlock()})
+	 */
+	public void setHeaderBlock(HeaderBlock headerBlock) {
+		this.headerBlock = Preconditions.checkNotNull(headerBlock, "headerBlock");
+	}
+
+	/**
+	 * Switches the response to streaming mode (see {@link ChunkedOutputStream}
+	 * ); must be called before anything is written
+	 * 
+	 * @param writer
+	 *            the writer for the Finagle response wrapping this one
+	 * @param flushThreshold
+	 *            number of bytes buffered before a chunk is sent
+	 * @param onCommit
+	 *            called once the response is committed and ready to hand to
+	 *            Finagle
+	 */
+	public void setStreaming(Writer writer, int flushThreshold, final Runnable onCommit) {
+		Preconditions.checkNotNull(onCommit, "onCommit");
+		this.chunkedBody = new ChunkedOutputStream(writer, flushThreshold, new Runnable() {
+			@Override
+			public void run() {
+				nettyResponse.headers().remove(CONTENT_LENGTH);
+				nettyResponse.headers().set(TRANSFER_ENCODING, CHUNKED);
+				nettyResponse.setChunked(true);
+				applyHeaderBlock();
+				onCommit.run();
+			}
+		});
+	}
+
+	/**
+	 * Switches a response back from streaming mode to a buffered body, if
+	 * nothing has been written yet (for a suspended request, whose body is
+	 * written by whichever thread resumes it; that may be a Finagle thread,
+	 * which mustn't wait for the client to take chunks)
+	 */
+	public void disableStreaming() {
+		if (this.chunkedBody != null && !this.chunkedBody.isCommitted() && this.chunkedBody.getWrittenCount() == 0
+				&& this.compressedBody == null) {
+			this.chunkedBody = null;
+		}
+	}
+
+	/**
+	 * Compresses the body, if it turns out to be worth it (see
+	 * {@link CompressingOutputStream}); must be called before anything is
+	 * written
+	 * 
+	 * @param policy
+	 *            what to compress, and how
+	 * @param encoding
+	 *            the encoding negotiated with the client
+	 */
+	public void setCompression(CompressionPolicy policy, String encoding) {
+		this.compression = Preconditions.checkNotNull(policy, "policy");
+		this.encoding = Preconditions.checkNotNull(encoding, "encoding");
+	}
+
+	/**
+	 * @return true if this response is being streamed, and its headers have
+	 *         already been sent
+	 */
+	public boolean isStreaming() {
+		return this.chunkedBody != null && this.chunkedBody.isCommitted();
+	}
+
+	/**
+	 * @return number of body bytes written to the stream, as sent (zero
+	 *         unless the response is being streamed)
+	 */
+	public long getStreamedCount() {
+		return this.chunkedBody == null ? 0L : this.chunkedBody.getWrittenCount();
+	}
+
+	/**
+	 * Completes the body once Resteasy is done with it: a streamed response
+	 * sends its last chunk, and one that never filled a chunk is sent as
+	 * regular content. The route's static headers are added here.
+	 */
+	public void finish() throws IOException {
+		if (this.compressedBody != null) {
+			this.compressedBody.finish();
+		}
+		// a streamed response got them when it was committed
+		applyHeaderBlock();
+		if (this.chunkedBody == null) {
+			return;
+		}
+		if (this.chunkedBody.isCommitted()) {
+			this.chunkedBody.close();
+		} else {
+			this.nettyResponse.setContent(this.chunkedBody.getBuffered());
+		}
+	}
+
+	/*
+	 * Adds the route's static headers, once, when the status and the
+	 * resource's own headers are final
+	 */
+	private void applyHeaderBlock() {
+		if (!this.headerBlockApplied) {
+			this.headerBlockApplied = true;
+			this.headerBlock.applyTo(this.nettyResponse);
+		}
+	}
+
+	/**
+	 * Abandons a streamed response after a failure
+	 */
+	public void abort(Throwable cause) {
+		if (this.chunkedBody != null) {
+			this.chunkedBody.fail(cause);
+		}
 	}
 
 	public HttpResponse getNettyResponse() {
+		if (this.segmentedBody != null && this.segmentedBody.size() != this.segmentedSize) {
+			// brings the content up to date with what's been written
+			this.nettyResponse.setContent(this.segmentedBody.toChannelBuffer());
+			this.segmentedSize = this.segmentedBody.size();
+		}
 		return this.nettyResponse;
 	}
 
@@ -78,22 +246,50 @@ public class OutboundServiceResponse implements org.jboss.resteasy.spi.HttpRespo
 
 	@Override
 	public MultivaluedMap<String, Object> getOutputHeaders() {
+		if (this.headerWrapper == null) {
+			this.headerWrapper = new NettyHeaderWrapper(this.nettyResponse, this.headerBlock);
+		}
 		return this.headerWrapper;
 	}
 
 	@Override
 	public OutputStream getOutputStream() throws IOException {
-		return new ChannelBufferOutputStream(this.nettyResponse.getContent());
+		if (this.compression == null) {
+			return getBodyStream();
+		}
+		if (this.compressedBody == null) {
+			this.compressedBody = new CompressingOutputStream(getBodyStream(), this.nettyResponse.headers(),
+					this.compression, this.encoding);
+		}
+		return this.compressedBody;
+	}
+
+	/*
+	 * Where the (possibly compressed) body ends up; Resteasy asks for the
+	 * stream more than once per response, so the same one is handed out
+	 */
+	private OutputStream getBodyStream() {
+		if (this.chunkedBody != null) {
+			return this.chunkedBody;
+		}
+		if (this.segmentedBody != null) {
+			return this.segmentedBody;
+		}
+		if (this.contentBody == null) {
+			this.contentBody = new ChannelBufferOutputStream(this.nettyResponse.getContent());
+		}
+		return this.contentBody;
 	}
 
 	@Override
 	public void setOutputStream(OutputStream os) {
 		this.nettyResponse.setContent((ChannelBuffer) os);
+		this.contentBody = null;
 	}
 
 	@Override
 	public boolean isCommitted() {
-		return false;
+		return isStreaming();
 	}
 
 	@Override
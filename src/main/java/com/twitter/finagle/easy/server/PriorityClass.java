@@ -0,0 +1,63 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.Locale;
+
+/**
+ * How urgently a request should be served when it has to wait for a worker
+ * (see {@link PriorityExecutor}). Classes are listed from most to least
+ * urgent; each has a default weight, its share of the workers relative to the
+ * other classes while they're all busy.
+ *
+ * @author denis.rangel
+ */
+public enum PriorityClass {
+
+	/**
+	 * Health checks and the like, which must get through even under overload
+	 */
+	CRITICAL(8),
+
+	/**
+	 * Latency-sensitive requests
+	 */
+	HIGH(4),
+
+	/**
+	 * Everything that doesn't say otherwise
+	 */
+	NORMAL(2),
+
+	/**
+	 * Batch work that can wait (or be shed) when the service is busy
+	 */
+	LOW(1);
+
+	private final int defaultWeight;
+
+	private PriorityClass(int defaultWeight) {
+		this.defaultWeight = defaultWeight;
+	}
+
+	/**
+	 * @return the class's share of the workers, unless configured otherwise
+	 */
+	public int getDefaultWeight() {
+		return this.defaultWeight;
+	}
+
+	/**
+	 * @param value
+	 *            a class name, in any case (e.g. from a request header)
+	 * @return the class, or null if the value doesn't name one
+	 */
+	public static PriorityClass parse(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Fixed pool of worker threads with a queue per {@link PriorityClass}, used
+ * in place of a single FIFO queue so that urgent requests don't wait behind
+ * batch work.
+ * <p>
+ * Workers serve the queues by weighted round-robin: in every round, each
+ * class gets to run as many tasks as its weight, the most urgent class first.
+ * When every class that has work waiting has used up its share, a new round
+ * starts. Urgent classes are therefore served first and most often, but no
+ * class is starved: each is guaranteed its share of the workers.
+ * <p>
+ * When the queues are full, a new task displaces the most recently queued
+ * task of the least urgent class below its own, which is told it was shed
+ * (see {@link Task#shed()}); if there's no such task, the new one is
+ * rejected. Lower classes are therefore shed first.
+ * <p>
+ * Tasks that don't implement {@link Task} are {@link PriorityClass#NORMAL}.
+ *
+ * @author denis.rangel
+ */
+public class PriorityExecutor extends AbstractExecutorService {
+
+	private static final Log LOG = LogFactory.getLog(PriorityExecutor.class);
+
+	private static final PriorityClass[] CLASSES = PriorityClass.values();
+
+	/**
+	 * A task that knows its priority, and can be shed
+	 */
+	public interface Task extends Runnable {
+
+		/**
+		 * @return how urgently the task should run
+		 */
+		PriorityClass getPriority();
+
+		/**
+		 * Called (instead of {@link #run()}) when the task is dropped from
+		 * the queue to make room for a more urgent one
+		 */
+		void shed();
+	}
+
+	private final int capacity;
+	private final ReentrantLock lock;
+	private final Condition available;
+	private final Condition terminated;
+	private final ArrayDeque<Runnable>[] queues;
+	private final int[] weights;
+	private final int[] credits;
+	private final AtomicLongArray shedCounts;
+	private final List<Thread> threads;
+	private int queued;
+	private int active;
+	private int live;
+	private boolean shutdown;
+
+	/**
+	 * @param threads
+	 *            number of worker threads
+	 * @param capacity
+	 *            maximum number of queued tasks, across all classes (zero for
+	 *            unbounded)
+	 */
+	public PriorityExecutor(int threads, int capacity) {
+		this(threads, capacity, new ThreadFactoryBuilder().setNameFormat("finagle-easy-worker-%d").build());
+	}
+
+	/**
+	 * @param threads
+	 *            number of worker threads
+	 * @param capacity
+	 *            maximum number of queued tasks, across all classes (zero for
+	 *            unbounded)
+	 * @param threadFactory
+	 *            creates the worker threads
+	 */
+	@SuppressWarnings("unchecked")
+	public PriorityExecutor(int threads, int capacity, ThreadFactory threadFactory) {
+		Preconditions.checkArgument(threads > 0, "threads");
+		Preconditions.checkArgument(capacity >= 0, "capacity");
+		Preconditions.checkNotNull(threadFactory, "threadFactory");
+		this.capacity = capacity;
+		this.lock = new ReentrantLock();
+		this.available = this.lock.newCondition();
+		this.terminated = this.lock.newCondition();
+		this.queues = new ArrayDeque[CLASSES.length];
+		this.weights = new int[CLASSES.length];
+		this.credits = new int[CLASSES.length];
+		for (PriorityClass priority : CLASSES) {
+			this.queues[priority.ordinal()] = new ArrayDeque<Runnable>();
+			this.weights[priority.ordinal()] = priority.getDefaultWeight();
+			this.credits[priority.ordinal()] = priority.getDefaultWeight();
+		}
+		this.shedCounts = new AtomicLongArray(CLASSES.length);
+		this.threads = Lists.newArrayListWithCapacity(threads);
+		this.live = threads;
+		for (int i = 0; i < threads; i++) {
+			Thread thread = threadFactory.newThread(new Worker());
+			this.threads.add(thread);
+			thread.start();
+		}
+	}
+
+	/**
+	 * @param priority
+	 *            a priority class
+	 * @param weight
+	 *            number of the class's tasks run per round, while every
+	 *            class has work waiting
+	 * @return this (for chaining)
+	 */
+	public PriorityExecutor withWeight(PriorityClass priority, int weight) {
+		Preconditions.checkNotNull(priority, "priority");
+		Preconditions.checkArgument(weight > 0, "weight");
+		this.lock.lock();
+		try {
+			this.weights[priority.ordinal()] = weight;
+			this.credits[priority.ordinal()] = Math.min(this.credits[priority.ordinal()], weight);
+		} finally {
+			this.lock.unlock();
+		}
+		return this;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		Preconditions.checkNotNull(task, "task");
+		int priority = priorityOf(task).ordinal();
+		Runnable displaced = null;
+		this.lock.lock();
+		try {
+			if (this.shutdown) {
+				throw new RejectedExecutionException("executor is shut down");
+			}
+			if (this.capacity > 0 && this.queued >= this.capacity) {
+				displaced = displaceBelow(priority);
+				if (displaced == null) {
+					this.shedCounts.incrementAndGet(priority);
+					throw new RejectedExecutionException("queue is full");
+				}
+			}
+			this.queues[priority].addLast(task);
+			this.queued++;
+			this.available.signal();
+		} finally {
+			this.lock.unlock();
+		}
+		if (displaced != null) {
+			((Task) displaced).shed();
+		}
+	}
+
+	/*
+	 * Removes the newest task of the least urgent class below the given one
+	 * (only tasks that can be told they were shed qualify); the lock is held
+	 */
+	private Runnable displaceBelow(int priority) {
+		for (int i = CLASSES.length - 1; i > priority; i--) {
+			if (this.queues[i].peekLast() instanceof Task) {
+				this.queued--;
+				this.shedCounts.incrementAndGet(i);
+				return this.queues[i].pollLast();
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Picks the next task by weighted round-robin; the lock is held and at
+	 * least one task is queued
+	 */
+	private Runnable next() {
+		while (true) {
+			for (int i = 0; i < CLASSES.length; i++) {
+				if (this.credits[i] > 0 && !this.queues[i].isEmpty()) {
+					this.credits[i]--;
+					this.queued--;
+					return this.queues[i].pollFirst();
+				}
+			}
+			// every class with work waiting has had its share of this round
+			System.arraycopy(this.weights, 0, this.credits, 0, this.weights.length);
+		}
+	}
+
+	/*
+	 * Waits for the next task; null once the executor is shut down and the
+	 * queues are empty
+	 */
+	private Runnable take() {
+		this.lock.lock();
+		try {
+			while (this.queued == 0) {
+				if (this.shutdown) {
+					return null;
+				}
+				try {
+					this.available.await();
+				} catch (InterruptedException e) {
+					// only shutdownNow interrupts us, and we check for that
+				}
+			}
+			this.active++;
+			return next();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private static PriorityClass priorityOf(Runnable task) {
+		PriorityClass priority = task instanceof Task ? ((Task) task).getPriority() : null;
+		return priority == null ? PriorityClass.NORMAL : priority;
+	}
+
+	/**
+	 * @return number of tasks waiting for a worker
+	 */
+	public int getQueueDepth() {
+		this.lock.lock();
+		try {
+			return this.queued;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param priority
+	 *            a priority class
+	 * @return number of tasks of that class waiting for a worker
+	 */
+	public int getQueueDepth(PriorityClass priority) {
+		this.lock.lock();
+		try {
+			return this.queues[priority.ordinal()].size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of workers currently running a task
+	 */
+	public int getActiveCount() {
+		this.lock.lock();
+		try {
+			return this.active;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param priority
+	 *            a priority class
+	 * @return number of tasks of that class rejected or displaced so far
+	 */
+	public long getShedCount(PriorityClass priority) {
+		return this.shedCounts.get(priority.ordinal());
+	}
+
+	@Override
+	public void shutdown() {
+		this.lock.lock();
+		try {
+			this.shutdown = true;
+			this.available.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> pending = Lists.newArrayList();
+		this.lock.lock();
+		try {
+			this.shutdown = true;
+			for (ArrayDeque<Runnable> queue : this.queues) {
+				pending.addAll(queue);
+				queue.clear();
+			}
+			this.queued = 0;
+			this.available.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+		for (Thread thread : this.threads) {
+			thread.interrupt();
+		}
+		return pending;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		this.lock.lock();
+		try {
+			return this.shutdown;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isTerminated() {
+		this.lock.lock();
+		try {
+			return this.shutdown && this.live == 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		this.lock.lock();
+		try {
+			while (!(this.shutdown && this.live == 0)) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = this.terminated.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				Runnable task;
+				while ((task = take()) != null) {
+					try {
+						task.run();
+					} catch (Throwable e) {
+						// Errors too: nothing replaces a worker that dies
+						LOG.warn("uncaught exception in worker", e);
+					} finally {
+						lock.lock();
+						try {
+							active--;
+						} finally {
+							lock.unlock();
+						}
+					}
+				}
+			} finally {
+				lock.lock();
+				try {
+					if (--live == 0) {
+						terminated.signalAll();
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+}
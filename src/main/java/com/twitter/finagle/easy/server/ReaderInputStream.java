@@ -0,0 +1,126 @@
+package com.twitter.finagle.easy.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import com.google.common.base.Preconditions;
+import com.twitter.io.Buf;
+import com.twitter.io.Reader;
+import com.twitter.util.Await;
+
+import scala.Option;
+
+/**
+ * Request body stream for streaming servers: pulls chunks from the Finagle
+ * request's {@link Reader} as Resteasy asks for them, so only one chunk is in
+ * memory at a time. Reads block until the client sends more, which is why
+ * streamed requests always run on a worker thread. Reading more than the
+ * configured maximum fails the request with a 413.
+ *
+ * @author denis.rangel
+ */
+public class ReaderInputStream extends InputStream {
+
+	/**
+	 * Largest chunk requested from the reader at once
+	 */
+	static final int MAX_READ = 64 * 1024;
+
+	private final Reader reader;
+	private final long maxBytes;
+	private byte[] chunk;
+	private int position;
+	private long total;
+	private boolean eof;
+
+	/**
+	 * @param reader
+	 *            the body of a streamed Finagle request
+	 * @param maxBytes
+	 *            maximum body size (zero or less for no limit)
+	 */
+	public ReaderInputStream(Reader reader, long maxBytes) {
+		this.reader = Preconditions.checkNotNull(reader, "reader");
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return this.chunk[this.position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+		if (length == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int count = Math.min(length, this.chunk.length - this.position);
+		System.arraycopy(this.chunk, this.position, bytes, offset, count);
+		this.position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return this.chunk == null ? 0 : this.chunk.length - this.position;
+	}
+
+	/**
+	 * Discards whatever the client hasn't sent yet
+	 */
+	@Override
+	public void close() {
+		if (!this.eof) {
+			this.eof = true;
+			this.chunk = null;
+			this.reader.discard();
+		}
+	}
+
+	/*
+	 * Makes sure there's something left in the current chunk; returns false
+	 * at the end of the body
+	 */
+	private boolean fill() throws IOException {
+		while (this.chunk == null || this.position == this.chunk.length) {
+			if (this.eof) {
+				return false;
+			}
+			Option<Buf> next;
+			try {
+				next = Await.result(this.reader.read(MAX_READ));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while reading request body");
+			} catch (Exception e) {
+				throw new IOException("error reading request body", e);
+			}
+			if (next.isEmpty()) {
+				this.eof = true;
+				this.chunk = null;
+				return false;
+			}
+			Buf buf = next.get();
+			this.total += buf.length();
+			if (this.maxBytes > 0 && this.total > this.maxBytes) {
+				close();
+				throw new WebApplicationException(Status.REQUEST_ENTITY_TOO_LARGE);
+			}
+			this.chunk = new byte[buf.length()];
+			buf.write(this.chunk, 0);
+			this.position = 0;
+		}
+		return true;
+	}
+}
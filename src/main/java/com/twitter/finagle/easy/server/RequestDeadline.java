@@ -0,0 +1,144 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.twitter.finagle.context.Deadline;
+import com.twitter.util.Duration;
+import com.twitter.util.Time;
+
+/**
+ * The time by which a request has to be answered: the earliest of the
+ * caller's deadline (propagated by Finagle, in the request's
+ * {@link Deadline} context), the caller's timeout header (see
+ * {@link ServiceBuilder#withDeadlineHeader(String)}) and the route's
+ * {@link ExecutionTimeout}. Requests whose deadline has passed by the time a
+ * worker picks them up are answered with a 504 without being dispatched.
+ * <p>
+ * Resources can get the deadline of the request they're serving with
+ * {@code @Context RequestDeadline deadline}, to pass what's left of it on to
+ * downstream calls (e.g. with {@link #toFinagleDeadline()}).
+ *
+ * @author denis.rangel
+ */
+public class RequestDeadline {
+
+	private static final Log LOG = LogFactory.getLog(RequestDeadline.class);
+
+	/**
+	 * Suggested name for the timeout header; its value is the number of
+	 * milliseconds the caller is prepared to wait
+	 */
+	public static final String DEFAULT_HEADER = "X-Request-Timeout";
+
+	/**
+	 * Deadline of requests that don't have one
+	 */
+	public static final RequestDeadline NONE = new RequestDeadline(false, 0L);
+
+	/*
+	 * Deadlines further out than this are as good as none (and would
+	 * overflow System.nanoTime arithmetic)
+	 */
+	private static final long MAX_NANOS = TimeUnit.DAYS.toNanos(365);
+
+	private final boolean bounded;
+	private final long deadlineNanos;
+
+	private RequestDeadline(boolean bounded, long deadlineNanos) {
+		this.bounded = bounded;
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	/**
+	 * @param timeout
+	 *            time left, from now
+	 * @param unit
+	 *            units for timeout
+	 * @return a deadline that far in the future
+	 */
+	public static RequestDeadline in(long timeout, TimeUnit unit) {
+		long nanos = unit.toNanos(timeout);
+		return nanos >= MAX_NANOS ? NONE : new RequestDeadline(true, System.nanoTime() + nanos);
+	}
+
+	/**
+	 * Works out a request's deadline from everything that may impose one
+	 *
+	 * @param receivedAt
+	 *            {@link System#nanoTime()} when the request was received
+	 * @param finagleDeadline
+	 *            the deadline from the request's Finagle context (or null)
+	 * @param timeoutHeader
+	 *            value of the timeout header, in milliseconds (or null)
+	 * @param route
+	 *            the route the request was resolved to (or null)
+	 * @return the earliest deadline, or {@link #NONE}
+	 */
+	static RequestDeadline resolve(long receivedAt, Deadline finagleDeadline, String timeoutHeader, Route route) {
+		long earliest = Long.MAX_VALUE;
+		if (finagleDeadline != null) {
+			long left = finagleDeadline.deadline().sinceNow().inNanoseconds();
+			if (left < MAX_NANOS) {
+				earliest = Math.min(earliest, left + System.nanoTime() - receivedAt);
+			}
+		}
+		if (timeoutHeader != null) {
+			try {
+				earliest = Math.min(earliest, TimeUnit.MILLISECONDS.toNanos(Long.parseLong(timeoutHeader.trim())));
+			} catch (NumberFormatException e) {
+				LOG.debug("ignoring malformed timeout header: " + timeoutHeader);
+			}
+		}
+		if (route != null && route.getExecutionTimeoutNanos() > 0) {
+			earliest = Math.min(earliest, route.getExecutionTimeoutNanos());
+		}
+		return earliest >= MAX_NANOS ? NONE : new RequestDeadline(true, receivedAt + earliest);
+	}
+
+	/**
+	 * @return false if there's no deadline at all
+	 */
+	public boolean isBounded() {
+		return this.bounded;
+	}
+
+	/**
+	 * @return true if the deadline has passed
+	 */
+	public boolean isExpired() {
+		return this.bounded && System.nanoTime() - this.deadlineNanos >= 0;
+	}
+
+	/**
+	 * @param unit
+	 *            units for the result
+	 * @return time left until the deadline (zero once it has passed), or
+	 *         {@link Long#MAX_VALUE} if there's no deadline
+	 */
+	public long getRemaining(TimeUnit unit) {
+		if (!this.bounded) {
+			return Long.MAX_VALUE;
+		}
+		return unit.convert(Math.max(0L, this.deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the deadline in Finagle's terms, for use in the context of
+	 *         downstream Finagle calls, or null if there's no deadline
+	 */
+	public Deadline toFinagleDeadline() {
+		if (!this.bounded) {
+			return null;
+		}
+		Time now = Time.now();
+		return new Deadline(now, now.plus(Duration.fromNanoseconds(getRemaining(TimeUnit.NANOSECONDS))));
+	}
+
+	@Override
+	public String toString() {
+		return this.bounded ? getRemaining(TimeUnit.MILLISECONDS) + "ms left" : "no deadline";
+	}
+}
@@ -0,0 +1,31 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets the {@link PriorityClass} of requests for a resource method (or every
+ * method of a resource class). Only makes a difference when requests are
+ * queued on a {@link PriorityExecutor} (see
+ * {@link ServiceBuilder#withPriorityScheduling(boolean)}); unannotated methods
+ * are {@link PriorityClass#NORMAL}.
+ *
+ * The annotation may be placed on the implementation class or on the
+ * JAX-RS-annotated interface, and only applies to routes resolved when the
+ * service is built (see {@link RouteTable}).
+ *
+ * @author denis.rangel
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface RequestPriority {
+
+	/**
+	 * @return the priority class for the method's requests
+	 */
+	PriorityClass value();
+}
@@ -0,0 +1,162 @@
+package com.twitter.finagle.easy.server;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.resteasy.specimpl.ResteasyUriBuilder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The request-target of an inbound request (e.g. "/items/42?full=true"),
+ * split into path and query by a hand-written scanner rather than by
+ * {@link java.net.URI} or {@link ResteasyUriBuilder}. The parts that depend
+ * only on the path (a validated {@link URI} and the segments used for route
+ * resolution) are kept in a {@link Path}, which {@link RequestTargetCache}
+ * shares between requests for the same path.
+ *
+ * @author denis.rangel
+ */
+public class RequestTarget {
+
+	private final String raw;
+	private final String query;
+	private final Path path;
+	private final boolean simple;
+
+	RequestTarget(String raw, String query, Path path) {
+		this.raw = raw;
+		this.query = query;
+		this.path = path;
+		this.simple = path.simple && (query == null || (!query.isEmpty() && isLegal(query, 0)));
+	}
+
+	/**
+	 * Parses a request-target without caching anything
+	 *
+	 * @param raw
+	 *            the request URI, as received
+	 * @return the parsed target
+	 */
+	public static RequestTarget parse(String raw) {
+		Preconditions.checkNotNull(raw, "raw");
+		int queryStart = raw.indexOf('?');
+		if (queryStart < 0) {
+			return new RequestTarget(raw, null, Path.parse(raw));
+		}
+		return new RequestTarget(raw, raw.substring(queryStart + 1), Path.parse(raw.substring(0, queryStart)));
+	}
+
+	/**
+	 * @return the request-target, exactly as received
+	 */
+	public String getRaw() {
+		return this.raw;
+	}
+
+	/**
+	 * @return the raw (undecoded) path
+	 */
+	public String getPath() {
+		return this.path.raw;
+	}
+
+	/**
+	 * @return the raw (undecoded) query string, or null if there wasn't one
+	 */
+	public String getQuery() {
+		return this.query;
+	}
+
+	/**
+	 * @return the path segments used to resolve routes (see
+	 *         {@link RouteTable#resolve(String, List)}), or null if the path is
+	 *         one we leave to Resteasy
+	 */
+	public List<String> getSegments() {
+		return this.path.segments;
+	}
+
+	/**
+	 * @return the request-target as a URI. Targets made up of legal URI
+	 *         characters are parsed once (not at all, if there's no query and
+	 *         the path was cached); anything else goes through
+	 *         {@link ResteasyUriBuilder}, which is more forgiving.
+	 */
+	public URI toUri() {
+		if (!this.simple) {
+			return ResteasyUriBuilder.fromUri(this.raw).build();
+		}
+		return this.query == null ? this.path.uri : URI.create(this.raw);
+	}
+
+	/*
+	 * True if the string (from the given index on) is made of nothing but
+	 * legal URI characters and well-formed escapes; these parse the same way
+	 * with java.net.URI as they do with Resteasy's builder
+	 */
+	static boolean isLegal(String raw, int from) {
+		for (int i = from; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c == '%') {
+				if (i + 2 >= raw.length() || !isHex(raw.charAt(i + 1)) || !isHex(raw.charAt(i + 2))) {
+					return false;
+				}
+				i += 2;
+			} else if (!isUriChar(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isHex(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+
+	private static boolean isUriChar(char c) {
+		if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+			return true;
+		}
+		switch (c) {
+		case '-': case '.': case '_': case '~':
+		case '!': case '$': case '&': case '\'': case '(': case ')':
+		case '*': case '+': case ',': case ';': case '=':
+		case ':': case '@': case '/': case '?':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Everything we know about a request path that doesn't depend on the
+	 * query; immutable, so it can be shared between requests
+	 */
+	static class Path {
+
+		final String raw;
+		final boolean simple;
+		final URI uri;
+		final List<String> segments;
+
+		private Path(String raw, boolean simple, URI uri, List<String> segments) {
+			this.raw = raw;
+			this.simple = simple;
+			this.uri = uri;
+			this.segments = segments;
+		}
+
+		/*
+		 * Only origin-form paths ("/...") are simple; anything else (e.g. an
+		 * absolute URI from a proxy) is left to Resteasy
+		 */
+		static Path parse(String raw) {
+			boolean simple = raw.startsWith("/") && !raw.startsWith("//") && isLegal(raw, 1);
+			List<String> segments = RouteTable.splitPath(raw);
+			return new Path(raw, simple, simple ? URI.create(raw) : null,
+					segments == null ? null : Collections.unmodifiableList(segments));
+		}
+	}
+}
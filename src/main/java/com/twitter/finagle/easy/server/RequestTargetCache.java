@@ -0,0 +1,65 @@
+package com.twitter.finagle.easy.server;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Parses request-targets, remembering what it learned about the most recently
+ * used paths (see {@link RequestTarget}). Most traffic is for a few hundred
+ * distinct paths, so most requests only need their query split off.
+ *
+ * @author denis.rangel
+ */
+public class RequestTargetCache {
+
+	/**
+	 * Default number of distinct paths remembered
+	 */
+	public static final int DEFAULT_SIZE = 1024;
+
+	/**
+	 * A cache that doesn't remember anything
+	 */
+	public static final RequestTargetCache DISABLED = new RequestTargetCache(0);
+
+	private final Cache<String, RequestTarget.Path> paths;
+
+	/**
+	 * @param size
+	 *            maximum number of distinct paths remembered (zero to parse
+	 *            every request from scratch)
+	 */
+	public RequestTargetCache(int size) {
+		Preconditions.checkArgument(size >= 0, "size");
+		this.paths = size == 0 ? null : CacheBuilder.newBuilder().maximumSize(size)
+				.<String, RequestTarget.Path> build();
+	}
+
+	/**
+	 * @param raw
+	 *            the request URI, as received
+	 * @return the parsed target
+	 */
+	public RequestTarget parse(String raw) {
+		Preconditions.checkNotNull(raw, "raw");
+		if (this.paths == null) {
+			return RequestTarget.parse(raw);
+		}
+		int queryStart = raw.indexOf('?');
+		String path = queryStart < 0 ? raw : raw.substring(0, queryStart);
+		RequestTarget.Path parsed = this.paths.getIfPresent(path);
+		if (parsed == null) {
+			parsed = RequestTarget.Path.parse(path);
+			this.paths.put(path, parsed);
+		}
+		return new RequestTarget(raw, queryStart < 0 ? null : raw.substring(queryStart + 1), parsed);
+	}
+
+	/**
+	 * @return number of distinct paths currently remembered
+	 */
+	public long size() {
+		return this.paths == null ? 0L : this.paths.size();
+	}
+}
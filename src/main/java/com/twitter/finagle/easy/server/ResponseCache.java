@@ -0,0 +1,366 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_LANGUAGE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.AGE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.AUTHORIZATION;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CACHE_CONTROL;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.SET_COOKIE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.VARY;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.twitter.finagle.httpx.Request;
+
+/**
+ * Keeps fully-rendered responses to GET requests so repeated requests for the
+ * same resource can be answered without dispatching to Resteasy at all. A
+ * response is only stored if the resource said it may be, with a
+ * {@code Cache-Control} header carrying a positive {@code max-age} (or
+ * {@code s-maxage}) and none of {@code no-store}, {@code no-cache} or
+ * {@code private}; it's served until that age is reached.
+ * <p>
+ * Entries are keyed by request URI plus the Accept, Accept-Language and
+ * Accept-Encoding headers and any headers named with
+ * {@link #withVaryHeaders(String...)}; a response that varies on anything
+ * else isn't stored. The cache is bounded by the total size of what it holds
+ * (bodies plus headers), evicting the least recently used entries first.
+ *
+ * @author denis.rangel
+ */
+public class ResponseCache {
+
+	/*
+	 * Rough allowance for the key and bookkeeping of each entry
+	 */
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+
+	private static final List<String> KEY_HEADERS = ImmutableList.of(ACCEPT, ACCEPT_LANGUAGE, ACCEPT_ENCODING);
+
+	private final long maxBytes;
+	private final AtomicLong bytes;
+	private final Set<String> varyHeaders;
+	private List<String> keyHeaders;
+	private boolean offHeap;
+	private volatile Cache<Key, Entry> entries;
+
+	/**
+	 * @param maxBytes
+	 *            total size of the responses the cache may hold
+	 */
+	public ResponseCache(long maxBytes) {
+		Preconditions.checkArgument(maxBytes > 0, "maxBytes");
+		this.maxBytes = maxBytes;
+		this.bytes = new AtomicLong();
+		this.varyHeaders = Sets.newTreeSet(String.CASE_INSENSITIVE_ORDER);
+		this.varyHeaders.addAll(KEY_HEADERS);
+		this.keyHeaders = KEY_HEADERS;
+	}
+
+	/**
+	 * Adds request headers that responses may vary on (e.g. a tenant header);
+	 * their values become part of the cache key
+	 * 
+	 * @param names
+	 *            header names
+	 * @return this (for chaining)
+	 */
+	public ResponseCache withVaryHeaders(String... names) {
+		for (String name : names) {
+			if (this.varyHeaders.add(name)) {
+				this.keyHeaders = ImmutableList.<String> builder().addAll(this.keyHeaders).add(name).build();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @param offHeap
+	 *            whether to keep bodies in direct buffers, outside the Java
+	 *            heap
+	 * @return this (for chaining)
+	 */
+	public ResponseCache withOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+		return this;
+	}
+
+	/**
+	 * @param request
+	 *            an inbound request
+	 * @return the key the response to this request is cached under, or null
+	 *         if it can't be served from (or stored in) the cache
+	 */
+	public Key keyFor(Request request) {
+		if (!"GET".equals(request.getMethod().getName())) {
+			return null;
+		}
+		HttpHeaders headers = request.headers();
+		if (headers.contains(AUTHORIZATION)) {
+			return null;
+		}
+		List<String> names = this.keyHeaders;
+		String[] values = new String[names.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = headers.get(names.get(i));
+		}
+		return new Key(request.getUri(), values);
+	}
+
+	/**
+	 * @param key
+	 *            from {@link #keyFor(Request)}
+	 * @param version
+	 *            HTTP version of the response
+	 * @return a copy of the cached response, or null if there isn't a fresh
+	 *         one
+	 */
+	public HttpResponse get(Key key, HttpVersion version) {
+		Entry entry = entries().getIfPresent(key);
+		if (entry == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (now >= entry.expiresAt) {
+			entries().invalidate(key);
+			return null;
+		}
+		HttpResponse response = new DefaultHttpResponse(version, entry.status);
+		for (Map.Entry<String, String> header : entry.headers) {
+			response.headers().add(header.getKey(), header.getValue());
+		}
+		response.headers().set(AGE, Long.toString(TimeUnit.MILLISECONDS.toSeconds(now - entry.storedAt)));
+		response.setContent(entry.body.duplicate());
+		return response;
+	}
+
+	/**
+	 * Stores a response, if it's cacheable
+	 * 
+	 * @param key
+	 *            from {@link #keyFor(Request)}
+	 * @param response
+	 *            a complete (non-chunked) response
+	 * @return true if it was stored
+	 */
+	public boolean put(Key key, HttpResponse response) {
+		if (response.getStatus().getCode() != HttpResponseStatus.OK.getCode() || response.isChunked()
+				|| response.headers().contains(SET_COOKIE) || !isKeyedOn(response.headers().getAll(VARY))) {
+			return false;
+		}
+		long maxAge = maxAgeSeconds(response.headers().getAll(CACHE_CONTROL));
+		if (maxAge <= 0) {
+			return false;
+		}
+		ChannelBuffer content = response.getContent();
+		ChannelBuffer body = this.offHeap ? ChannelBuffers.directBuffer(content.readableBytes())
+				: ChannelBuffers.buffer(content.readableBytes());
+		body.writeBytes(content, content.readerIndex(), content.readableBytes());
+		ImmutableList.Builder<Map.Entry<String, String>> headers = ImmutableList.builder();
+		for (Map.Entry<String, String> header : response.headers()) {
+			headers.add(new SimpleImmutableEntry<String, String>(header.getKey(), header.getValue()));
+		}
+		long now = System.currentTimeMillis();
+		Entry entry = new Entry(response.getStatus(), headers.build(), body, now, now
+				+ TimeUnit.SECONDS.toMillis(maxAge));
+		this.bytes.addAndGet(entry.weight);
+		entries().put(key, entry);
+		return true;
+	}
+
+	/**
+	 * Drops every entry
+	 */
+	public void clear() {
+		entries().invalidateAll();
+	}
+
+	/**
+	 * @return hit, miss and eviction counts
+	 */
+	public CacheStats getStats() {
+		return entries().stats();
+	}
+
+	/**
+	 * @return number of responses held
+	 */
+	public long size() {
+		return entries().size();
+	}
+
+	/**
+	 * @return approximate number of bytes held
+	 */
+	public long getBytes() {
+		return this.bytes.get();
+	}
+
+	/*
+	 * Built on first use, so configuration can't race with requests
+	 */
+	private Cache<Key, Entry> entries() {
+		Cache<Key, Entry> cache = this.entries;
+		if (cache == null) {
+			synchronized (this) {
+				cache = this.entries;
+				if (cache == null) {
+					// Guava splits the weight budget between its segments, so
+					// with more than one, a response over a fraction of maxBytes
+					// would be evicted as soon as it was stored
+					cache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(this.maxBytes).weigher(new Weigher<Key, Entry>() {
+						@Override
+						public int weigh(Key key, Entry entry) {
+							return entry.weight;
+						}
+					}).removalListener(new RemovalListener<Key, Entry>() {
+						@Override
+						public void onRemoval(RemovalNotification<Key, Entry> notification) {
+							bytes.addAndGet(-notification.getValue().weight);
+						}
+					}).recordStats().build();
+					this.entries = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	/*
+	 * True unless the response varies on a request header that isn't part of
+	 * our key
+	 */
+	private boolean isKeyedOn(List<String> vary) {
+		for (String value : vary) {
+			for (String name : COMMA.split(value)) {
+				if (!this.varyHeaders.contains(name)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * How long a response may be cached by a shared cache, according to its
+	 * Cache-Control headers (zero if it may not be)
+	 */
+	static long maxAgeSeconds(List<String> cacheControl) {
+		long maxAge = 0L;
+		long sharedMaxAge = -1L;
+		for (String value : cacheControl) {
+			for (String directive : COMMA.split(value)) {
+				String lower = directive.toLowerCase(Locale.ENGLISH);
+				if (lower.equals("no-store") || lower.startsWith("no-cache") || lower.startsWith("private")) {
+					return 0L;
+				} else if (lower.startsWith("max-age=")) {
+					maxAge = parseSeconds(lower.substring("max-age=".length()));
+				} else if (lower.startsWith("s-maxage=")) {
+					sharedMaxAge = parseSeconds(lower.substring("s-maxage=".length()));
+				}
+			}
+		}
+		return sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+	}
+
+	private static long parseSeconds(String value) {
+		try {
+			return Long.parseLong(value.replace("\"", "").trim());
+		} catch (NumberFormatException e) {
+			return 0L;
+		}
+	}
+
+	/**
+	 * Identifies a cached response
+	 */
+	public static final class Key {
+
+		private final String uri;
+		private final String[] values;
+		private final int hash;
+
+		Key(String uri, String[] values) {
+			this.uri = uri;
+			this.values = values;
+			this.hash = 31 * uri.hashCode() + Arrays.hashCode(values);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return this.hash == key.hash && this.uri.equals(key.uri) && Arrays.equals(this.values, key.values);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public String toString() {
+			return this.uri + Arrays.toString(this.values);
+		}
+	}
+
+	/*
+	 * A stored response
+	 */
+	private static final class Entry {
+
+		final HttpResponseStatus status;
+		final List<Map.Entry<String, String>> headers;
+		final ChannelBuffer body;
+		final long storedAt;
+		final long expiresAt;
+		final int weight;
+
+		Entry(HttpResponseStatus status, List<Map.Entry<String, String>> headers, ChannelBuffer body, long storedAt,
+				long expiresAt) {
+			this.status = status;
+			this.headers = headers;
+			this.body = body;
+			this.storedAt = storedAt;
+			this.expiresAt = expiresAt;
+			int weight = ENTRY_OVERHEAD + body.readableBytes();
+			for (Map.Entry<String, String> header : headers) {
+				weight += header.getKey().length() + header.getValue().length();
+			}
+			this.weight = weight;
+		}
+	}
+}
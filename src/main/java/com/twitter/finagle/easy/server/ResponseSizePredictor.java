@@ -0,0 +1,81 @@
+package com.twitter.finagle.easy.server;
+
+/**
+ * Guesses how big the next response from a route will be, so its buffer can
+ * be allocated at about the right size instead of doubling its way up from a
+ * few hundred bytes. The guess grows as soon as a response outgrows it, and
+ * shrinks (by halves) only after a run of responses that would have fit in
+ * half the space, so an occasional small response doesn't throw it off.
+ * <p>
+ * Updates race benignly: concurrent responses may overwrite each other's
+ * adjustments, which only costs a little accuracy.
+ *
+ * @author denis.rangel
+ */
+public class ResponseSizePredictor {
+
+	/**
+	 * Smallest buffer we'll ask for (the same as Netty's default for dynamic
+	 * buffers)
+	 */
+	public static final int MIN_SIZE = 256;
+
+	/**
+	 * Largest buffer we'll ask for up front; bigger responses still work,
+	 * they just grow the way they always did
+	 */
+	public static final int MAX_SIZE = 1 << 20;
+
+	/**
+	 * Number of consecutive small responses before the guess shrinks
+	 */
+	static final int DECAY_AFTER = 16;
+
+	private volatile int prediction;
+	private volatile int smallResponses;
+
+	public ResponseSizePredictor() {
+		this.prediction = MIN_SIZE;
+	}
+
+	/**
+	 * @return the initial capacity to use for the next response's buffer
+	 */
+	public int predict() {
+		return this.prediction;
+	}
+
+	/**
+	 * @param size
+	 *            the size of a response that was just written, in bytes
+	 */
+	public void record(int size) {
+		int current = this.prediction;
+		if (size > current) {
+			this.prediction = roundUp(size);
+			this.smallResponses = 0;
+		} else if (size <= current >>> 1 && current > MIN_SIZE) {
+			int small = this.smallResponses + 1;
+			if (small >= DECAY_AFTER) {
+				this.prediction = current >>> 1;
+				small = 0;
+			}
+			this.smallResponses = small;
+		} else {
+			this.smallResponses = 0;
+		}
+	}
+
+	/*
+	 * Next power of two that fits size, within our bounds
+	 */
+	static int roundUp(int size) {
+		if (size <= MIN_SIZE) {
+			return MIN_SIZE;
+		}
+		if (size >= MAX_SIZE) {
+			return MAX_SIZE;
+		}
+		return Integer.highestOneBit(size - 1) << 1;
+	}
+}
@@ -1,22 +1,59 @@
 package com.twitter.finagle.easy.server;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
 
-import java.util.Map.Entry;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.core.SynchronousDispatcher;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.twitter.finagle.Service;
+import com.twitter.finagle.context.Deadline;
+import com.twitter.finagle.context.Deadline$;
 import com.twitter.finagle.httpx.Request;
 import com.twitter.finagle.httpx.Response;
 import com.twitter.util.Future;
 import com.twitter.util.Promise;
+import com.twitter.util.Return;
+import com.twitter.util.Time;
+
+import scala.Option;
+import scala.runtime.BoxedUnit;
 
 /**
  * Implements the Finagle {@link com.twitter.finagle.Service} interface by
@@ -32,14 +69,334 @@ public class ResteasyFinagleService extends Service<Request, Response> {
 
 	private final Dispatcher dispatcher;
 	private final Executor executor;
+	private boolean reuseAdapters;
+	private RouteTable routes;
+	private AdmissionControl admissionControl;
+	private ScheduledExecutorService timer;
+	private AccessLog accessLog;
+	private RequestTargetCache targets;
+	private int streamingThreshold;
+	private long maxRequestBodySize;
+	private int spillThreshold;
+	private File spillDirectory;
+	private CompressionPolicy compression;
+	private ResponseCache responseCache;
+	private boolean entityTags;
+	private ServiceStats stats;
+	private String deadlineHeader;
+	private String priorityHeader;
+	private boolean ownsExecutor;
+	private boolean ownsAccessLog;
+	private final AtomicInteger pending;
+	private final Set<ResponseWorker> suspended;
+	private final AtomicBoolean draining;
+	private final AtomicBoolean stopped;
+	private final Promise<BoxedUnit> closed;
+	private volatile ScheduledFuture<?> drainTimeout;
 
 	public ResteasyFinagleService(Dispatcher dispatcher, Executor executor) {
 		this.dispatcher = Preconditions.checkNotNull(dispatcher, "dispatcher");
 		this.executor = Preconditions.checkNotNull(executor, "executor");
+		// a virtual thread only ever runs one request, so it would never get
+		// to reuse anything
+		this.reuseAdapters = !(executor instanceof VirtualThreadExecutor);
+		this.routes = RouteTable.EMPTY;
+		this.admissionControl = AdmissionControl.unbounded(executor);
+		this.accessLog = AccessLog.logging();
+		this.ownsAccessLog = true;
+		this.targets = new RequestTargetCache(RequestTargetCache.DEFAULT_SIZE);
+		this.stats = ServiceStats.disabled();
+		this.pending = new AtomicInteger();
+		this.suspended = Sets.newConcurrentHashSet();
+		this.draining = new AtomicBoolean();
+		this.stopped = new AtomicBoolean();
+		this.closed = new Promise<BoxedUnit>();
+	}
+
+	/**
+	 * @param routes
+	 *            routes for the resources bound to our dispatcher
+	 */
+	void setRoutes(RouteTable routes) {
+		this.routes = Preconditions.checkNotNull(routes, "routes");
+	}
+
+	/**
+	 * @param admissionControl
+	 *            policy for shedding requests that can't be served in time
+	 */
+	void setAdmissionControl(AdmissionControl admissionControl) {
+		this.admissionControl = Preconditions.checkNotNull(admissionControl, "admissionControl");
+	}
+
+	/**
+	 * @param timer
+	 *            used to schedule timeouts (e.g. for suspended requests)
+	 */
+	void setTimer(ScheduledExecutorService timer) {
+		this.timer = Preconditions.checkNotNull(timer, "timer");
+	}
+
+	/**
+	 * @param accessLog
+	 *            where completed requests are logged
+	 */
+	void setAccessLog(AccessLog accessLog) {
+		this.accessLog = Preconditions.checkNotNull(accessLog, "accessLog");
+	}
+
+	/**
+	 * @param targets
+	 *            parses (and caches) request URIs
+	 */
+	void setRequestTargetCache(RequestTargetCache targets) {
+		this.targets = Preconditions.checkNotNull(targets, "targets");
 	}
 
 	/**
-	 * Schedules a request for completion
+	 * @param threshold
+	 *            number of bytes buffered before a response is streamed in
+	 *            chunks (zero to always buffer the whole response)
+	 */
+	void setStreamingThreshold(int threshold) {
+		Preconditions.checkArgument(threshold >= 0, "threshold");
+		this.streamingThreshold = threshold;
+	}
+
+	/**
+	 * @param maxBytes
+	 *            largest request body accepted; bigger ones are answered with
+	 *            a 413 (zero for no limit)
+	 */
+	void setMaxRequestBodySize(long maxBytes) {
+		Preconditions.checkArgument(maxBytes >= 0, "maxBytes");
+		this.maxRequestBodySize = maxBytes;
+	}
+
+	/**
+	 * @param threshold
+	 *            number of bytes of a streamed request body kept in memory
+	 *            before the rest is spilled to disk (zero to stream bodies
+	 *            straight to the resource)
+	 * @param directory
+	 *            where spill files go (null for the system default)
+	 */
+	void setRequestBodySpill(int threshold, File directory) {
+		Preconditions.checkArgument(threshold >= 0, "threshold");
+		this.spillThreshold = threshold;
+		this.spillDirectory = directory;
+	}
+
+	/**
+	 * @param compression
+	 *            which responses to compress (and whether to decode
+	 *            compressed requests)
+	 */
+	void setCompression(CompressionPolicy compression) {
+		this.compression = Preconditions.checkNotNull(compression, "compression");
+	}
+
+	/**
+	 * @param responseCache
+	 *            where rendered responses to GET requests are kept
+	 */
+	void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = Preconditions.checkNotNull(responseCache, "responseCache");
+	}
+
+	/**
+	 * @param entityTags
+	 *            whether successful GET responses are tagged with a hash of
+	 *            their body (and answered with a 304 if the client has them)
+	 */
+	void setEntityTags(boolean entityTags) {
+		this.entityTags = entityTags;
+	}
+
+	/**
+	 * @param stats
+	 *            where request metrics go
+	 */
+	void setStats(ServiceStats stats) {
+		this.stats = Preconditions.checkNotNull(stats, "stats");
+	}
+
+	/**
+	 * @param header
+	 *            request header holding the caller's timeout, in
+	 *            milliseconds (null to only go by the Finagle context)
+	 */
+	void setDeadlineHeader(String header) {
+		this.deadlineHeader = header;
+	}
+
+	/**
+	 * @param header
+	 *            request header naming the request's {@link PriorityClass}
+	 *            (null to only go by the route's {@link RequestPriority})
+	 */
+	void setPriorityHeader(String header) {
+		this.priorityHeader = header;
+	}
+
+	/**
+	 * @param reuseAdapters
+	 *            whether worker threads recycle their request adapters (on by
+	 *            default, unless requests run on virtual threads)
+	 */
+	void setReuseAdapters(boolean reuseAdapters) {
+		this.reuseAdapters = reuseAdapters;
+	}
+
+	/**
+	 * @param ownsExecutor
+	 *            whether the executor was created for this service (and is
+	 *            to be shut down when it's closed)
+	 */
+	void setOwnsExecutor(boolean ownsExecutor) {
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * @param ownsAccessLog
+	 *            whether the access log was created for this service (and is
+	 *            to be closed when it's closed)
+	 */
+	void setOwnsAccessLog(boolean ownsAccessLog) {
+		this.ownsAccessLog = ownsAccessLog;
+	}
+
+	/**
+	 * @return the response cache for this service (hit and miss counts), or
+	 *         null if responses aren't cached
+	 */
+	public ResponseCache getResponseCache() {
+		return this.responseCache;
+	}
+
+	/**
+	 * @return the access log for this service
+	 */
+	public AccessLog getAccessLog() {
+		return this.accessLog;
+	}
+
+	/**
+	 * @return the timer used to schedule timeouts; unless one was supplied,
+	 *         this is a daemon timer shared by every service in the JVM
+	 */
+	protected ScheduledExecutorService getTimer() {
+		return this.timer == null ? DefaultTimer.INSTANCE : this.timer;
+	}
+
+	/**
+	 * @return admission control for this service (rejection counts, queue
+	 *         depth)
+	 */
+	public AdmissionControl getAdmissionControl() {
+		return this.admissionControl;
+	}
+
+	/**
+	 * @return number of requests accepted but not yet answered (queued,
+	 *         running or suspended)
+	 */
+	public int getPendingCount() {
+		return this.pending.get();
+	}
+
+	/**
+	 * @return true once the service has been closed (it may still be
+	 *         finishing requests it had accepted before)
+	 */
+	public boolean isClosing() {
+		return this.draining.get();
+	}
+
+	/**
+	 * Drains the service: new requests are answered right away with a 503,
+	 * while requests already accepted (queued, running or suspended) are
+	 * given until the deadline to finish. Then the executor is shut down, if
+	 * it was created for this service (see {@link ServiceBuilder}), and so is
+	 * the access log. Requests still queued or suspended at the deadline are
+	 * answered with a 503, and running ones are interrupted.
+	 * 
+	 * @param deadline
+	 *            when to stop waiting for pending requests
+	 * @return a future satisfied once the service has stopped
+	 */
+	@Override
+	public Future<BoxedUnit> close(Time deadline) {
+		if (this.draining.compareAndSet(false, true)) {
+			long delay = deadline.sinceNow().inMillis();
+			LOG.info(String.format("closing service with %d pending requests", this.pending.get()));
+			if (delay > 0) {
+				this.drainTimeout = getTimer().schedule(new Runnable() {
+					@Override
+					public void run() {
+						stop(true);
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			} else {
+				stop(true);
+			}
+			if (this.pending.get() == 0) {
+				stop(false);
+			}
+		}
+		return this.closed;
+	}
+
+	/*
+	 * Releases what the service owns, once; forced means pending requests
+	 * didn't finish in time
+	 */
+	private void stop(boolean forced) {
+		if (!this.stopped.compareAndSet(false, true)) {
+			return;
+		}
+		ScheduledFuture<?> timeout = this.drainTimeout;
+		if (timeout != null) {
+			timeout.cancel(false);
+		}
+		if (forced && this.pending.get() > 0) {
+			LOG.warn(String.format("%d requests still pending at close deadline", this.pending.get()));
+		}
+		if (this.ownsExecutor && this.executor instanceof ExecutorService) {
+			ExecutorService executorService = (ExecutorService) this.executor;
+			if (forced) {
+				List<Runnable> queued = executorService.shutdownNow();
+				for (Runnable runnable : queued) {
+					if (runnable instanceof ResponseWorker) {
+						ResponseWorker worker = (ResponseWorker) runnable;
+						worker.complete(serviceUnavailable(worker.nettyRequest.getProtocolVersion()));
+					}
+				}
+			} else {
+				executorService.shutdown();
+			}
+		}
+		if (forced) {
+			for (ResponseWorker worker : this.suspended) {
+				worker.complete(serviceUnavailable(worker.nettyRequest.getProtocolVersion()));
+			}
+		}
+		if (this.ownsAccessLog) {
+			this.accessLog.close();
+		}
+		this.closed.updateIfEmpty(new Return<BoxedUnit>(BoxedUnit.UNIT));
+	}
+
+	/**
+	 * Schedules a request for completion. Requests for {@link NonBlocking}
+	 * routes are completed right away on the calling thread; everything else
+	 * (including any request whose body is still arriving, since reading it
+	 * blocks) goes to the executor. If the executor refuses the request, it's
+	 * answered with a 503. Requests answered from the response cache (if
+	 * there is one) never leave the calling thread. Once the service is
+	 * closing, requests are answered with a 503 right away. Requests whose
+	 * {@link RequestDeadline deadline} passes before they're answered get a
+	 * 504.
 	 * 
 	 * @param request
 	 *            an inbound Netty request
@@ -48,30 +405,249 @@ public class ResteasyFinagleService extends Service<Request, Response> {
 	 */
 	public Future<Response> apply(Request request) {
 		Preconditions.checkNotNull(request, "request");
-		LOG.info(String.format("inbound request %s %s", request.getMethod().getName(), request.getUri()));
 		Promise<Response> promise = new Promise<Response>();
-		this.executor.execute(new ResponseWorker(request, promise));
+		RequestTarget target = this.targets.parse(request.getUri());
+		Route route = this.routes.resolve(request.getMethod().getName(), target.getSegments());
+		ResponseCache.Key cacheKey = this.responseCache == null ? null : this.responseCache.keyFor(request);
+		ResponseWorker worker = new ResponseWorker(request, promise, route, target, cacheKey);
+		this.pending.incrementAndGet();
+		if (this.draining.get()) {
+			worker.complete(serviceUnavailable(request.getProtocolVersion()));
+			return promise;
+		}
+		// the Finagle context is only visible on the thread that received the
+		// request
+		Option<Deadline> finagleDeadline = Deadline$.MODULE$.current();
+		worker.setDeadline(RequestDeadline.resolve(worker.enqueuedAt, finagleDeadline.isDefined()
+				? finagleDeadline.get() : null, this.deadlineHeader == null ? null : request.headers().get(
+				this.deadlineHeader), route));
+		worker.setPriority(priorityOf(request, route));
+		final HttpResponse cached = cacheKey == null ? null : this.responseCache.get(cacheKey,
+				request.getProtocolVersion());
+		if (cached != null) {
+			if (this.entityTags) {
+				EntityTags.notModified(request.headers().get(IF_NONE_MATCH), cached);
+			}
+			worker.complete(new Response() {
+				public HttpResponse httpResponse() {
+					return cached;
+				}
+			});
+		} else if (route != null && route.isNonBlocking() && !request.isChunked()) {
+			worker.scheduleTimeout();
+			worker.run();
+		} else {
+			worker.scheduleTimeout();
+			try {
+				this.executor.execute(worker);
+			} catch (RejectedExecutionException e) {
+				this.admissionControl.recordRejected();
+				this.stats.recordRejected();
+				worker.complete(serviceUnavailable(request.getProtocolVersion()));
+			}
+		}
 
 		return promise;
 	}
 
+	/*
+	 * The priority named by the request's header, if there's one we know,
+	 * otherwise the route's
+	 */
+	private PriorityClass priorityOf(Request request, Route route) {
+		PriorityClass priority = this.priorityHeader == null ? null : PriorityClass.parse(request.headers().get(
+				this.priorityHeader));
+		if (priority != null) {
+			return priority;
+		}
+		return route == null ? PriorityClass.NORMAL : route.getPriority();
+	}
+
+	/**
+	 * @return a response telling the caller to come back later
+	 */
+	protected Response serviceUnavailable(final HttpVersion version) {
+		final int retryAfter = this.admissionControl.getRetryAfterSeconds();
+		return new Response() {
+			public HttpResponse httpResponse() {
+				return new ServiceUnavailableResponse(version, retryAfter);
+			}
+		};
+	}
+
+	/**
+	 * @return an empty response with the given status
+	 */
+	protected Response emptyResponse(final HttpVersion version, final HttpResponseStatus status) {
+		return new Response() {
+			public HttpResponse httpResponse() {
+				return new DefaultHttpResponse(version, status);
+			}
+		};
+	}
+
 	/**
 	 * {@link Runnable} implementation that converts a Netty request to
 	 * Resteasy, then uses the Resteasy Dispatcher to satisfy the call.
 	 */
-	protected class ResponseWorker implements Runnable {
+	protected class ResponseWorker implements PriorityExecutor.Task {
 
 		private final Request nettyRequest;
 		private final Promise<Response> promise;
+		private final Route route;
+		private final RouteStats routeStats;
+		private final RequestTarget target;
+		private final ResponseCache.Key cacheKey;
+		private final long receivedAt;
+		private final long enqueuedAt;
+		private volatile long startedAt;
+		private RequestDeadline deadline;
+		private PriorityClass priority;
+		private volatile ScheduledFuture<?> timeout;
+		private volatile Response streamed;
+		private volatile boolean isSuspended;
+		private volatile boolean isStreaming;
 
 		public ResponseWorker(Request nettyRequest, Promise<Response> promise) {
+			this(nettyRequest, promise, null);
+		}
+
+		public ResponseWorker(Request nettyRequest, Promise<Response> promise, Route route) {
+			this(nettyRequest, promise, route, RequestTarget.parse(nettyRequest.getUri()));
+		}
+
+		public ResponseWorker(Request nettyRequest, Promise<Response> promise, Route route, RequestTarget target) {
+			this(nettyRequest, promise, route, target, null);
+		}
+
+		/**
+		 * @param cacheKey
+		 *            key to store the response under in the response cache,
+		 *            or null if it isn't to be cached
+		 */
+		public ResponseWorker(Request nettyRequest, Promise<Response> promise, Route route, RequestTarget target,
+				ResponseCache.Key cacheKey) {
 			this.nettyRequest = nettyRequest;
 			this.promise = promise;
+			this.route = route;
+			this.routeStats = stats.forRoute(route);
+			this.target = target;
+			this.cacheKey = cacheKey;
+			this.receivedAt = System.currentTimeMillis();
+			this.enqueuedAt = System.nanoTime();
+			this.deadline = RequestDeadline.NONE;
+			this.priority = route == null ? PriorityClass.NORMAL : route.getPriority();
+		}
+
+		/**
+		 * @return the route this request was resolved to, or null if it wasn't
+		 *         (or couldn't be) resolved ahead of dispatch
+		 */
+		public Route getRoute() {
+			return this.route;
+		}
+
+		/**
+		 * @param deadline
+		 *            when the request has to be answered by
+		 */
+		void setDeadline(RequestDeadline deadline) {
+			this.deadline = Preconditions.checkNotNull(deadline, "deadline");
+		}
+
+		/**
+		 * @return when the request has to be answered by
+		 */
+		public RequestDeadline getDeadline() {
+			return this.deadline;
+		}
+
+		/**
+		 * @param priority
+		 *            how urgently the request should be served
+		 */
+		void setPriority(PriorityClass priority) {
+			this.priority = Preconditions.checkNotNull(priority, "priority");
+		}
+
+		@Override
+		public PriorityClass getPriority() {
+			return this.priority;
+		}
+
+		/**
+		 * Answers the request with a 503 when the executor drops it in favour
+		 * of more urgent work
+		 */
+		@Override
+		public void shed() {
+			admissionControl.recordRejected();
+			stats.recordRejected();
+			complete(serviceUnavailable(nettyRequest.getProtocolVersion()));
+		}
+
+		/*
+		 * Arranges for a 504 once the route's execution timeout is up; the
+		 * caller's own deadline is only checked before dispatch
+		 */
+		void scheduleTimeout() {
+			if (this.route == null || this.route.getExecutionTimeoutNanos() == 0 || !this.deadline.isBounded()) {
+				return;
+			}
+			this.timeout = getTimer().schedule(new Runnable() {
+				@Override
+				public void run() {
+					timedOut();
+				}
+			}, this.deadline.getRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		}
+
+		private void timedOut() {
+			if (!this.promise.isDefined()) {
+				stats.recordDeadlineExceeded();
+				complete(emptyResponse(nettyRequest.getProtocolVersion(), HttpResponseStatus.GATEWAY_TIMEOUT));
+				abandonStream();
+			}
+		}
+
+		/*
+		 * Nobody will ever read the body of a streamed response that lost to
+		 * a timeout, so make the resource's writes fail instead of blocking
+		 */
+		private void abandonStream() {
+			Response streamed = this.streamed;
+			if (streamed != null) {
+				streamed.writer().fail(new TimeoutException("request timed out"));
+			}
 		}
 
 		@Override
 		public void run() {
+			this.startedAt = System.nanoTime();
 			final HttpVersion version = nettyRequest.getProtocolVersion();
+			if (this.promise.isDefined()) {
+				// timed out while queued
+				return;
+			}
+			if (admissionControl.isExpired(this.enqueuedAt)) {
+				admissionControl.recordExpired();
+				stats.recordExpired();
+				complete(serviceUnavailable(version));
+				return;
+			}
+			if (this.deadline.isExpired()) {
+				stats.recordDeadlineExceeded();
+				complete(emptyResponse(version, HttpResponseStatus.GATEWAY_TIMEOUT));
+				return;
+			}
+			if (maxRequestBodySize > 0 && nettyRequest.getContent().readableBytes() > maxRequestBodySize) {
+				complete(emptyResponse(version, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE));
+				return;
+			}
+			if (compression != null && compression.isRequestDecoding() && !isDecodable(contentEncoding())) {
+				complete(emptyResponse(version, HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE));
+				return;
+			}
 			Response nettyResponse = null;
 			try {
 				nettyResponse = computeResponse(version);
@@ -83,19 +659,127 @@ public class ResteasyFinagleService extends Service<Request, Response> {
 					}
 				};
 			}
-			LOG.info(String.format("outbound response %s", nettyResponse.getStatus()));
-			this.promise.setValue(nettyResponse);
+			if (nettyResponse != null) {
+				complete(nettyResponse);
+			} else {
+				trackSuspended();
+			}
 		}
 
+		/*
+		 * Keeps track of a suspended request, so a forced stop can answer it;
+		 * it may have been resumed, or the service stopped, in the meantime
+		 */
+		private void trackSuspended() {
+			this.isSuspended = true;
+			suspended.add(this);
+			if (this.promise.isDefined()) {
+				suspended.remove(this);
+			} else if (stopped.get()) {
+				complete(serviceUnavailable(nettyRequest.getProtocolVersion()));
+			}
+		}
+
+		/**
+		 * Hands the response back to Finagle. Only the first call has any
+		 * effect (a suspended request may be resumed after the worker gave up
+		 * on it, for instance).
+		 */
+		protected void complete(Response nettyResponse) {
+			complete(nettyResponse, false);
+		}
+
+		/*
+		 * A streamed response is handed over as soon as it's committed, but
+		 * it's only measured, logged and no longer pending once its last
+		 * chunk has been written (see settleStream)
+		 */
+		private void complete(Response nettyResponse, boolean streaming) {
+			if (this.promise.updateIfEmpty(new Return<Response>(nettyResponse))) {
+				ScheduledFuture<?> timeout = this.timeout;
+				if (timeout != null) {
+					timeout.cancel(false);
+				}
+				if (this.isSuspended) {
+					suspended.remove(this);
+				}
+				if (streaming) {
+					this.isStreaming = true;
+					return;
+				}
+				HttpResponse response = nettyResponse.httpResponse();
+				settle(response, response.getContent().readableBytes());
+			} else if (LOG.isDebugEnabled()) {
+				LOG.debug(String.format("response to %s already sent", nettyRequest.getUri()));
+			}
+		}
+
+		/*
+		 * Settles a streamed response, once it has been written (or has
+		 * failed), with the number of bytes actually sent
+		 */
+		private void settleStream(OutboundServiceResponse jaxrsResponse) {
+			if (this.isStreaming) {
+				settle(jaxrsResponse.getNettyResponse(), jaxrsResponse.getStreamedCount());
+			}
+		}
+
+		/*
+		 * Records the answered request, and lets the service stop if it was
+		 * the last one it was waiting for
+		 */
+		private void settle(HttpResponse response, long responseLength) {
+			// the request is answered, whatever happens to its metrics
+			try {
+				long requestLength = nettyRequest.getContent().readableBytes();
+				long started = this.startedAt;
+				this.routeStats.recordRequest(response.getStatus().getCode(), started == 0L ? -1L : started
+						- this.enqueuedAt, System.nanoTime() - this.enqueuedAt, requestLength, responseLength);
+				if (accessLog.isSampled()) {
+					accessLog.record(newLogEntry(response, requestLength, responseLength));
+				}
+			} finally {
+				if (pending.decrementAndGet() == 0 && draining.get()) {
+					stop(false);
+				}
+			}
+		}
+
+		/*
+		 * Captures (without formatting) what the access log needs to know
+		 * about this request
+		 */
+		protected AccessLogEntry newLogEntry(HttpResponse response, long requestLength, long responseLength) {
+			long now = System.nanoTime();
+			// requests shed before reaching a worker never started
+			long started = this.startedAt == 0L ? now : this.startedAt;
+			return new AccessLogEntry(this.receivedAt, nettyRequest.remoteSocketAddress(),
+					nettyRequest.getMethod().getName(), nettyRequest.getUri(),
+					nettyRequest.getProtocolVersion().getText(), this.route == null ? null : this.route.getName(),
+					response.getStatus().getCode(), requestLength, responseLength, started - this.enqueuedAt, now
+							- this.enqueuedAt, accessLog.captureBody(nettyRequest.getContent()),
+					accessLog.captureBody(response.getContent()));
+		}
+
+		/**
+		 * @return the response, or null if the request was suspended (in which
+		 *         case the response is completed when it's resumed)
+		 */
 		protected Response computeResponse(final HttpVersion version) {
-			LOG.debug(String.format("incoming %s", nettyRequest.getUri()));
-			for (Entry<String, String> entry : nettyRequest.headers().entries()) {
-				LOG.debug(String.format("%s: %s", entry.getKey(), entry.getValue()));
+			final InputStream body;
+			try {
+				body = openBody();
+			} catch (IOException e) {
+				LOG.debug(String.format("malformed request body for %s", nettyRequest.getUri()), e);
+				return emptyResponse(version, HttpResponseStatus.BAD_REQUEST);
+			}
+			final InboundServiceRequest jaxrsRequest = reuseAdapters ? InboundServiceRequest.acquire(nettyRequest,
+					this.target, body) : new InboundServiceRequest(nettyRequest, this.target, body);
+			final OutboundServiceResponse jaxrsResponse = this.route == null ? new OutboundServiceResponse(version)
+					: new OutboundServiceResponse(version, this.route.getSizePredictor().predict());
+			if (this.route != null) {
+				jaxrsResponse.setHeaderBlock(this.route.getHeaderBlock());
 			}
-			LOG.debug(String.format("body: %s", nettyRequest.getContent().toString(UTF_8)));
-			
-			final InboundServiceRequest jaxrsRequest = new InboundServiceRequest(nettyRequest);
-			final OutboundServiceResponse jaxrsResponse = new OutboundServiceResponse(version);
 
 			final Response res = new Response() {
 				public HttpResponse httpResponse() {
@@ -103,11 +787,169 @@ public class ResteasyFinagleService extends Service<Request, Response> {
 				}
 			};
 
-			dispatcher.invoke(jaxrsRequest, jaxrsResponse);
+			if (dispatcher instanceof SynchronousDispatcher) {
+				jaxrsRequest.setAsyncContext(new FinagleAsynchronousContext((SynchronousDispatcher) dispatcher,
+						jaxrsRequest, jaxrsResponse, getTimer(), new Runnable() {
+							@Override
+							public void run() {
+								Closeables.closeQuietly(body);
+								finish(jaxrsRequest, jaxrsResponse);
+								complete(res);
+							}
+						}));
+			}
+
+			String encoding = compression == null ? null : compression.negotiate(nettyRequest.headers().get(
+					ACCEPT_ENCODING));
+			if (encoding != null) {
+				jaxrsResponse.setCompression(compression, encoding);
+			}
+
+			// streamed writes block until the client takes them, so requests
+			// running on the caller's thread are always buffered
+			if (streamingThreshold > 0 && (this.route == null || !this.route.isNonBlocking())) {
+				jaxrsResponse.setStreaming(res.writer(), streamingThreshold, new Runnable() {
+					@Override
+					public void run() {
+						complete(res, true);
+					}
+				});
+				this.streamed = res;
+				if (this.promise.isDefined()) {
+					abandonStream();
+				}
+			}
+
+			ResteasyProviderFactory.pushContext(RequestDeadline.class, this.deadline);
+			try {
+				dispatcher.invoke(jaxrsRequest, jaxrsResponse);
+			} catch (RuntimeException e) {
+				Closeables.closeQuietly(body);
+				jaxrsResponse.abort(e);
+				settleStream(jaxrsResponse);
+				throw e;
+			}
 
+			if (jaxrsRequest.getAsyncContext().isSuspended()) {
+				return null;
+			}
+			Closeables.closeQuietly(body);
+			finish(jaxrsRequest, jaxrsResponse);
+			if (reuseAdapters) {
+				jaxrsRequest.release();
+			}
 			return res;
 		}
 
+		/*
+		 * The request body: aggregated content is read straight from its
+		 * buffer, while a streamed body is pulled from the request's reader as
+		 * Resteasy consumes it (spilling to disk first, if configured).
+		 * Compressed bodies are decoded on the way, and the limit on body size
+		 * applies to the decoded body as well. Null for a request without a
+		 * body (the request adapter makes an empty stream, if anyone asks).
+		 */
+		private InputStream openBody() throws IOException {
+			InputStream body;
+			if (nettyRequest.isChunked()) {
+				body = new ReaderInputStream(nettyRequest.reader(), maxRequestBodySize);
+				if (spillThreshold > 0) {
+					body = new SpillingInputStream(body, spillThreshold, spillDirectory);
+				}
+			} else {
+				ChannelBuffer content = nettyRequest.getContent();
+				body = content.readable() ? new ChannelBufferInputStream(content) : null;
+			}
+			if (compression == null || !compression.isRequestDecoding()) {
+				return body;
+			}
+			String encoding = contentEncoding();
+			if (encoding == null || encoding.equals(CompressionPolicy.IDENTITY)) {
+				return body;
+			}
+			// Resteasy (and the resource) only ever see the decoded body
+			nettyRequest.headers().remove(CONTENT_ENCODING);
+			nettyRequest.headers().remove(CONTENT_LENGTH);
+			if (body == null) {
+				body = new ChannelBufferInputStream(ChannelBuffers.EMPTY_BUFFER);
+			}
+			body = encoding.equals(CompressionPolicy.DEFLATE) ? new InflaterInputStream(body)
+					: new GZIPInputStream(body);
+			return maxRequestBodySize > 0 ? new BoundedInputStream(body, maxRequestBodySize) : body;
+		}
+
+		/*
+		 * The request's Content-Encoding, normalized (or null if there isn't
+		 * one)
+		 */
+		private String contentEncoding() {
+			String encoding = nettyRequest.headers().get(CONTENT_ENCODING);
+			return encoding == null ? null : encoding.trim().toLowerCase(Locale.ENGLISH);
+		}
+
+		private boolean isDecodable(String encoding) {
+			return encoding == null || encoding.equals(CompressionPolicy.IDENTITY)
+					|| encoding.equals(CompressionPolicy.GZIP) || encoding.equals("x-gzip")
+					|| encoding.equals(CompressionPolicy.DEFLATE);
+		}
+
+		/*
+		 * Completes the body (e.g. sends the last chunk of a streamed
+		 * response), then teaches the route how big its responses are, tags
+		 * the response and offers it to the cache
+		 */
+		private void finish(InboundServiceRequest jaxrsRequest, OutboundServiceResponse jaxrsResponse) {
+			try {
+				jaxrsResponse.finish();
+			} catch (IOException e) {
+				LOG.info(String.format("error finishing response to %s", nettyRequest.getUri()), e);
+				jaxrsResponse.abort(e);
+				settleStream(jaxrsResponse);
+				return;
+			}
+			long finished = System.nanoTime();
+			Object writeStarted = jaxrsRequest.getAttribute(FinagleDispatcher.WRITE_STARTED);
+			long written = writeStarted instanceof Long ? (Long) writeStarted : finished;
+			this.routeStats.recordDispatch(written - this.startedAt, finished - written);
+			if (jaxrsResponse.isStreaming()) {
+				settleStream(jaxrsResponse);
+				return;
+			}
+			HttpResponse rendered = jaxrsResponse.getNettyResponse();
+			if (this.route != null) {
+				this.route.getSizePredictor().record(rendered.getContent().readableBytes());
+			}
+			boolean tagged = entityTags && "GET".equals(nettyRequest.getMethod().getName());
+			if (tagged && rendered.getStatus().getCode() == HttpResponseStatus.OK.getCode()
+					&& !rendered.headers().contains(ETAG)) {
+				rendered.headers().set(ETAG, EntityTags.of(rendered.getContent()));
+			}
+			if (this.cacheKey != null) {
+				responseCache.put(this.cacheKey, rendered);
+			}
+			if (tagged) {
+				EntityTags.notModified(nettyRequest.headers().get(IF_NONE_MATCH), rendered);
+			}
+		}
+
+	}
+
+	/*
+	 * Lazily-created timer shared by services that weren't given one. Almost
+	 * every timeout it schedules is cancelled when the request completes, so
+	 * cancelled tasks are taken off the queue straight away rather than
+	 * holding on to their request until they would have run.
+	 */
+	private static final class DefaultTimer {
+
+		static final ScheduledExecutorService INSTANCE = newTimer();
+
+		private static ScheduledExecutorService newTimer() {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("finagle-easy-timer-%d").build());
+			timer.setRemoveOnCancelPolicy(true);
+			return timer;
+		}
 	}
 
 }
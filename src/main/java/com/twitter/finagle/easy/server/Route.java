@@ -0,0 +1,173 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.resteasy.core.ResourceMethodInvoker;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A single resource method, as seen by the service. Everything we want to know
+ * about a method while dispatching is computed here once, when the
+ * {@link RouteTable} is built, so the per-request cost is a table lookup.
+ *
+ * @author denis.rangel
+ */
+public class Route {
+
+	private final ResourceMethodInvoker invoker;
+	private final String name;
+	private final boolean nonBlocking;
+	private final long executionTimeoutNanos;
+	private final PriorityClass priority;
+	private final ResponseSizePredictor sizePredictor;
+	private final HeaderBlock headerBlock;
+
+	public Route(ResourceMethodInvoker invoker) {
+		this.invoker = Preconditions.checkNotNull(invoker, "invoker");
+		this.name = invoker.getResourceClass().getSimpleName() + "." + invoker.getMethod().getName();
+		this.nonBlocking = findAnnotation(NonBlocking.class) != null;
+		ExecutionTimeout timeout = findAnnotation(ExecutionTimeout.class);
+		this.executionTimeoutNanos = timeout == null ? 0L : timeout.unit().toNanos(timeout.value());
+		RequestPriority priority = findAnnotation(RequestPriority.class);
+		this.priority = priority == null ? PriorityClass.NORMAL : priority.value();
+		this.sizePredictor = new ResponseSizePredictor();
+		this.headerBlock = newHeaderBlock();
+	}
+
+	/**
+	 * @return the Resteasy invoker for this route
+	 */
+	public ResourceMethodInvoker getInvoker() {
+		return this.invoker;
+	}
+
+	/**
+	 * @return a short, human-readable name for this route (e.g.
+	 *         "ExampleServiceImpl.getBar")
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return true if requests for this route may run on the calling thread
+	 * @see NonBlocking
+	 */
+	public boolean isNonBlocking() {
+		return this.nonBlocking;
+	}
+
+	/**
+	 * @return how long requests for this route may take, in nanoseconds
+	 *         (zero if there's no limit)
+	 * @see ExecutionTimeout
+	 */
+	public long getExecutionTimeoutNanos() {
+		return this.executionTimeoutNanos;
+	}
+
+	/**
+	 * @return how urgently requests for this route are served
+	 * @see RequestPriority
+	 */
+	public PriorityClass getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * @return how big this route's responses are likely to be
+	 */
+	public ResponseSizePredictor getSizePredictor() {
+		return this.sizePredictor;
+	}
+
+	/**
+	 * @return the headers this route always sends
+	 * @see StaticHeader
+	 */
+	public HeaderBlock getHeaderBlock() {
+		return this.headerBlock;
+	}
+
+	/**
+	 * Looks for an annotation on the resource method, checking (in order) the
+	 * implementation method, the JAX-RS-annotated method (which may live on an
+	 * interface), the implementation class and the class declaring the
+	 * JAX-RS-annotated method.
+	 *
+	 * @param type
+	 *            the annotation to look for
+	 * @return the annotation, or null if there isn't one
+	 */
+	public <A extends Annotation> A findAnnotation(Class<A> type) {
+		Class<?> resourceClass = this.invoker.getResourceClass();
+		Method annotated = this.invoker.getMethod();
+		A found = null;
+		try {
+			found = resourceClass.getMethod(annotated.getName(), annotated.getParameterTypes()).getAnnotation(type);
+		} catch (NoSuchMethodException e) {
+			// non-public implementation method; fall through
+		}
+		if (found == null) {
+			found = annotated.getAnnotation(type);
+		}
+		if (found == null) {
+			found = resourceClass.getAnnotation(type);
+		}
+		if (found == null) {
+			found = annotated.getDeclaringClass().getAnnotation(type);
+		}
+		return found;
+	}
+
+	/*
+	 * The route's static headers, looked for in the same places as
+	 * findAnnotation (the first place naming a header wins), and the concrete
+	 * media types it produces
+	 */
+	private HeaderBlock newHeaderBlock() {
+		Class<?> resourceClass = this.invoker.getResourceClass();
+		Method annotated = this.invoker.getMethod();
+		List<AnnotatedElement> places = Lists.newArrayListWithCapacity(4);
+		try {
+			places.add(resourceClass.getMethod(annotated.getName(), annotated.getParameterTypes()));
+		} catch (NoSuchMethodException e) {
+			// non-public implementation method; fall through
+		}
+		places.add(annotated);
+		places.add(resourceClass);
+		places.add(annotated.getDeclaringClass());
+		Map<String, String> headers = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
+		for (AnnotatedElement place : places) {
+			for (StaticHeader header : place.getAnnotationsByType(StaticHeader.class)) {
+				if (!headers.containsKey(header.name())) {
+					headers.put(header.name(), header.value());
+				}
+			}
+		}
+		List<MediaType> produces = Lists.newArrayList();
+		MediaType[] declared = this.invoker.getProduces();
+		if (declared != null) {
+			for (MediaType type : declared) {
+				if (!type.isWildcardType() && !type.isWildcardSubtype()) {
+					produces.add(type);
+				}
+			}
+		}
+		return new HeaderBlock(headers, produces);
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
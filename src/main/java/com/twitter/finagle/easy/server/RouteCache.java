@@ -0,0 +1,231 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.ws.rs.NotAllowedException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.core.ResourceInvoker;
+import org.jboss.resteasy.spi.HttpRequest;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Remembers how Resteasy matched recent requests, so repeats skip its
+ * regular-expression matching (see {@link FinagleDispatcher}). Lookups are
+ * keyed by HTTP method, matching path (after pre-matching filters such as
+ * suffix negotiation have run), Accept and the type and subtype of the
+ * Content-Type (its parameters, such as a multipart boundary, play no part in
+ * {@code @Consumes} matching), which together determine the outcome of
+ * matching. Two outcomes are remembered:
+ * <ul>
+ * <li>a match to a method whose full path is literal (see
+ * {@link RouteTable#getLiteralRoutes()}); methods with path parameters are
+ * left to Resteasy every time, since matching is also what extracts the
+ * parameters</li>
+ * <li>a failure to match (404, or 405 with the allowed methods)</li>
+ * </ul>
+ *
+ * @author denis.rangel
+ */
+public class RouteCache {
+
+	/**
+	 * Default number of distinct requests remembered
+	 */
+	public static final int DEFAULT_SIZE = 4096;
+
+	/**
+	 * A cache that doesn't remember anything
+	 */
+	public static final RouteCache DISABLED = new RouteCache(0, RouteTable.EMPTY);
+
+	private final Cache<Key, Outcome> outcomes;
+	private final Set<ResourceInvoker> literalInvokers;
+
+	/**
+	 * @param size
+	 *            maximum number of distinct requests remembered (zero to
+	 *            always match with Resteasy)
+	 * @param routes
+	 *            the routes of the service
+	 */
+	public RouteCache(int size, RouteTable routes) {
+		Preconditions.checkArgument(size >= 0, "size");
+		this.outcomes = size == 0 ? null : CacheBuilder.newBuilder().maximumSize(size).<Key, Outcome> build();
+		Set<ResourceInvoker> literal = Sets.newIdentityHashSet();
+		for (Route route : routes.getLiteralRoutes()) {
+			literal.add(route.getInvoker());
+		}
+		this.literalInvokers = literal;
+	}
+
+	/**
+	 * @param request
+	 *            a request about to be matched
+	 * @return the key for the request, or null if the cache is disabled
+	 */
+	public Key keyFor(HttpRequest request) {
+		if (this.outcomes == null) {
+			return null;
+		}
+		MultivaluedMap<String, String> headers = request.getHttpHeaders().getRequestHeaders();
+		return new Key(request.getHttpMethod(), request.getUri().getMatchingPath(),
+				headers.getFirst(HttpHeaders.ACCEPT), withoutParameters(headers.getFirst(HttpHeaders.CONTENT_TYPE)));
+	}
+
+	/*
+	 * "type/subtype", so that bodies with a different boundary or charset
+	 * share a key; anything unparseable is kept as it is, and Resteasy will
+	 * reject it again
+	 */
+	static String withoutParameters(String contentType) {
+		if (contentType == null || contentType.indexOf(';') < 0) {
+			return contentType;
+		}
+		try {
+			MediaType mediaType = MediaType.valueOf(contentType);
+			return mediaType.getType() + '/' + mediaType.getSubtype();
+		} catch (IllegalArgumentException e) {
+			return contentType;
+		}
+	}
+
+	/**
+	 * @param key
+	 *            from {@link #keyFor(HttpRequest)}
+	 * @return what happened last time, or null if we don't know
+	 */
+	public Outcome get(Key key) {
+		return this.outcomes.getIfPresent(key);
+	}
+
+	/**
+	 * Remembers a successful match, if it's to a literal route
+	 * 
+	 * @param chosenAccept
+	 *            the media type Resteasy chose to respond with (may be null)
+	 */
+	public void recordMatch(Key key, ResourceInvoker invoker, Object chosenAccept) {
+		if (this.literalInvokers.contains(invoker)) {
+			this.outcomes.put(key, new Outcome(invoker, chosenAccept, null));
+		}
+	}
+
+	/**
+	 * Remembers that nothing matched
+	 */
+	public void recordNotFound(Key key) {
+		this.outcomes.put(key, new Outcome(null, null, ImmutableSet.<String> of()));
+	}
+
+	/**
+	 * Remembers that the path matched, but not the method
+	 * 
+	 * @param allowed
+	 *            methods that would have matched
+	 */
+	public void recordNotAllowed(Key key, Set<String> allowed) {
+		if (!allowed.isEmpty()) {
+			this.outcomes.put(key, new Outcome(null, null, ImmutableSet.copyOf(allowed)));
+		}
+	}
+
+	/**
+	 * @return number of requests currently remembered
+	 */
+	public long size() {
+		return this.outcomes == null ? 0L : this.outcomes.size();
+	}
+
+	/**
+	 * The result of matching a request
+	 */
+	public static final class Outcome {
+
+		private final ResourceInvoker invoker;
+		private final Object chosenAccept;
+		private final Set<String> allowed;
+
+		Outcome(ResourceInvoker invoker, Object chosenAccept, Set<String> allowed) {
+			this.invoker = invoker;
+			this.chosenAccept = chosenAccept;
+			this.allowed = allowed;
+		}
+
+		/**
+		 * @return the matched invoker, or null if nothing matched
+		 */
+		public ResourceInvoker getInvoker() {
+			return this.invoker;
+		}
+
+		/**
+		 * @return the media type Resteasy chose while matching (may be null)
+		 */
+		public Object getChosenAccept() {
+			return this.chosenAccept;
+		}
+
+		/**
+		 * @return the exception Resteasy threw when it failed to match (a
+		 *         fresh one, since exceptions carry a mutable response)
+		 */
+		public RuntimeException newFailure() {
+			Preconditions.checkState(this.invoker == null, "request was matched");
+			if (this.allowed.isEmpty()) {
+				return new NotFoundException();
+			}
+			String[] methods = this.allowed.toArray(new String[this.allowed.size()]);
+			return new NotAllowedException(methods[0], Arrays.copyOfRange(methods, 1, methods.length));
+		}
+	}
+
+	/**
+	 * Everything that determines how a request is matched
+	 */
+	public static final class Key {
+
+		private final String method;
+		private final String path;
+		private final String accept;
+		private final String contentType;
+		private final int hash;
+
+		Key(String method, String path, String accept, String contentType) {
+			this.method = method;
+			this.path = path;
+			this.accept = accept;
+			this.contentType = contentType;
+			this.hash = 31 * (31 * (31 * method.hashCode() + path.hashCode()) + Objects.hashCode(accept))
+					+ Objects.hashCode(contentType);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return this.hash == key.hash && this.method.equals(key.method) && this.path.equals(key.path)
+					&& Objects.equals(this.accept, key.accept) && Objects.equals(this.contentType, key.contentType);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.concurrent.TimeUnit;
+
+import com.twitter.finagle.stats.Counter;
+import com.twitter.finagle.stats.Stat;
+import com.twitter.finagle.stats.StatsReceiver;
+
+/**
+ * Counters and histograms for one {@link Route} (or for requests that
+ * couldn't be matched to one). Everything is looked up from the
+ * {@link StatsReceiver} once, when the service is built, so recording a
+ * request doesn't build any names. Latencies are in milliseconds:
+ * <ul>
+ * <li>queue_wait_ms: time between arriving and reaching a worker</li>
+ * <li>dispatch_ms: time in Resteasy (filters and the resource method) before
+ * the response started to be written</li>
+ * <li>serialization_ms: time spent writing the response body</li>
+ * <li>latency_ms: the whole thing</li>
+ * </ul>
+ *
+ * @author denis.rangel
+ */
+public class RouteStats {
+
+	private final Counter requests;
+	private final Counter[] statusClasses;
+	private final Stat queueWait;
+	private final Stat dispatch;
+	private final Stat serialization;
+	private final Stat latency;
+	private final Stat requestBytes;
+	private final Stat responseBytes;
+
+	/**
+	 * @param receiver
+	 *            receiver already scoped to the route
+	 */
+	public RouteStats(StatsReceiver receiver) {
+		this.requests = receiver.counter0("requests");
+		StatsReceiver status = receiver.scope("status");
+		this.statusClasses = new Counter[6];
+		for (int i = 1; i < this.statusClasses.length; i++) {
+			this.statusClasses[i] = status.counter0(i + "XX");
+		}
+		this.queueWait = receiver.stat0("queue_wait_ms");
+		this.dispatch = receiver.stat0("dispatch_ms");
+		this.serialization = receiver.stat0("serialization_ms");
+		this.latency = receiver.stat0("latency_ms");
+		this.requestBytes = receiver.stat0("request_bytes");
+		this.responseBytes = receiver.stat0("response_bytes");
+	}
+
+	/**
+	 * Records a completed request
+	 * 
+	 * @param status
+	 *            the response status code
+	 * @param queueWaitNanos
+	 *            time before it reached a worker (negative if it never did)
+	 * @param latencyNanos
+	 *            time from arrival to completion
+	 * @param requestLength
+	 *            size of the request body
+	 * @param responseLength
+	 *            size of the response body
+	 */
+	public void recordRequest(int status, long queueWaitNanos, long latencyNanos, long requestLength,
+			long responseLength) {
+		this.requests.incr();
+		int statusClass = status / 100;
+		if (statusClass > 0 && statusClass < this.statusClasses.length) {
+			this.statusClasses[statusClass].incr();
+		}
+		if (queueWaitNanos >= 0) {
+			this.queueWait.add(millis(queueWaitNanos));
+		}
+		this.latency.add(millis(latencyNanos));
+		this.requestBytes.add(requestLength);
+		this.responseBytes.add(responseLength);
+	}
+
+	/**
+	 * Records how a worker's time was split between Resteasy and writing the
+	 * response
+	 */
+	public void recordDispatch(long dispatchNanos, long serializationNanos) {
+		this.dispatch.add(millis(dispatchNanos));
+		this.serialization.add(millis(serializationNanos));
+	}
+
+	private static float millis(long nanos) {
+		return nanos / (float) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
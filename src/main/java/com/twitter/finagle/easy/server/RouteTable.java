@@ -0,0 +1,291 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jboss.resteasy.core.ResourceInvoker;
+import org.jboss.resteasy.core.ResourceMethodInvoker;
+import org.jboss.resteasy.core.ResourceMethodRegistry;
+import org.jboss.resteasy.spi.Registry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Precomputed table of the {@link Route}s registered with a Resteasy
+ * {@link Registry}, used to decide how to handle a request <i>before</i> it is
+ * handed to the dispatcher (e.g. whether it can run on the calling thread).
+ *
+ * Matching here is deliberately conservative: it understands literal path
+ * segments and simple "{param}" segments only. Anything fancier (regular
+ * expressions, matrix parameters, encoded characters, sub-resource locators,
+ * several methods differing only by media type) resolves to null, and the
+ * request is handled as if it had no route information at all. Resteasy
+ * remains the authority on which method actually gets invoked.
+ *
+ * @author denis.rangel
+ */
+public class RouteTable {
+
+	/**
+	 * A table with no routes; everything resolves to null
+	 */
+	public static final RouteTable EMPTY = new RouteTable(Collections.<Template> emptyList());
+
+	private static final Log LOG = LogFactory.getLog(RouteTable.class);
+
+	private static final int NO_MATCH = -1;
+	private static final int AMBIGUOUS = -2;
+
+	private final List<Template> templates;
+	private final boolean nonBlockingRoutes;
+
+	protected RouteTable(List<Template> templates) {
+		this.templates = ImmutableList.copyOf(templates);
+		boolean nonBlocking = false;
+		for (Template template : this.templates) {
+			for (Route route : template.routes.values()) {
+				nonBlocking |= route != null && route.isNonBlocking();
+			}
+		}
+		this.nonBlockingRoutes = nonBlocking;
+	}
+
+	/**
+	 * Builds a table from everything currently bound in the supplied registry
+	 *
+	 * @param registry
+	 *            a Resteasy registry (only {@link ResourceMethodRegistry}
+	 *            exposes its bindings; anything else yields {@link #EMPTY})
+	 * @return the route table
+	 */
+	public static RouteTable build(Registry registry) {
+		if (!(registry instanceof ResourceMethodRegistry)) {
+			LOG.warn(String.format("can't build routes from %s", registry.getClass().getName()));
+			return EMPTY;
+		}
+		List<Template> templates = Lists.newArrayList();
+		for (Map.Entry<String, List<ResourceInvoker>> entry : ((ResourceMethodRegistry) registry).getBounded()
+				.entrySet()) {
+			Template template = new Template(entry.getKey());
+			for (ResourceInvoker invoker : entry.getValue()) {
+				template.add(invoker);
+			}
+			templates.add(template);
+		}
+		return new RouteTable(templates);
+	}
+
+	/**
+	 * @return true if at least one route is marked {@link NonBlocking}
+	 */
+	public boolean hasNonBlockingRoutes() {
+		return this.nonBlockingRoutes;
+	}
+
+	/**
+	 * @return every route in this table (including ones that never resolve
+	 *         because they are ambiguous)
+	 */
+	public List<Route> getRoutes() {
+		List<Route> routes = Lists.newArrayList();
+		for (Template template : this.templates) {
+			routes.addAll(template.allRoutes);
+		}
+		return routes;
+	}
+
+	/**
+	 * @return the routes whose full path is made up of literal segments only
+	 *         (no parameters, regular expressions or sub-resources), so
+	 *         matching them never extracts any path parameters
+	 */
+	public List<Route> getLiteralRoutes() {
+		List<Route> routes = Lists.newArrayList();
+		for (Template template : this.templates) {
+			if (template.isLiteral()) {
+				routes.addAll(template.allRoutes);
+			}
+		}
+		return routes;
+	}
+
+	/**
+	 * @param httpMethod
+	 *            the request method (e.g. "GET")
+	 * @param uri
+	 *            the raw request URI (path plus optional query)
+	 * @return the single route that handles the request, or null if there is
+	 *         no route or we can't tell unambiguously
+	 */
+	public Route resolve(String httpMethod, String uri) {
+		return resolve(httpMethod, splitPath(uri));
+	}
+
+	/**
+	 * @param httpMethod
+	 *            the request method (e.g. "GET")
+	 * @param segments
+	 *            the request path, already split (see
+	 *            {@link RequestTarget#getSegments()})
+	 * @return the single route that handles the request, or null if there is
+	 *         no route or we can't tell unambiguously
+	 */
+	public Route resolve(String httpMethod, List<String> segments) {
+		if (segments == null) {
+			return null;
+		}
+		Route best = null;
+		int bestScore = NO_MATCH;
+		boolean tied = false;
+		for (Template template : this.templates) {
+			int score = template.match(segments);
+			if (score == AMBIGUOUS) {
+				return null;
+			}
+			if (score == NO_MATCH || !template.routes.containsKey(httpMethod)) {
+				continue;
+			}
+			if (score > bestScore) {
+				best = template.routes.get(httpMethod);
+				bestScore = score;
+				tied = false;
+			} else if (score == bestScore) {
+				tied = true;
+			}
+		}
+		return tied ? null : best;
+	}
+
+	/*
+	 * Splits the path portion of a request URI into its segments, ignoring a
+	 * trailing slash. Returns null for anything we don't want to interpret
+	 * ourselves.
+	 */
+	static List<String> splitPath(String uri) {
+		int end = uri.length();
+		for (int i = 0; i < uri.length(); i++) {
+			char c = uri.charAt(i);
+			if (c == '?' || c == '#') {
+				end = i;
+				break;
+			}
+			if (c == '%' || c == ';') {
+				return null;
+			}
+		}
+		int start = 0;
+		if (end > 0 && uri.charAt(0) == '/') {
+			start = 1;
+		}
+		if (end > start && uri.charAt(end - 1) == '/') {
+			end--;
+		}
+		if (start >= end) {
+			return Collections.emptyList();
+		}
+		List<String> segments = Lists.newArrayListWithCapacity(4);
+		int from = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || uri.charAt(i) == '/') {
+				if (i == from) {
+					return null;
+				}
+				segments.add(uri.substring(from, i));
+				from = i + 1;
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * A path template and the routes bound to it, keyed by HTTP method (a null
+	 * value means several methods share the template and HTTP method, and we
+	 * can't choose between them)
+	 */
+	protected static class Template {
+
+		private final String path;
+		private final List<String> literals;
+		private final int literalChars;
+		private final Map<String, Route> routes;
+		private final List<Route> allRoutes;
+		private boolean complex;
+		private boolean prefix;
+
+		protected Template(String path) {
+			this.path = path;
+			this.literals = Lists.newArrayList();
+			this.routes = Maps.newHashMap();
+			this.allRoutes = Lists.newArrayList();
+			List<String> segments = splitPath(path == null ? "" : path.trim());
+			if (segments == null) {
+				this.complex = true;
+				segments = Collections.emptyList();
+			}
+			int chars = 0;
+			for (String segment : segments) {
+				if (segment.indexOf('{') < 0) {
+					this.literals.add(segment);
+					chars += segment.length();
+				} else if (segment.charAt(0) == '{' && segment.indexOf('}') == segment.length() - 1
+						&& segment.indexOf(':') < 0 && segment.lastIndexOf('{') == 0) {
+					// simple parameter, matches any single segment
+					this.literals.add(null);
+				} else {
+					this.complex = true;
+					break;
+				}
+			}
+			this.literalChars = chars;
+		}
+
+		protected void add(ResourceInvoker invoker) {
+			if (!(invoker instanceof ResourceMethodInvoker)) {
+				// sub-resource locators match any path below this one
+				this.prefix = true;
+				return;
+			}
+			Route route = new Route((ResourceMethodInvoker) invoker);
+			this.allRoutes.add(route);
+			for (String httpMethod : route.getInvoker().getHttpMethods()) {
+				if (this.routes.containsKey(httpMethod)) {
+					LOG.debug(String.format("%s %s is ambiguous", httpMethod, this.path));
+					this.routes.put(httpMethod, null);
+				} else {
+					this.routes.put(httpMethod, route);
+				}
+			}
+		}
+
+		protected boolean isLiteral() {
+			return !this.complex && !this.prefix && !this.literals.contains(null);
+		}
+
+		/*
+		 * Returns the number of literal characters matched (higher is more
+		 * specific), NO_MATCH, or AMBIGUOUS if this template might match but
+		 * we can't be sure.
+		 */
+		protected int match(List<String> segments) {
+			int known = this.literals.size();
+			if (!this.complex && !this.prefix && segments.size() != known) {
+				return NO_MATCH;
+			}
+			if (segments.size() < known) {
+				return NO_MATCH;
+			}
+			for (int i = 0; i < known; i++) {
+				String literal = this.literals.get(i);
+				if (literal != null && !literal.equals(segments.get(i))) {
+					return NO_MATCH;
+				}
+			}
+			return this.complex || this.prefix ? AMBIGUOUS : this.literalChars;
+		}
+	}
+}
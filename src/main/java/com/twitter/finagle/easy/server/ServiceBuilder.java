@@ -4,31 +4,34 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.twitter.common.quantity.Time.SECONDS;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.core.MediaType;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jboss.resteasy.core.AcceptHeaderByFileSuffixFilter;
-import org.jboss.resteasy.core.AsynchronousDispatcher;
-import org.jboss.resteasy.core.Dispatcher;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.jboss.resteasy.util.GetRestful;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.twitter.common.quantity.Amount;
 import com.twitter.common.quantity.Time;
-import com.twitter.finagle.Service;
 import com.twitter.finagle.easy.util.ServiceUtils;
-import com.twitter.finagle.httpx.Request;
-import com.twitter.finagle.httpx.Response;
+import com.twitter.finagle.stats.StatsReceiver;
 
 /**
  * Builder for a Finagle {@link com.twitter.finagle.Service} that knows how to
@@ -61,35 +64,404 @@ public class ServiceBuilder {
 	private Map<String, String> languages;
 	private List<Object> beans;
 	private Executor executor;
+	private int threadPoolSize;
+	private int maxQueueDepth;
+	private long maxQueueWait;
+	private TimeUnit maxQueueWaitUnit;
+	private int retryAfter;
+	private ScheduledExecutorService timer;
+	private AccessLog accessLog;
+	private int pathCacheSize;
+	private int streamingThreshold;
+	private long maxRequestBodySize;
+	private int spillThreshold;
+	private File spillDirectory;
+	private CompressionPolicy compression;
+	private ResponseCache responseCache;
+	private boolean entityTags;
+	private StatsReceiver statsReceiver;
+	private int routeCacheSize;
+	private Warmup warmup;
+	private String deadlineHeader;
+	private boolean priorityScheduling;
+	private int virtualThreads;
+	private String priorityHeader;
 
 	protected ServiceBuilder() {
 		this.mediaTypes = Maps.newHashMap(DEFAULT_MEDIA_TYPES);
 		this.languages = Maps.newHashMap();
 		this.beans = Lists.newArrayList();
-		this.providerFactory = ServiceUtils.getDefaultProviderFactory();
-		this.executor = Executors.newSingleThreadExecutor();
+		this.threadPoolSize = 1;
+		this.maxQueueWaitUnit = TimeUnit.MILLISECONDS;
+		this.retryAfter = AdmissionControl.DEFAULT_RETRY_AFTER;
+		this.pathCacheSize = RequestTargetCache.DEFAULT_SIZE;
+		this.routeCacheSize = RouteCache.DEFAULT_SIZE;
 	}
 
 	/**
-	 * Sets the size of the background thread pool
+	 * Sets the provider factory that message body readers and writers,
+	 * exception mappers and filters are looked up in. The service only ever
+	 * reads from it (anything the service registers goes into a child
+	 * factory), so the same factory can be shared with other services and
+	 * with clients. By default, the JVM-wide instance is used (see
+	 * {@link ServiceUtils#getDefaultProviderFactory()}).
+	 * 
+	 * @param providerFactory
+	 *            the factory to use
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withProviderFactory(ResteasyProviderFactory providerFactory) {
+		this.providerFactory = checkNotNull(providerFactory, "providerFactory");
+		return this;
+	}
+
+	/**
+	 * Uses a provider factory of the service's own, holding the
+	 * {@link ServiceUtils#CORE_PROVIDERS core providers} and the ones given
+	 * here, instead of the JVM-wide instance; no classpath scanning is
+	 * involved (see {@link ServiceUtils#newProviderFactory(Iterable)})
+	 * 
+	 * @param providers
+	 *            provider classes or instances
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withProviders(Object... providers) {
+		this.providerFactory = ServiceUtils.newProviderFactory(Iterables.concat(ServiceUtils.CORE_PROVIDERS,
+				Arrays.asList(providers)));
+		return this;
+	}
+
+	/**
+	 * Sets the size of the background thread pool (replaces any executor set
+	 * with {@link #withExecutor(Executor)})
 	 * 
 	 * @param size
 	 *            fixed number of threads for request handling pool
 	 * @return this (for chaining)
 	 */
 	public ServiceBuilder withThreadPoolSize(int size) {
-		return withExecutor(Executors.newFixedThreadPool(size));
+		checkArgument(size > 0, "size");
+		this.threadPoolSize = size;
+		this.executor = null;
+		return this;
 	}
 
 	/**
-	 * Sets a custom executor to be used for handling calls
+	 * Sets a custom executor to be used for handling calls. If the executor
+	 * refuses a request (by throwing a
+	 * {@link java.util.concurrent.RejectedExecutionException}), it's answered
+	 * with a 503. The executor isn't shut down when the service is closed.
 	 * 
 	 * @param executor
 	 *            the executor to use
 	 * @return this (for chaining)
 	 */
 	public ServiceBuilder withExecutor(Executor executor) {
-		this.executor = executor;
+		this.executor = checkNotNull(executor, "executor");
+		return this;
+	}
+
+	/**
+	 * Bounds the number of requests waiting for a worker thread; requests
+	 * arriving when the queue is full are answered immediately with a 503.
+	 * Only applies to the pool built by this builder (not to executors
+	 * supplied with {@link #withExecutor(Executor)}).
+	 * 
+	 * @param depth
+	 *            maximum number of queued requests (zero for unbounded)
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withMaxQueueDepth(int depth) {
+		checkArgument(depth >= 0, "depth");
+		this.maxQueueDepth = depth;
+		return this;
+	}
+
+	/**
+	 * Runs every request on a virtual thread of its own, instead of on a
+	 * pool of platform threads (see {@link VirtualThreadExecutor}), for
+	 * resources that spend most of their time blocked. Needs Java 21 or
+	 * later; on older JVMs, a warning is logged and the usual pool is built.
+	 * The queue limit set with {@link #withMaxQueueDepth(int)} applies to
+	 * requests waiting for one of the concurrent slots. Takes precedence over
+	 * {@link #withThreadPoolSize(int)} and
+	 * {@link #withPriorityScheduling(boolean)}.
+	 * 
+	 * @param maxConcurrency
+	 *            largest number of requests running at once (zero to go
+	 *            back to a pool of platform threads)
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withVirtualThreads(int maxConcurrency) {
+		checkArgument(maxConcurrency >= 0, "maxConcurrency");
+		this.virtualThreads = maxConcurrency;
+		return this;
+	}
+
+	/**
+	 * Queues requests by {@link PriorityClass} instead of in a single FIFO
+	 * queue (see {@link PriorityExecutor}): urgent requests are served first
+	 * and, once the queue is full (see {@link #withMaxQueueDepth(int)}),
+	 * displace less urgent ones. Classes are assigned with
+	 * {@link RequestPriority} (and {@link #withPriorityHeader(String)}). Only
+	 * applies to the pool built by this builder (to use different weights,
+	 * pass a {@link PriorityExecutor} to {@link #withExecutor(Executor)}).
+	 * 
+	 * @param enabled
+	 *            whether to schedule by priority
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withPriorityScheduling(boolean enabled) {
+		this.priorityScheduling = enabled;
+		return this;
+	}
+
+	/**
+	 * Lets callers name the {@link PriorityClass} of their requests in a
+	 * header (e.g. "X-Priority: critical"), overriding the route's. Only use
+	 * this where callers can be trusted not to put themselves first.
+	 * 
+	 * @param header
+	 *            name of the header
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withPriorityHeader(String header) {
+		this.priorityHeader = checkNotNull(header, "header");
+		return this;
+	}
+
+	/**
+	 * Sheds requests that have waited too long for a worker thread: they're
+	 * answered with a 503 instead of being dispatched.
+	 * 
+	 * @param time
+	 *            maximum time in the queue (zero for unbounded)
+	 * @param unit
+	 *            units for time
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withMaxQueueWait(long time, TimeUnit unit) {
+		checkArgument(time >= 0, "time");
+		this.maxQueueWait = time;
+		this.maxQueueWaitUnit = checkNotNull(unit, "unit");
+		return this;
+	}
+
+	/**
+	 * @param seconds
+	 *            value of the Retry-After header sent with 503s for shed
+	 *            requests
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withRetryAfter(int seconds) {
+		checkArgument(seconds >= 0, "seconds");
+		this.retryAfter = seconds;
+		return this;
+	}
+
+	/**
+	 * Reads the caller's timeout from a request header, in addition to the
+	 * deadline Finagle propagates in the request context; requests still
+	 * waiting for a worker when it runs out are answered with a 504 without
+	 * being dispatched (see {@link RequestDeadline})
+	 * 
+	 * @param header
+	 *            name of the header (e.g. {@link RequestDeadline#DEFAULT_HEADER}
+	 *            ), whose value is in milliseconds
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withDeadlineHeader(String header) {
+		this.deadlineHeader = checkNotNull(header, "header");
+		return this;
+	}
+
+	/**
+	 * Sets the timer used to schedule timeouts (e.g. for suspended
+	 * asynchronous requests). By default, services share a single daemon
+	 * thread. Most timeouts are cancelled long before they're due, so a
+	 * {@link java.util.concurrent.ScheduledThreadPoolExecutor} supplied here
+	 * should remove cancelled tasks from its queue.
+	 * 
+	 * @param timer
+	 *            the timer to use
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withTimer(ScheduledExecutorService timer) {
+		this.timer = checkNotNull(timer, "timer");
+		return this;
+	}
+
+	/**
+	 * Sets the access log for the service. By default, every request is
+	 * logged (without bodies) to commons-logging; pass
+	 * {@link AccessLog#disabled()} to turn access logging off. The service
+	 * doesn't close a log it was given, so one log can be shared.
+	 * 
+	 * @param accessLog
+	 *            the access log to use
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withAccessLog(AccessLog accessLog) {
+		this.accessLog = checkNotNull(accessLog, "accessLog");
+		return this;
+	}
+
+	/**
+	 * Sets how many distinct request paths the service remembers parsing
+	 * (see {@link RequestTargetCache})
+	 * 
+	 * @param size
+	 *            number of paths (zero to parse every request from scratch)
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withPathCacheSize(int size) {
+		checkArgument(size >= 0, "size");
+		this.pathCacheSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets how many distinct requests (method, path, Accept and Content-Type)
+	 * the service remembers matching to a resource method, or failing to
+	 * (see {@link RouteCache})
+	 * 
+	 * @param size
+	 *            number of requests (zero to always match with Resteasy)
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withRouteCacheSize(int size) {
+		checkArgument(size >= 0, "size");
+		this.routeCacheSize = size;
+		return this;
+	}
+
+	/**
+	 * Streams large responses: once a response body reaches the threshold,
+	 * the headers are sent and the body follows in chunks of that size (see
+	 * {@link ChunkedOutputStream}). Smaller bodies are sent as usual. The
+	 * Finagle server must have streaming enabled (e.g.
+	 * {@code Httpx.server().withStreaming(true)}).
+	 * 
+	 * @param flushThreshold
+	 *            chunk size, in bytes (zero to turn streaming off)
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withStreamingResponses(int flushThreshold) {
+		checkArgument(flushThreshold >= 0, "flushThreshold");
+		this.streamingThreshold = flushThreshold;
+		return this;
+	}
+
+	/**
+	 * Answers requests whose bodies are bigger than the limit with a 413.
+	 * Streamed bodies are counted as they're read, so an oversized upload is
+	 * cut off without ever being held in memory.
+	 * 
+	 * @param maxBytes
+	 *            largest request body accepted (zero for no limit)
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withMaxRequestBodySize(long maxBytes) {
+		checkArgument(maxBytes >= 0, "maxBytes");
+		this.maxRequestBodySize = maxBytes;
+		return this;
+	}
+
+	/**
+	 * Reads streamed request bodies off the connection before dispatching
+	 * them: the first {@code memoryThreshold} bytes are kept in memory and
+	 * the rest is written to a temporary file, which is deleted once the
+	 * request completes (see {@link SpillingInputStream}). Without this,
+	 * streamed bodies are read from the connection only as fast as the
+	 * resource consumes them. The Finagle server must have streaming enabled
+	 * (e.g. {@code Httpx.server().withStreaming(true)}), otherwise request
+	 * bodies are aggregated in memory before they reach us.
+	 * 
+	 * @param memoryThreshold
+	 *            number of bytes kept in memory (zero to turn spilling off)
+	 * @param directory
+	 *            where spill files go (null for the system default)
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withRequestBodySpill(int memoryThreshold, File directory) {
+		checkArgument(memoryThreshold >= 0, "memoryThreshold");
+		this.spillThreshold = memoryThreshold;
+		this.spillDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * Compresses responses for clients that accept gzip or deflate, and
+	 * decodes compressed request bodies (see {@link CompressionPolicy}).
+	 * Responses are compressed as they're written, so this combines with
+	 * {@link #withStreamingResponses(int)}.
+	 * 
+	 * @param policy
+	 *            what to compress, and how
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withCompression(CompressionPolicy policy) {
+		this.compression = checkNotNull(policy, "policy");
+		return this;
+	}
+
+	/**
+	 * Answers repeated GET requests from a cache of rendered responses,
+	 * without dispatching them; resources opt in by sending a
+	 * {@code Cache-Control: max-age} header (see {@link ResponseCache})
+	 * 
+	 * @param cache
+	 *            the cache to use
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withResponseCache(ResponseCache cache) {
+		this.responseCache = checkNotNull(cache, "cache");
+		return this;
+	}
+
+	/**
+	 * Tags successful GET responses with a strong ETag computed from the
+	 * rendered body, unless the resource set one itself, and answers requests
+	 * whose If-None-Match matches with an empty 304 (see {@link EntityTags}).
+	 * Resources that set the ETag up front skip serialization on a match
+	 * (see {@link NotModifiedFilter}).
+	 * 
+	 * @param enabled
+	 *            whether to tag responses
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withEntityTags(boolean enabled) {
+		this.entityTags = enabled;
+		return this;
+	}
+
+	/**
+	 * Exports request metrics (per route) and worker pool gauges to the
+	 * supplied receiver (see {@link ServiceStats}). By default, nothing is
+	 * recorded.
+	 * 
+	 * @param receiver
+	 *            where the metrics go (e.g. {@code receiver.scope("api")})
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withStatsReceiver(StatsReceiver receiver) {
+		this.statsReceiver = checkNotNull(receiver, "receiver");
+		return this;
+	}
+
+	/**
+	 * Warms the service up before {@link #build()} returns it, by replaying
+	 * requests through it in-process (see {@link Warmup}); announce the
+	 * server only once the service has been built. Warm-up requests aren't
+	 * recorded in the access log or the stats, and never go into the
+	 * response cache.
+	 * 
+	 * @param warmup
+	 *            the requests to replay, and when to stop
+	 * @return this (for chaining)
+	 */
+	public ServiceBuilder withWarmup(Warmup warmup) {
+		this.warmup = checkNotNull(warmup, "warmup");
 		return this;
 	}
 
@@ -168,20 +540,95 @@ public class ServiceBuilder {
 	/**
 	 * @return a new service
 	 */
-	public Service<Request, Response> build() {
+	public ResteasyFinagleService build() {
 		checkArgument(!this.beans.isEmpty(), "Beans");
-		Dispatcher dispatcher = new AsynchronousDispatcher(this.providerFactory);
+		// registrations for this service stay out of the (possibly shared)
+		// factory we were given; a child factory reads its parent's filter
+		// registries until one of its own register methods copies them, so
+		// filters must be registered through the child, never its registries
+		ResteasyProviderFactory providerFactory = new ResteasyProviderFactory(
+				this.providerFactory == null ? ServiceUtils.getDefaultProviderFactory() : this.providerFactory);
+		FinagleDispatcher dispatcher = new FinagleDispatcher(providerFactory);
 
 		AcceptHeaderByFileSuffixFilter suffixNegotiationFilter = new AcceptHeaderByFileSuffixFilter();
 		suffixNegotiationFilter.setMediaTypeMappings(this.mediaTypes);
 		suffixNegotiationFilter.setLanguageMappings(this.languages);
-		providerFactory.getContainerRequestFilterRegistry().registerSingleton(suffixNegotiationFilter);
+		providerFactory.registerProviderInstance(suffixNegotiationFilter);
+		if (this.entityTags) {
+			providerFactory.registerProviderInstance(new NotModifiedFilter());
+		}
 
 		for (Object bean : this.beans) {
 			dispatcher.getRegistry().addSingletonResource(bean);
 		}
 
-		return new ResteasyFinagleService(dispatcher, executor);
+		Executor executor = this.executor == null ? newExecutor() : this.executor;
+		ResteasyFinagleService service = new ResteasyFinagleService(dispatcher, executor);
+		service.setOwnsExecutor(this.executor == null);
+		RouteTable routes = RouteTable.build(dispatcher.getRegistry());
+		AdmissionControl admissionControl = new AdmissionControl(executor, this.maxQueueWait,
+				this.maxQueueWaitUnit, this.retryAfter);
+		service.setRoutes(routes);
+		dispatcher.setRouteCache(this.routeCacheSize == 0 ? RouteCache.DISABLED : new RouteCache(
+				this.routeCacheSize, routes));
+		service.setAdmissionControl(admissionControl);
+		if (this.timer != null) {
+			service.setTimer(this.timer);
+		}
+		service.setRequestTargetCache(this.pathCacheSize == 0 ? RequestTargetCache.DISABLED
+				: new RequestTargetCache(this.pathCacheSize));
+		service.setStreamingThreshold(this.streamingThreshold);
+		service.setMaxRequestBodySize(this.maxRequestBodySize);
+		service.setRequestBodySpill(this.spillThreshold, this.spillDirectory);
+		if (this.compression != null) {
+			service.setCompression(this.compression);
+		}
+		service.setEntityTags(this.entityTags);
+		service.setDeadlineHeader(this.deadlineHeader);
+		service.setPriorityHeader(this.priorityHeader);
+		if (this.warmup != null) {
+			// synthetic requests stay out of the logs, stats and cache, which
+			// are only attached afterwards
+			service.setAccessLog(AccessLog.disabled());
+			this.warmup.run(service);
+		}
+		if (this.statsReceiver != null) {
+			service.setStats(new ServiceStats(this.statsReceiver, routes, admissionControl));
+		}
+		if (this.responseCache != null) {
+			service.setResponseCache(this.responseCache);
+		}
+		service.setAccessLog(this.accessLog == null ? AccessLog.logging() : this.accessLog);
+		service.setOwnsAccessLog(this.accessLog == null);
+		return service;
+	}
+
+	/*
+	 * Creates the worker pool, with a bounded queue if we were asked for one
+	 * (and a queue per priority class, or virtual threads, if we were asked
+	 * for that)
+	 */
+	protected Executor newExecutor() {
+		if (this.virtualThreads > 0) {
+			if (VirtualThreadExecutor.isSupported()) {
+				LOG.info(String.format("running up to %d requests at once on virtual threads, queue depth %d",
+						this.virtualThreads, this.maxQueueDepth));
+				return new VirtualThreadExecutor(this.virtualThreads, this.maxQueueDepth);
+			}
+			LOG.warn("virtual threads need Java 21 or later; using a pool of platform threads");
+		}
+		if (this.priorityScheduling) {
+			LOG.info(String.format("creating priority pool of %d threads with queue depth %d",
+					this.threadPoolSize, this.maxQueueDepth));
+			return new PriorityExecutor(this.threadPoolSize, this.maxQueueDepth);
+		}
+		if (this.maxQueueDepth == 0) {
+			return Executors.newFixedThreadPool(this.threadPoolSize);
+		}
+		LOG.info(String.format("creating pool of %d threads with queue depth %d", this.threadPoolSize,
+				this.maxQueueDepth));
+		return new ThreadPoolExecutor(this.threadPoolSize, this.threadPoolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(this.maxQueueDepth));
 	}
 
 	public static ServiceBuilder get() {
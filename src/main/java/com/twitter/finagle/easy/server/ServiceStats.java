@@ -0,0 +1,125 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.twitter.finagle.stats.Counter;
+import com.twitter.finagle.stats.Gauge;
+import com.twitter.finagle.stats.NullStatsReceiver;
+import com.twitter.finagle.stats.StatsReceiver;
+
+import scala.collection.JavaConversions;
+import scala.collection.Seq;
+import scala.runtime.AbstractFunction0;
+
+/**
+ * Metrics for a {@link ResteasyFinagleService}, exported to a Finagle
+ * {@link StatsReceiver}: a {@link RouteStats} per route (scoped by route
+ * name, e.g. "routes/ExampleServiceImpl.getBar"), one for requests that
+ * weren't matched to a route ("unrouted"), counts of shed requests, and
+ * gauges for the worker pool.
+ *
+ * @author denis.rangel
+ */
+public class ServiceStats {
+
+	private final Map<Route, RouteStats> routes;
+	private final RouteStats unrouted;
+	private final Counter rejected;
+	private final Counter expired;
+	private final Counter deadlineExceeded;
+	private final List<Gauge> gauges;
+
+	/**
+	 * @param receiver
+	 *            where the metrics go
+	 * @param routeTable
+	 *            the service's routes
+	 * @param admissionControl
+	 *            source of the worker pool gauges
+	 */
+	public ServiceStats(StatsReceiver receiver, RouteTable routeTable, final AdmissionControl admissionControl) {
+		Preconditions.checkNotNull(receiver, "receiver");
+		StatsReceiver routeScope = receiver.scope("routes");
+		ImmutableMap.Builder<Route, RouteStats> routes = ImmutableMap.builder();
+		for (Route route : routeTable.getRoutes()) {
+			routes.put(route, new RouteStats(routeScope.scope(route.getName())));
+		}
+		this.routes = routes.build();
+		this.unrouted = new RouteStats(receiver.scope("unrouted"));
+		StatsReceiver shed = receiver.scope("shed");
+		this.rejected = shed.counter0("rejected");
+		this.expired = shed.counter0("expired");
+		this.deadlineExceeded = shed.counter0("deadline_exceeded");
+		StatsReceiver executor = receiver.scope("executor");
+		this.gauges = ImmutableList.of(executor.addGauge(name("active"), new AbstractFunction0<Object>() {
+			@Override
+			public Object apply() {
+				return Float.valueOf(admissionControl.getActiveCount());
+			}
+		}), executor.addGauge(name("queued"), new AbstractFunction0<Object>() {
+			@Override
+			public Object apply() {
+				return Float.valueOf(admissionControl.getQueueDepth());
+			}
+		}));
+	}
+
+	/**
+	 * @return stats that go nowhere
+	 */
+	public static ServiceStats disabled() {
+		return new ServiceStats(NullStatsReceiver.get(), RouteTable.EMPTY,
+				AdmissionControl.unbounded(MoreExecutors.directExecutor()));
+	}
+
+	/**
+	 * @param route
+	 *            a route from the service's table (or null)
+	 * @return the stats for that route
+	 */
+	public RouteStats forRoute(Route route) {
+		RouteStats stats = route == null ? null : this.routes.get(route);
+		return stats == null ? this.unrouted : stats;
+	}
+
+	/**
+	 * Records a request refused by the executor
+	 */
+	public void recordRejected() {
+		this.rejected.incr();
+	}
+
+	/**
+	 * Records a request shed for waiting in the queue too long
+	 */
+	public void recordExpired() {
+		this.expired.incr();
+	}
+
+	/**
+	 * Records a request answered with a 504 because its deadline passed
+	 */
+	public void recordDeadlineExceeded() {
+		this.deadlineExceeded.incr();
+	}
+
+	/**
+	 * @return the gauges we registered (held so they aren't collected)
+	 */
+	List<Gauge> getGauges() {
+		return this.gauges;
+	}
+
+	/*
+	 * Gauge names are Scala varargs
+	 */
+	private static Seq<String> name(String name) {
+		return JavaConversions.asScalaBuffer(Collections.singletonList(name));
+	}
+}
@@ -0,0 +1,21 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.RETRY_AFTER;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+/**
+ * An empty 503 response, used when we shed a request without ever handing it
+ * to Resteasy (e.g. because the request queue is full).
+ *
+ * @author denis.rangel
+ */
+public class ServiceUnavailableResponse extends DefaultHttpResponse {
+
+	public ServiceUnavailableResponse(HttpVersion version, int retryAfterSeconds) {
+		super(version, SERVICE_UNAVAILABLE);
+		headers().set(RETRY_AFTER, Integer.toString(retryAfterSeconds));
+	}
+}
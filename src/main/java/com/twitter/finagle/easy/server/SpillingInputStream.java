@@ -0,0 +1,157 @@
+package com.twitter.finagle.easy.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Wraps a streamed request body so it's read off the connection as fast as
+ * the client can send it, rather than as fast as the resource consumes it:
+ * on the first read, the whole body is drained, keeping up to a threshold in
+ * memory and spilling the rest to a temporary file. The in-memory part grows
+ * as bytes arrive, so small bodies don't cost a threshold's worth of memory.
+ * The file is deleted when the stream is closed (or fully read).
+ *
+ * @author denis.rangel
+ */
+public class SpillingInputStream extends InputStream {
+
+	private static final Log LOG = LogFactory.getLog(SpillingInputStream.class);
+
+	private static final int INITIAL_HEAD_SIZE = 512;
+
+	private final InputStream source;
+	private final int memoryThreshold;
+	private final File directory;
+	private InputStream drained;
+	private File spillFile;
+
+	/**
+	 * @param source
+	 *            the body as it arrives
+	 * @param memoryThreshold
+	 *            number of bytes kept in memory
+	 * @param directory
+	 *            where to put the spill file (null for the system default)
+	 */
+	public SpillingInputStream(InputStream source, int memoryThreshold, File directory) {
+		Preconditions.checkArgument(memoryThreshold >= 0, "memoryThreshold");
+		this.source = Preconditions.checkNotNull(source, "source");
+		this.memoryThreshold = memoryThreshold;
+		this.directory = directory;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = drain().read();
+		if (b < 0) {
+			close();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		int count = drain().read(bytes, offset, length);
+		if (count < 0) {
+			close();
+		}
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return this.drained == null ? 0 : this.drained.available();
+	}
+
+	/**
+	 * @return true if the body didn't fit in memory
+	 */
+	public boolean isSpilled() {
+		return this.spillFile != null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.drained != null) {
+				this.drained.close();
+			}
+			this.source.close();
+		} finally {
+			if (this.spillFile != null && this.spillFile.exists() && !this.spillFile.delete()) {
+				LOG.warn(String.format("couldn't delete %s", this.spillFile));
+			}
+		}
+	}
+
+	private InputStream drain() throws IOException {
+		if (this.drained != null) {
+			return this.drained;
+		}
+		Head head = new Head(Math.min(this.memoryThreshold, INITIAL_HEAD_SIZE));
+		int next = head.fill(this.source, this.memoryThreshold) ? this.source.read() : -1;
+		if (next < 0) {
+			this.drained = head.toInputStream();
+			return this.drained;
+		}
+		this.spillFile = File.createTempFile("finagle-easy-body", ".tmp", this.directory);
+		OutputStream out = new FileOutputStream(this.spillFile);
+		try {
+			out.write(next);
+			ByteStreams.copy(this.source, out);
+		} finally {
+			out.close();
+		}
+		this.drained = new SequenceInputStream(head.toInputStream(), new BufferedInputStream(new FileInputStream(
+				this.spillFile)));
+		return this.drained;
+	}
+
+	/*
+	 * The in-memory part of the body: grown as bytes arrive, up to the
+	 * threshold, and read back without copying
+	 */
+	private static class Head extends ByteArrayOutputStream {
+
+		Head(int size) {
+			super(size);
+		}
+
+		/*
+		 * Reads until the head holds limit bytes (true) or the source ends
+		 * (false)
+		 */
+		boolean fill(InputStream source, int limit) throws IOException {
+			while (this.count < limit) {
+				if (this.count == this.buf.length) {
+					this.buf = Arrays.copyOf(this.buf, Math.min(limit, Math.max(this.buf.length * 2, 1)));
+				}
+				int read = source.read(this.buf, this.count, this.buf.length - this.count);
+				if (read < 0) {
+					return false;
+				}
+				this.count += read;
+			}
+			return true;
+		}
+
+		InputStream toInputStream() {
+			return new ByteArrayInputStream(this.buf, 0, this.count);
+		}
+	}
+}
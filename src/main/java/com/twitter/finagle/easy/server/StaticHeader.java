@@ -0,0 +1,41 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A header sent with every successful response of a resource method (or of
+ * every method of a resource class), e.g.
+ * {@code @StaticHeader(name = "Cache-Control", value = "max-age=60")}. The
+ * header is checked and encoded once, when the service is built (see
+ * {@link HeaderBlock}), and only added to responses that don't already have
+ * it, so a resource can still set its own value. Error responses (4XX and
+ * 5XX) don't get it.
+ *
+ * The annotation may be repeated, and placed on the implementation class or
+ * on the JAX-RS-annotated interface; a method's headers take precedence over
+ * its class's. It only applies to routes resolved when the service is built
+ * (see {@link RouteTable}).
+ *
+ * @author denis.rangel
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Repeatable(StaticHeaders.class)
+public @interface StaticHeader {
+
+	/**
+	 * @return the header name
+	 */
+	String name();
+
+	/**
+	 * @return the header value
+	 */
+	String value();
+}
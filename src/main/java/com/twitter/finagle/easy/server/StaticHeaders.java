@@ -0,0 +1,23 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Holds repeated {@link StaticHeader} annotations
+ *
+ * @author denis.rangel
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface StaticHeaders {
+
+	/**
+	 * @return the headers
+	 */
+	StaticHeader[] value();
+}
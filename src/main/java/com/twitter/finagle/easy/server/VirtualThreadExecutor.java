@@ -0,0 +1,261 @@
+package com.twitter.finagle.easy.server;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs every task on a virtual thread of its own, for resources that spend
+ * most of their time blocked (on JDBC, on downstream HTTP calls) and would
+ * otherwise need a pool of hundreds of platform threads. Virtual threads need
+ * Java 21; they're created through reflection, so the library itself still
+ * runs on Java 8 (see {@link #isSupported()}).
+ * <p>
+ * The number of tasks running at once is capped. Tasks beyond the cap wait
+ * (parked, in arrival order) for one of the running tasks to finish, and once
+ * the number of waiting tasks reaches the queue limit, new tasks are rejected
+ * (which the service answers with a 503).
+ *
+ * @author denis.rangel
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+	private static final Log LOG = LogFactory.getLog(VirtualThreadExecutor.class);
+
+	private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+
+	private final ThreadFactory threadFactory;
+	private final int maxConcurrency;
+	private final int maxQueued;
+	private final Semaphore permits;
+	private final Set<Pending> waiting;
+	private final Set<Thread> running;
+	private final AtomicInteger live;
+	private final ReentrantLock lock;
+	private final Condition terminated;
+	private volatile boolean shutdown;
+
+	/**
+	 * @param maxConcurrency
+	 *            largest number of tasks running at once
+	 * @param maxQueued
+	 *            largest number of tasks waiting to run (zero for unbounded)
+	 * @throws UnsupportedOperationException
+	 *             if this JVM doesn't have virtual threads
+	 */
+	public VirtualThreadExecutor(int maxConcurrency, int maxQueued) {
+		this(VIRTUAL_THREADS, maxConcurrency, maxQueued);
+	}
+
+	/*
+	 * Any factory will do for testing
+	 */
+	VirtualThreadExecutor(ThreadFactory threadFactory, int maxConcurrency, int maxQueued) {
+		if (threadFactory == null) {
+			throw new UnsupportedOperationException("virtual threads need Java 21 or later");
+		}
+		Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency");
+		Preconditions.checkArgument(maxQueued >= 0, "maxQueued");
+		this.threadFactory = threadFactory;
+		this.maxConcurrency = maxConcurrency;
+		this.maxQueued = maxQueued;
+		this.permits = new Semaphore(maxConcurrency, true);
+		this.waiting = ConcurrentHashMap.newKeySet();
+		this.running = ConcurrentHashMap.newKeySet();
+		this.live = new AtomicInteger();
+		this.lock = new ReentrantLock();
+		this.terminated = this.lock.newCondition();
+	}
+
+	/**
+	 * @return true if this JVM has virtual threads
+	 */
+	public static boolean isSupported() {
+		return VIRTUAL_THREADS != null;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		Preconditions.checkNotNull(task, "task");
+		if (this.shutdown) {
+			throw new RejectedExecutionException("executor is shut down");
+		}
+		// a rough limit: concurrent callers may overshoot it by a few
+		if (this.maxQueued > 0 && this.permits.availablePermits() == 0 && this.waiting.size() >= this.maxQueued) {
+			throw new RejectedExecutionException("queue is full");
+		}
+		Pending pending = new Pending(task);
+		this.waiting.add(pending);
+		this.live.incrementAndGet();
+		try {
+			this.threadFactory.newThread(pending).start();
+		} catch (RuntimeException e) {
+			this.waiting.remove(pending);
+			exited();
+			throw new RejectedExecutionException("can't start thread", e);
+		}
+	}
+
+	/**
+	 * @return number of tasks waiting to run
+	 */
+	public int getQueueDepth() {
+		return this.waiting.size();
+	}
+
+	/**
+	 * @return number of tasks running
+	 */
+	public int getActiveCount() {
+		return this.maxConcurrency - this.permits.availablePermits();
+	}
+
+	@Override
+	public void shutdown() {
+		this.shutdown = true;
+		signalIfTerminated();
+	}
+
+	/**
+	 * Returns the tasks still waiting to run (which never will) and
+	 * interrupts every thread
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		this.shutdown = true;
+		List<Runnable> pending = Lists.newArrayList();
+		for (Pending waiter : this.waiting) {
+			if (this.waiting.remove(waiter)) {
+				pending.add(waiter.task);
+				Thread thread = waiter.thread;
+				if (thread != null) {
+					thread.interrupt();
+				}
+			}
+		}
+		for (Thread thread : this.running) {
+			thread.interrupt();
+		}
+		signalIfTerminated();
+		return pending;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return this.shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return this.shutdown && this.live.get() == 0;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		this.lock.lock();
+		try {
+			while (!isTerminated()) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = this.terminated.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void exited() {
+		if (this.live.decrementAndGet() == 0) {
+			signalIfTerminated();
+		}
+	}
+
+	private void signalIfTerminated() {
+		if (isTerminated()) {
+			this.lock.lock();
+			try {
+				this.terminated.signalAll();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Thread.ofVirtual().name("finagle-easy-virtual-", 0).factory(), if
+	 * there's such a thing
+	 */
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = ofVirtual.invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder,
+					"finagle-easy-virtual-", 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			LOG.debug("virtual threads aren't available", e);
+			return null;
+		}
+	}
+
+	/*
+	 * A task waiting for a permit; whoever takes it out of the waiting set
+	 * (its own thread, or shutdownNow) decides its fate
+	 */
+	private class Pending implements Runnable {
+
+		final Runnable task;
+		volatile Thread thread;
+
+		Pending(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			this.thread = Thread.currentThread();
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				// shutdownNow; the task is handed back to its caller
+				exited();
+				return;
+			}
+			try {
+				if (!waiting.remove(this)) {
+					return;
+				}
+				running.add(Thread.currentThread());
+				try {
+					this.task.run();
+				} catch (RuntimeException e) {
+					LOG.warn("uncaught exception in worker", e);
+				} finally {
+					running.remove(Thread.currentThread());
+				}
+			} finally {
+				permits.release();
+				exited();
+			}
+		}
+	}
+}
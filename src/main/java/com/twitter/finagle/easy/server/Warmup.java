@@ -0,0 +1,348 @@
+package com.twitter.finagle.easy.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+import com.twitter.util.Duration;
+
+/**
+ * Replays synthetic requests through a service, in-process, before it takes
+ * real traffic, so that the request path has been compiled by the JIT and the
+ * service's caches (parsed paths, matched routes, response size guesses) are
+ * populated by the time the server is announced (see
+ * {@link ServiceBuilder#withWarmup(Warmup)}).
+ * <p>
+ * Each iteration sends every request once, in order. Warm-up stops after the
+ * maximum number of iterations, once iterations have stopped getting faster
+ * (the median time of the last {@code window} iterations is within
+ * {@code tolerance} of the median of the {@code window} before them), or
+ * when the time limit runs out, whichever comes first. Responses are
+ * discarded; failures are counted, but don't stop the warm-up.
+ *
+ * @author denis.rangel
+ */
+public class Warmup {
+
+	private static final Log LOG = LogFactory.getLog(Warmup.class);
+
+	/**
+	 * Default upper bound on the number of iterations
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 1000;
+
+	/**
+	 * Default number of iterations compared when checking for stable latency
+	 */
+	public static final int DEFAULT_WINDOW = 50;
+
+	/**
+	 * Default relative change in median latency that counts as stable
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.05;
+
+	/**
+	 * Default limit on the time spent warming up, in seconds
+	 */
+	public static final long DEFAULT_TIME_LIMIT = 60;
+
+	private final List<Sample> samples;
+	private int maxIterations;
+	private int window;
+	private double tolerance;
+	private long timeLimitNanos;
+	private Listener listener;
+
+	public Warmup() {
+		this.samples = Lists.newArrayList();
+		this.maxIterations = DEFAULT_MAX_ITERATIONS;
+		this.window = DEFAULT_WINDOW;
+		this.tolerance = DEFAULT_TOLERANCE;
+		this.timeLimitNanos = TimeUnit.SECONDS.toNanos(DEFAULT_TIME_LIMIT);
+	}
+
+	/**
+	 * @param method
+	 *            request method (e.g. "GET")
+	 * @param uri
+	 *            request-target (e.g. "/items/42?full=true")
+	 * @return this (for chaining)
+	 */
+	public Warmup withRequest(String method, String uri) {
+		this.samples.add(new Sample(Preconditions.checkNotNull(method, "method"), Preconditions.checkNotNull(uri,
+				"uri"), ImmutableList.<Map.Entry<String, String>> of(), new byte[0]));
+		return this;
+	}
+
+	/**
+	 * Adds a copy of the given request (e.g. one recorded from real traffic);
+	 * its method, URI, headers and content are replayed on every iteration
+	 *
+	 * @param sample
+	 *            the request to copy
+	 * @return this (for chaining)
+	 */
+	public Warmup withRequest(Request sample) {
+		Preconditions.checkNotNull(sample, "sample");
+		ChannelBuffer content = sample.getContent();
+		byte[] body = new byte[content.readableBytes()];
+		content.getBytes(content.readerIndex(), body);
+		this.samples.add(new Sample(sample.getMethod().getName(), sample.getUri(),
+				ImmutableList.copyOf(sample.headers()), body));
+		return this;
+	}
+
+	/**
+	 * @param iterations
+	 *            largest number of times the requests are replayed
+	 * @return this (for chaining)
+	 */
+	public Warmup withMaxIterations(int iterations) {
+		Preconditions.checkArgument(iterations > 0, "iterations");
+		this.maxIterations = iterations;
+		return this;
+	}
+
+	/**
+	 * @param window
+	 *            number of iterations whose median latency is compared with
+	 *            the one of the iterations before them (zero to always run
+	 *            the maximum number of iterations)
+	 * @param tolerance
+	 *            relative change in median latency below which warm-up stops
+	 *            (e.g. 0.05 for 5%)
+	 * @return this (for chaining)
+	 */
+	public Warmup withStability(int window, double tolerance) {
+		Preconditions.checkArgument(window >= 0, "window");
+		Preconditions.checkArgument(tolerance >= 0.0, "tolerance");
+		this.window = window;
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * @param time
+	 *            longest time spent warming up
+	 * @param unit
+	 *            units for time
+	 * @return this (for chaining)
+	 */
+	public Warmup withTimeLimit(long time, TimeUnit unit) {
+		Preconditions.checkArgument(time > 0, "time");
+		this.timeLimitNanos = unit.toNanos(time);
+		return this;
+	}
+
+	/**
+	 * @param listener
+	 *            told about progress after every iteration (by default,
+	 *            progress is only logged)
+	 * @return this (for chaining)
+	 */
+	public Warmup withListener(Listener listener) {
+		this.listener = Preconditions.checkNotNull(listener, "listener");
+		return this;
+	}
+
+	/**
+	 * Replays the requests through the service; returns when warm-up is over
+	 *
+	 * @param service
+	 *            the service to warm up
+	 * @return what happened
+	 */
+	public Report run(Service<Request, Response> service) {
+		Preconditions.checkNotNull(service, "service");
+		Preconditions.checkState(!this.samples.isEmpty(), "no warm-up requests");
+		long[] latencies = new long[this.window * 2];
+		long started = System.nanoTime();
+		long deadline = started + this.timeLimitNanos;
+		int logEvery = Math.max(1, this.maxIterations / 10);
+		Report report = new Report(0, 0L, 0L, 0, false);
+		LOG.info(String.format("warming up with %d requests, at most %d iterations", this.samples.size(),
+				this.maxIterations));
+		for (int i = 1; i <= this.maxIterations; i++) {
+			long iterationStarted = System.nanoTime();
+			int failures = report.getFailures();
+			for (Sample sample : this.samples) {
+				if (!send(service, sample, deadline)) {
+					failures++;
+				}
+			}
+			long now = System.nanoTime();
+			if (latencies.length > 0) {
+				latencies[(i - 1) % latencies.length] = now - iterationStarted;
+			}
+			boolean stable = i >= latencies.length && latencies.length > 0 && isStable(latencies, i);
+			report = new Report(i, now - started, now - iterationStarted, failures, stable);
+			if (this.listener != null) {
+				this.listener.onProgress(report);
+			}
+			if (stable || now - deadline >= 0) {
+				break;
+			}
+			if (i % logEvery == 0) {
+				LOG.info("warm-up progress: " + report);
+			}
+		}
+		LOG.info("warm-up finished: " + report);
+		return report;
+	}
+
+	/*
+	 * Compares the median of the latest window of iterations with the median
+	 * of the window before it; latencies is a ring buffer in which iteration
+	 * i was the last one written
+	 */
+	private boolean isStable(long[] latencies, int iteration) {
+		long[] older = new long[this.window];
+		long[] newer = new long[this.window];
+		for (int j = 0; j < this.window; j++) {
+			older[j] = latencies[(iteration + j) % latencies.length];
+			newer[j] = latencies[(iteration + this.window + j) % latencies.length];
+		}
+		long before = median(older);
+		long after = median(newer);
+		return before > 0 && Math.abs(after - before) <= before * this.tolerance;
+	}
+
+	private static long median(long[] values) {
+		Arrays.sort(values);
+		return values[values.length / 2];
+	}
+
+	private static boolean send(Service<Request, Response> service, Sample sample, long deadline) {
+		long remaining = Math.max(1L, deadline - System.nanoTime());
+		try {
+			Response response = Await.result(service.apply(sample.toRequest()),
+					Duration.fromTimeUnit(remaining, TimeUnit.NANOSECONDS));
+			return response.getStatus().getCode() < 500;
+		} catch (Exception e) {
+			LOG.debug("warm-up request failed: " + sample.method + " " + sample.uri, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Told about warm-up progress
+	 */
+	public interface Listener {
+
+		/**
+		 * @param progress
+		 *            the state of the warm-up after an iteration
+		 */
+		void onProgress(Report progress);
+	}
+
+	/**
+	 * Progress (or outcome) of a warm-up
+	 */
+	public static class Report {
+
+		private final int iterations;
+		private final long elapsedNanos;
+		private final long lastIterationNanos;
+		private final int failures;
+		private final boolean stable;
+
+		Report(int iterations, long elapsedNanos, long lastIterationNanos, int failures, boolean stable) {
+			this.iterations = iterations;
+			this.elapsedNanos = elapsedNanos;
+			this.lastIterationNanos = lastIterationNanos;
+			this.failures = failures;
+			this.stable = stable;
+		}
+
+		/**
+		 * @return number of iterations completed
+		 */
+		public int getIterations() {
+			return this.iterations;
+		}
+
+		/**
+		 * @param unit
+		 *            units for the result
+		 * @return time spent warming up so far
+		 */
+		public long getElapsed(TimeUnit unit) {
+			return unit.convert(this.elapsedNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @param unit
+		 *            units for the result
+		 * @return time taken by the latest iteration
+		 */
+		public long getLastIteration(TimeUnit unit) {
+			return unit.convert(this.lastIterationNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @return number of requests that failed or got a 5XX response
+		 */
+		public int getFailures() {
+			return this.failures;
+		}
+
+		/**
+		 * @return true if warm-up stopped because latency had stabilized
+		 */
+		public boolean isStable() {
+			return this.stable;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d iterations in %d ms (last %d us), %d failures%s", this.iterations,
+					getElapsed(TimeUnit.MILLISECONDS), getLastIteration(TimeUnit.MICROSECONDS), this.failures,
+					this.stable ? ", stable" : "");
+		}
+	}
+
+	/*
+	 * A request to replay; Finagle requests can only be sent once, so a new
+	 * one is made for every iteration
+	 */
+	private static class Sample {
+
+		final String method;
+		final String uri;
+		final List<Map.Entry<String, String>> headers;
+		final byte[] body;
+
+		Sample(String method, String uri, List<Map.Entry<String, String>> headers, byte[] body) {
+			this.method = method;
+			this.uri = uri;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		Request toRequest() {
+			Request request = Request.apply(Method.apply(this.method), this.uri);
+			for (Map.Entry<String, String> header : this.headers) {
+				request.headers().add(header.getKey(), header.getValue());
+			}
+			if (this.body.length > 0) {
+				request.setContent(ChannelBuffers.wrappedBuffer(this.body));
+			}
+			return request;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.twitter.finagle.easy.util;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A pool of fixed-size byte buffers ("segments") that message bodies are
+ * written into (see {@link SegmentedOutputStream}). Segments are recycled
+ * once the message they were part of has been written to the wire, so large
+ * bodies don't each leave a trail of big, short-lived arrays behind them.
+ * The pool never blocks: if it's empty, a new segment is allocated; if it's
+ * full, released segments are left to the garbage collector.
+ *
+ * @author denis.rangel
+ */
+public class SegmentPool {
+
+	/**
+	 * Default size of each segment, in bytes
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024;
+
+	/**
+	 * Default number of idle segments kept for reuse
+	 */
+	public static final int DEFAULT_MAX_POOLED = 256;
+
+	private static final SegmentPool DEFAULT = new SegmentPool(DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_POOLED, false);
+
+	private final int segmentSize;
+	private final boolean direct;
+	private final BlockingQueue<ByteBuffer> pooled;
+	private final AtomicLong allocated;
+
+	/**
+	 * @param segmentSize
+	 *            size of each segment, in bytes
+	 * @param maxPooled
+	 *            maximum number of idle segments kept for reuse (zero for no
+	 *            pooling)
+	 * @param direct
+	 *            true to allocate segments outside the heap
+	 */
+	public SegmentPool(int segmentSize, int maxPooled, boolean direct) {
+		Preconditions.checkArgument(segmentSize > 0, "segmentSize");
+		Preconditions.checkArgument(maxPooled >= 0, "maxPooled");
+		this.segmentSize = segmentSize;
+		this.direct = direct;
+		this.pooled = maxPooled == 0 ? null : new ArrayBlockingQueue<ByteBuffer>(maxPooled);
+		this.allocated = new AtomicLong();
+	}
+
+	/**
+	 * @return a pool of heap segments shared by everything that doesn't ask
+	 *         for its own
+	 */
+	public static SegmentPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param segmentSize
+	 *            size of each segment, in bytes
+	 * @return a "pool" that always allocates new heap segments, for bodies
+	 *         we can't tell when we're done with
+	 */
+	public static SegmentPool unpooled(int segmentSize) {
+		return new SegmentPool(segmentSize, 0, false);
+	}
+
+	/**
+	 * @return an empty segment, ready for writing
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer segment = this.pooled == null ? null : this.pooled.poll();
+		if (segment == null) {
+			this.allocated.incrementAndGet();
+			return this.direct ? ByteBuffer.allocateDirect(this.segmentSize) : ByteBuffer.allocate(this.segmentSize);
+		}
+		// ByteBuffer.clear() only exists from Java 9 on
+		((Buffer) segment).clear();
+		return segment;
+	}
+
+	/**
+	 * Returns a segment to the pool. The caller must not touch it (or
+	 * anything sharing its contents) afterwards.
+	 * 
+	 * @param segment
+	 *            a segment from {@link #acquire()}
+	 */
+	public void release(ByteBuffer segment) {
+		if (this.pooled != null && segment.capacity() == this.segmentSize) {
+			this.pooled.offer(segment);
+		}
+	}
+
+	/**
+	 * @return size of each segment, in bytes
+	 */
+	public int getSegmentSize() {
+		return this.segmentSize;
+	}
+
+	/**
+	 * @return number of idle segments waiting to be reused
+	 */
+	public int getPooledCount() {
+		return this.pooled == null ? 0 : this.pooled.size();
+	}
+
+	/**
+	 * @return number of segments this pool has ever allocated
+	 */
+	public long getAllocatedCount() {
+		return this.allocated.get();
+	}
+}
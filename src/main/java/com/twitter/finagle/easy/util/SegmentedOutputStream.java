@@ -0,0 +1,101 @@
+package com.twitter.finagle.easy.util;
+
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * An {@link OutputStream} that writes into a chain of segments from a
+ * {@link SegmentPool}, rather than into one array that's copied every time it
+ * fills up. The result is handed to Netty as a composite
+ * {@link ChannelBuffer} over the segments themselves (no copying); once that
+ * buffer has been written out, {@link #release()} gives the segments back.
+ *
+ * @author denis.rangel
+ */
+public class SegmentedOutputStream extends OutputStream {
+
+	private final SegmentPool pool;
+	private final List<ByteBuffer> segments;
+	private ByteBuffer current;
+	private int size;
+
+	public SegmentedOutputStream(SegmentPool pool) {
+		this.pool = Preconditions.checkNotNull(pool, "pool");
+		this.segments = Lists.newArrayListWithCapacity(4);
+	}
+
+	@Override
+	public void write(int b) {
+		if (this.current == null || !this.current.hasRemaining()) {
+			nextSegment();
+		}
+		this.current.put((byte) b);
+		this.size++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+		while (length > 0) {
+			if (this.current == null || !this.current.hasRemaining()) {
+				nextSegment();
+			}
+			int chunk = Math.min(length, this.current.remaining());
+			this.current.put(bytes, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+			this.size += chunk;
+		}
+	}
+
+	/**
+	 * @return number of bytes written so far
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return everything written so far, as a buffer sharing the segments'
+	 *         contents (only valid until {@link #release()} is called)
+	 */
+	public ChannelBuffer toChannelBuffer() {
+		if (this.size == 0) {
+			return ChannelBuffers.EMPTY_BUFFER;
+		}
+		ByteBuffer[] written = new ByteBuffer[this.segments.size()];
+		for (int i = 0; i < written.length; i++) {
+			ByteBuffer segment = this.segments.get(i).duplicate();
+			// through Buffer, so a build on a newer JDK still runs on Java 8
+			((Buffer) segment).flip();
+			written[i] = segment;
+		}
+		return ChannelBuffers.wrappedBuffer(written);
+	}
+
+	/**
+	 * Returns the segments to the pool and empties the stream. Buffers from
+	 * {@link #toChannelBuffer()} must not be used afterwards.
+	 */
+	public void release() {
+		for (ByteBuffer segment : this.segments) {
+			this.pool.release(segment);
+		}
+		this.segments.clear();
+		this.current = null;
+		this.size = 0;
+	}
+
+	private void nextSegment() {
+		this.current = this.pool.acquire();
+		this.segments.add(this.current);
+	}
+}
@@ -16,7 +16,15 @@ import javax.ws.rs.core.UriInfo;
 import org.jboss.netty.handler.codec.http.HttpMessage;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.resteasy.client.ClientRequest;
+import org.jboss.resteasy.plugins.providers.ByteArrayProvider;
+import org.jboss.resteasy.plugins.providers.DefaultTextPlain;
+import org.jboss.resteasy.plugins.providers.FileProvider;
+import org.jboss.resteasy.plugins.providers.FormUrlEncodedProvider;
+import org.jboss.resteasy.plugins.providers.InputStreamProvider;
+import org.jboss.resteasy.plugins.providers.ReaderProvider;
 import org.jboss.resteasy.plugins.providers.RegisterBuiltin;
+import org.jboss.resteasy.plugins.providers.StreamingOutputProvider;
+import org.jboss.resteasy.plugins.providers.StringTextStar;
 import org.jboss.resteasy.specimpl.ResteasyHttpHeaders;
 import org.jboss.resteasy.specimpl.ResteasyUriBuilder;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
@@ -24,7 +32,9 @@ import org.jboss.resteasy.spi.ResteasyUriInfo;
 import org.jboss.resteasy.util.CaseInsensitiveMap;
 
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 /**
@@ -56,6 +66,15 @@ public final class ServiceUtils {
 		}
 	};
 
+	/**
+	 * The built-in providers every service needs for plain-Java entities
+	 * (strings, byte arrays, streams, files and forms); JSON and XML providers
+	 * have to be added explicitly
+	 */
+	public static final List<Class<?>> CORE_PROVIDERS = ImmutableList.<Class<?>> of(StringTextStar.class,
+			DefaultTextPlain.class, ByteArrayProvider.class, InputStreamProvider.class, ReaderProvider.class,
+			FileProvider.class, StreamingOutputProvider.class, FormUrlEncodedProvider.class);
+
 	/**
 	 * Base URI for all requests ("/")
 	 */
@@ -192,6 +211,9 @@ public final class ServiceUtils {
 	/**
 	 * Gets the default instance of the ResteasyProviderFactory and manually
 	 * prods it to register built-in providers by scanning the classpath.
+	 * Every builder that uses it shares (and registers things with) the same
+	 * JVM-wide instance; see {@link #newProviderFactory(Iterable)} for an
+	 * alternative.
 	 */
 	public static ResteasyProviderFactory getDefaultProviderFactory() {
 		ResteasyProviderFactory factory = ResteasyProviderFactory.getInstance();
@@ -199,4 +221,29 @@ public final class ServiceUtils {
 		return factory;
 	}
 
+	/**
+	 * Creates a provider factory of its own, with exactly the supplied
+	 * providers: nothing is read from the classpath, and nothing is shared
+	 * with (or registered in) the JVM-wide instance. Once built, the factory
+	 * can be shared by any number of clients and services, which only ever
+	 * read from it.
+	 * 
+	 * @param providers
+	 *            provider classes or instances (e.g. {@link #CORE_PROVIDERS}
+	 *            plus a JSON provider)
+	 * @return the new factory
+	 */
+	public static ResteasyProviderFactory newProviderFactory(Iterable<?> providers) {
+		ResteasyProviderFactory factory = new ResteasyProviderFactory();
+		for (Object provider : providers) {
+			Preconditions.checkNotNull(provider, "provider");
+			if (provider instanceof Class) {
+				factory.registerProvider((Class<?>) provider);
+			} else {
+				factory.registerProviderInstance(provider);
+			}
+		}
+		return factory;
+	}
+
 }
@@ -0,0 +1,243 @@
+package com.twitter.finagle.easy.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.io.Reader$;
+import com.twitter.util.Await;
+import com.twitter.util.Duration;
+import com.twitter.util.Time;
+
+/**
+ * Tests the access log, on its own and wired into a service
+ *
+ * @author denis.rangel
+ */
+public class TestAccessLog {
+
+	private final CapturingSink sink = new CapturingSink();
+	private AccessLog accessLog;
+
+	@After
+	public void tearDown() {
+		if (this.accessLog != null) {
+			this.accessLog.close();
+		}
+	}
+
+	@Test
+	public void testEntryIsRecorded() throws Exception {
+		this.accessLog = new AccessLog(this.sink);
+		Response response = Await.result(newService().apply(post("/echo", "hello")));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+
+		AccessLogEntry entry = this.sink.entries.poll(5, TimeUnit.SECONDS);
+		assertNotNull("nothing logged", entry);
+		assertEquals("wrong method", "POST", entry.getMethod());
+		assertEquals("wrong uri", "/echo", entry.getUri());
+		assertEquals("wrong protocol", "HTTP/1.1", entry.getProtocol());
+		assertEquals("wrong status", 200, entry.getStatus());
+		assertEquals("wrong request length", 5, entry.getRequestLength());
+		assertEquals("wrong response length", 5, entry.getResponseLength());
+		assertTrue("negative duration", entry.getDuration(TimeUnit.NANOSECONDS) >= 0);
+		assertNull("body captured", entry.getRequestBody());
+		assertNull("body captured", entry.getResponseBody());
+	}
+
+	@Test
+	public void testStreamedEntryHasFullLength() throws Exception {
+		this.accessLog = new AccessLog(this.sink);
+		String body = Strings.repeat("streamed ", 100);
+		Service<Request, Response> service = ServiceBuilder.get().withEndpoint(new EchoResource())
+				.withStreamingResponses(64).withAccessLog(this.accessLog).build();
+		Response response = Await.result(service.apply(post("/echo", body)));
+		assertTrue("response wasn't streamed", response.isChunked());
+		Await.result(Reader$.MODULE$.readAll(response.reader()));
+
+		AccessLogEntry entry = this.sink.entries.poll(5, TimeUnit.SECONDS);
+		assertNotNull("nothing logged", entry);
+		assertEquals("wrong response length", body.length(), entry.getResponseLength());
+	}
+
+	@Test
+	public void testBodiesAreCapped() throws Exception {
+		this.accessLog = new AccessLog(this.sink).withBodies(3);
+		Await.result(newService().apply(post("/echo", "hello")));
+
+		AccessLogEntry entry = this.sink.entries.poll(5, TimeUnit.SECONDS);
+		assertNotNull("nothing logged", entry);
+		assertArrayEquals("wrong request body", "hel".getBytes(UTF_8), entry.getRequestBody());
+		assertArrayEquals("wrong response body", "hel".getBytes(UTF_8), entry.getResponseBody());
+		assertTrue("body missing from " + entry, entry.toString().contains("request=hel"));
+	}
+
+	@Test
+	public void testUnsampledRequestsAreSkipped() throws Exception {
+		this.accessLog = new AccessLog(this.sink).withSampleRate(0.0);
+		Await.result(newService().apply(post("/echo", "hello")));
+		assertFalse("sampled", this.accessLog.isSampled());
+		assertNull("logged", this.sink.entries.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testEntriesAreDroppedWhenFull() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		this.accessLog = new AccessLog(new AccessLogSink() {
+			@Override
+			public void write(AccessLogEntry entry) {
+				writing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}).withCapacity(1);
+
+		// the first entry ties up the writer, the second fills the buffer
+		this.accessLog.record(newEntry());
+		assertTrue("writer never started", writing.await(5, TimeUnit.SECONDS));
+		this.accessLog.record(newEntry());
+		this.accessLog.record(newEntry());
+		this.accessLog.record(newEntry());
+		release.countDown();
+		assertEquals("wrong drop count", 2, this.accessLog.getDroppedCount());
+	}
+
+	@Test
+	public void testCloseWritesBufferedEntries() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		this.accessLog = new AccessLog(new AccessLogSink() {
+			@Override
+			public void write(AccessLogEntry entry) {
+				sink.write(entry);
+				writing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		// the interrupt from close() arrives while the writer is busy
+		this.accessLog.record(newEntry());
+		assertTrue("writer never started", writing.await(5, TimeUnit.SECONDS));
+		this.accessLog.record(newEntry());
+		this.accessLog.record(newEntry());
+		this.accessLog.close();
+		this.accessLog.record(newEntry());
+		for (int i = 0; i < 3; i++) {
+			assertNotNull("entry " + i + " was lost", this.sink.entries.poll(5, TimeUnit.SECONDS));
+		}
+		assertNull("entry written after close", this.sink.entries.poll(100, TimeUnit.MILLISECONDS));
+		assertEquals("wrong drop count", 1, this.accessLog.getDroppedCount());
+	}
+
+	@Test
+	public void testClosingServiceLeavesSuppliedLogOpen() throws Exception {
+		this.accessLog = new AccessLog(this.sink);
+		Service<Request, Response> closing = newService();
+		Service<Request, Response> open = newService();
+		Await.result(closing.close(Time.now().plus(Duration.fromSeconds(1))));
+		Await.result(open.apply(post("/echo", "hello")));
+		assertNotNull("shared log was closed", this.sink.entries.poll(5, TimeUnit.SECONDS));
+		assertEquals("wrong drop count", 0, this.accessLog.getDroppedCount());
+	}
+
+	@Test
+	public void testEntriesRacingCloseAreCounted() throws Exception {
+		this.accessLog = new AccessLog(this.sink);
+		final int recorded = 10000;
+		Thread recorder = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < recorded; i++) {
+					accessLog.record(newEntry());
+				}
+			}
+		};
+		recorder.start();
+		while (this.sink.entries.isEmpty()) {
+			Thread.sleep(1);
+		}
+		this.accessLog.close();
+		recorder.join();
+		// every entry is either written or counted as dropped
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.sink.entries.size() + this.accessLog.getDroppedCount() < recorded
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("entries lost", recorded, this.sink.entries.size() + this.accessLog.getDroppedCount());
+	}
+
+	@Test
+	public void testCaptureBodyLeavesBufferAlone() {
+		this.accessLog = new AccessLog(this.sink).withBodies(100);
+		byte[] body = this.accessLog.captureBody(ChannelBuffers.copiedBuffer("hello", UTF_8));
+		assertArrayEquals("wrong body", "hello".getBytes(UTF_8), body);
+		assertNull("captured without bodies", new AccessLog(this.sink).captureBody(ChannelBuffers.EMPTY_BUFFER));
+	}
+
+	private Service<Request, Response> newService() {
+		return ServiceBuilder.get().withEndpoint(new EchoResource()).withAccessLog(this.accessLog).build();
+	}
+
+	private static AccessLogEntry newEntry() {
+		return new AccessLogEntry(0L, null, "GET", "/", "HTTP/1.1", null, 200, 0L, 0L, 0L, 0L, null, null);
+	}
+
+	private static Request post(String uri, String body) {
+		Request request = Request.apply(Method.apply("POST"), uri);
+		request.setContentString(body);
+		request.headers().set("Content-Type", MediaType.TEXT_PLAIN);
+		return request;
+	}
+
+	private static class CapturingSink implements AccessLogSink {
+
+		final BlockingQueue<AccessLogEntry> entries = new LinkedBlockingQueue<AccessLogEntry>();
+
+		@Override
+		public void write(AccessLogEntry entry) {
+			this.entries.add(entry);
+		}
+	}
+
+	@Path("/echo")
+	public static class EchoResource {
+
+		@POST
+		@Produces(MediaType.TEXT_PLAIN)
+		public String echo(String body) {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package com.twitter.finagle.easy.server;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+import com.twitter.util.Duration;
+import com.twitter.util.Future;
+import com.twitter.util.Time;
+
+/**
+ * Tests suspending and resuming requests through JAX-RS
+ * {@link AsyncResponse}s
+ *
+ * @author denis.rangel
+ */
+public class TestAsynchronousRequests {
+
+	private AsyncResource resource;
+	private Service<Request, Response> service;
+
+	@Before
+	public void setUp() {
+		this.resource = new AsyncResource();
+		// a single worker: suspended requests must not hold on to it
+		this.service = ServiceBuilder.get().withThreadPoolSize(1).withEndpoint(this.resource).build();
+	}
+
+	@After
+	public void tearDown() {
+		this.resource.background.shutdownNow();
+	}
+
+	@Test
+	public void testResumeFromAnotherThread() throws Exception {
+		Response response = Await.result(this.service.apply(get("/async/resume")));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertContentEquals(response.getContent(), "resumed".getBytes(UTF_8));
+	}
+
+	@Test
+	public void testManySuspendedRequestsWithOneThread() throws Exception {
+		List<Future<Response>> futures = Lists.newArrayList();
+		for (int i = 0; i < 50; i++) {
+			futures.add(this.service.apply(get("/async/deferred")));
+		}
+		for (int i = 0; i < 50; i++) {
+			AsyncResponse suspended = this.resource.deferred.poll(5, TimeUnit.SECONDS);
+			assertTrue("request " + i + " was never suspended", suspended != null);
+			assertFalse("request " + i + " completed early", futures.get(i).isDefined());
+		}
+		for (int i = 0; i < 50; i++) {
+			this.resource.resumed.take().resume("deferred");
+		}
+		for (Future<Response> future : futures) {
+			assertContentEquals(Await.result(future).getContent(), "deferred".getBytes(UTF_8));
+		}
+	}
+
+	@Test
+	public void testSuspendTimeout() throws Exception {
+		Response response = Await.result(this.service.apply(get("/async/timeout")));
+		assertEquals("wrong code", 503, response.getStatus().getCode());
+	}
+
+	@Test
+	public void testTimeoutHandler() throws Exception {
+		Response response = Await.result(this.service.apply(get("/async/handler")));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertContentEquals(response.getContent(), "handled".getBytes(UTF_8));
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		Response response = Await.result(this.service.apply(get("/async/cancel")));
+		assertEquals("wrong code", 503, response.getStatus().getCode());
+		assertEquals("wrong retry-after", "7", response.headers().get("Retry-After"));
+	}
+
+	@Test
+	public void testResumedResponseIsNotStreamed() throws Exception {
+		Service<Request, Response> streaming = ServiceBuilder.get().withThreadPoolSize(1)
+				.withStreamingResponses(4).withEndpoint(this.resource).build();
+		Response response = Await.result(streaming.apply(get("/async/resume")));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertFalse("resumed response was streamed", response.isChunked());
+		assertContentEquals(response.getContent(), "resumed".getBytes(UTF_8));
+	}
+
+	@Test
+	public void testCloseDeadlineAnswersSuspendedRequests() throws Exception {
+		Future<Response> future = this.service.apply(get("/async/deferred"));
+		assertTrue("request was never suspended", this.resource.deferred.poll(5, TimeUnit.SECONDS) != null);
+		Await.result(this.service.close(Time.now()));
+		Response response = Await.result(future, Duration.fromSeconds(5));
+		assertEquals("wrong code", 503, response.getStatus().getCode());
+	}
+
+	private static Request get(String uri) {
+		return Request.apply(Method.apply("GET"), uri);
+	}
+
+	@Path("/async")
+	public static class AsyncResource {
+
+		final ExecutorService background = Executors.newSingleThreadExecutor();
+		final BlockingQueue<AsyncResponse> deferred = new LinkedBlockingQueue<AsyncResponse>();
+		final BlockingQueue<AsyncResponse> resumed = new LinkedBlockingQueue<AsyncResponse>();
+
+		@GET
+		@Path("/resume")
+		@Produces(MediaType.TEXT_PLAIN)
+		public void resume(@Suspended final AsyncResponse response) {
+			this.background.execute(new Runnable() {
+				@Override
+				public void run() {
+					response.resume("resumed");
+				}
+			});
+		}
+
+		@GET
+		@Path("/deferred")
+		@Produces(MediaType.TEXT_PLAIN)
+		public void deferred(@Suspended AsyncResponse response) {
+			this.deferred.add(response);
+			this.resumed.add(response);
+		}
+
+		@GET
+		@Path("/timeout")
+		@Produces(MediaType.TEXT_PLAIN)
+		public void timeout(@Suspended AsyncResponse response) {
+			response.setTimeout(20, TimeUnit.MILLISECONDS);
+		}
+
+		@GET
+		@Path("/handler")
+		@Produces(MediaType.TEXT_PLAIN)
+		public void handler(@Suspended AsyncResponse response) {
+			response.setTimeoutHandler(new TimeoutHandler() {
+				@Override
+				public void handleTimeout(AsyncResponse response) {
+					response.resume("handled");
+				}
+			});
+			response.setTimeout(20, TimeUnit.MILLISECONDS);
+		}
+
+		@GET
+		@Path("/cancel")
+		@Produces(MediaType.TEXT_PLAIN)
+		public void cancel(@Suspended AsyncResponse response) {
+			response.cancel(7);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.io.Buf;
+import com.twitter.io.Reader;
+import com.twitter.io.Reader$;
+import com.twitter.io.Writer;
+import com.twitter.util.Await;
+import com.twitter.util.Future;
+
+/**
+ * Tests for streaming responses in chunks
+ *
+ * @author denis.rangel
+ */
+public class TestChunkedOutputStream {
+
+	private static final byte[] BODY = new byte[20000];
+
+	static {
+		new Random(42).nextBytes(BODY);
+	}
+
+	private final AtomicInteger commits = new AtomicInteger();
+	private final Runnable onCommit = new Runnable() {
+		@Override
+		public void run() {
+			commits.incrementAndGet();
+		}
+	};
+
+	@Test
+	public void testSmallBodyIsNotCommitted() throws Exception {
+		Reader reader = Reader$.MODULE$.writable();
+		ChunkedOutputStream out = new ChunkedOutputStream((Writer) reader, 1024, this.onCommit);
+		out.write(BODY, 0, 100);
+		out.close();
+		assertFalse("committed", out.isCommitted());
+		assertEquals(0, this.commits.get());
+		ChannelBuffer buffered = out.getBuffered();
+		byte[] bytes = new byte[buffered.readableBytes()];
+		buffered.getBytes(0, bytes);
+		assertArrayEquals(Arrays.copyOf(BODY, 100), bytes);
+	}
+
+	@Test
+	public void testFlushedSmallBodyIsNotCommitted() throws Exception {
+		Reader reader = Reader$.MODULE$.writable();
+		ChunkedOutputStream out = new ChunkedOutputStream((Writer) reader, 1024, this.onCommit);
+		out.write(BODY, 0, 100);
+		out.flush();
+		out.write(BODY, 100, 100);
+		out.flush();
+		out.close();
+		assertFalse("flush committed the response", out.isCommitted());
+		assertEquals(0, this.commits.get());
+		assertEquals(200, out.getBuffered().readableBytes());
+	}
+
+	@Test
+	public void testLargeBodyIsChunked() throws Exception {
+		Reader reader = Reader$.MODULE$.writable();
+		Future<Buf> all = Reader$.MODULE$.readAll(reader);
+		ChunkedOutputStream out = new ChunkedOutputStream((Writer) reader, 4096, this.onCommit);
+		out.write(BODY, 0, BODY.length);
+		assertTrue("not committed", out.isCommitted());
+		out.close();
+		assertEquals("committed more than once", 1, this.commits.get());
+		assertEquals(BODY.length, out.getWrittenCount());
+		assertArrayEquals(BODY, toBytes(Await.result(all)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws Exception {
+		Reader reader = Reader$.MODULE$.writable();
+		Reader$.MODULE$.readAll(reader);
+		ChunkedOutputStream out = new ChunkedOutputStream((Writer) reader, 16, this.onCommit);
+		out.write(BODY, 0, 32);
+		out.close();
+		out.write(1);
+	}
+
+	@Test
+	public void testStreamingService() throws Exception {
+		Service<Request, Response> service = ServiceBuilder.get().withEndpoint(new ExportResource())
+				.withStreamingResponses(4096).build();
+
+		Response large = Await.result(service.apply(Request.apply(Method.apply("GET"), "/export?size=20000")));
+		assertTrue("not chunked", large.isChunked());
+		assertArrayEquals(BODY, toBytes(Await.result(Reader$.MODULE$.readAll(large.reader()))));
+
+		Response small = Await.result(service.apply(Request.apply(Method.apply("GET"), "/export?size=100")));
+		assertFalse("chunked", small.isChunked());
+		assertEquals(100, small.getContent().readableBytes());
+	}
+
+	private static byte[] toBytes(Buf buf) {
+		byte[] bytes = new byte[buf.length()];
+		buf.write(bytes, 0);
+		return bytes;
+	}
+
+	@Path("/export")
+	public static class ExportResource {
+
+		@GET
+		@Produces(MediaType.APPLICATION_OCTET_STREAM)
+		public StreamingOutput export(@QueryParam("size") final int size) {
+			return new StreamingOutput() {
+				@Override
+				public void write(OutputStream output) throws IOException {
+					for (int i = 0; i < size; i += 1000) {
+						output.write(BODY, i, Math.min(1000, size - i));
+					}
+				}
+			};
+		}
+	}
+}
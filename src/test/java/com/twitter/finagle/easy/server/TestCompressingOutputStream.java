@@ -0,0 +1,99 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Tests for compressing responses as they're written
+ *
+ * @author denis.rangel
+ */
+public class TestCompressingOutputStream {
+
+	private static final byte[] BODY = Strings.repeat("{\"name\":\"value\"},", 500).getBytes(Charsets.UTF_8);
+
+	private final CompressionPolicy policy = new CompressionPolicy().withLevel(9);
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private HttpHeaders headers;
+
+	@Before
+	public void setUp() {
+		this.headers = new DefaultHttpHeaders();
+		this.headers.set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		CompressingOutputStream stream = new CompressingOutputStream(this.out, this.headers, this.policy, "gzip");
+		stream.write(BODY, 0, 10);
+		stream.write(BODY, 10, BODY.length - 10);
+		stream.finish();
+		assertTrue("not compressing", stream.isCompressing());
+		assertEquals("gzip", this.headers.get(HttpHeaders.Names.CONTENT_ENCODING));
+		assertEquals("Accept-Encoding", this.headers.get(HttpHeaders.Names.VARY));
+		assertTrue("not smaller", this.out.size() < BODY.length);
+		assertArrayEquals(BODY, ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(
+				this.out.toByteArray()))));
+	}
+
+	@Test
+	public void testDeflate() throws Exception {
+		CompressingOutputStream stream = new CompressingOutputStream(this.out, this.headers, this.policy, "deflate");
+		for (byte b : BODY) {
+			stream.write(b);
+		}
+		stream.finish();
+		assertEquals("deflate", this.headers.get(HttpHeaders.Names.CONTENT_ENCODING));
+		assertArrayEquals(BODY, ByteStreams.toByteArray(new InflaterInputStream(new ByteArrayInputStream(
+				this.out.toByteArray()))));
+	}
+
+	@Test
+	public void testSmallBodyIsNotCompressed() throws Exception {
+		CompressingOutputStream stream = new CompressingOutputStream(this.out, this.headers, this.policy, "gzip");
+		stream.write(BODY, 0, 100);
+		assertEquals("wrote before finishing", 0, this.out.size());
+		stream.finish();
+		assertFalse("compressing", stream.isCompressing());
+		assertNull(this.headers.get(HttpHeaders.Names.CONTENT_ENCODING));
+		assertArrayEquals(Arrays.copyOf(BODY, 100), this.out.toByteArray());
+	}
+
+	@Test
+	public void testOtherMediaTypesAreNotCompressed() throws Exception {
+		this.headers.set(HttpHeaders.Names.CONTENT_TYPE, "image/png");
+		CompressingOutputStream stream = new CompressingOutputStream(this.out, this.headers, this.policy, "gzip");
+		stream.write(BODY);
+		stream.finish();
+		assertNull(this.headers.get(HttpHeaders.Names.CONTENT_ENCODING));
+		assertArrayEquals(BODY, this.out.toByteArray());
+	}
+
+	@Test
+	public void testEncodedBodiesAreLeftAlone() throws Exception {
+		this.headers.set(HttpHeaders.Names.CONTENT_ENCODING, "br");
+		CompressingOutputStream stream = new CompressingOutputStream(this.out, this.headers, this.policy, "gzip");
+		stream.write(BODY);
+		stream.finish();
+		assertEquals("br", this.headers.get(HttpHeaders.Names.CONTENT_ENCODING));
+		assertArrayEquals(BODY, this.out.toByteArray());
+	}
+}
@@ -0,0 +1,53 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for choosing what to compress
+ *
+ * @author denis.rangel
+ */
+public class TestCompressionPolicy {
+
+	private final CompressionPolicy policy = new CompressionPolicy();
+
+	@Test
+	public void testNegotiation() {
+		assertNull(this.policy.negotiate(null));
+		assertNull(this.policy.negotiate(""));
+		assertNull(this.policy.negotiate("identity"));
+		assertNull(this.policy.negotiate("br"));
+		assertEquals("gzip", this.policy.negotiate("gzip"));
+		assertEquals("gzip", this.policy.negotiate("gzip, deflate"));
+		assertEquals("gzip", this.policy.negotiate("deflate, gzip"));
+		assertEquals("deflate", this.policy.negotiate("deflate"));
+		assertEquals("deflate", this.policy.negotiate("gzip;q=0.5, deflate"));
+		assertEquals("gzip", this.policy.negotiate("*"));
+		assertEquals("deflate", this.policy.negotiate("gzip;q=0, *"));
+		assertNull(this.policy.negotiate("gzip;q=0, deflate;q=0"));
+	}
+
+	@Test
+	public void testDefaultMediaTypes() {
+		assertTrue(this.policy.isCompressible("application/json"));
+		assertTrue(this.policy.isCompressible("application/json; charset=UTF-8"));
+		assertTrue(this.policy.isCompressible("text/html"));
+		assertTrue(this.policy.isCompressible("application/vnd.example+json"));
+		assertFalse(this.policy.isCompressible("image/png"));
+		assertFalse(this.policy.isCompressible("application/octet-stream"));
+		assertFalse(this.policy.isCompressible(null));
+		assertFalse(this.policy.isCompressible("not a media type"));
+	}
+
+	@Test
+	public void testCustomMediaTypes() {
+		this.policy.withMediaTypes("application/octet-stream");
+		assertTrue(this.policy.isCompressible("application/octet-stream"));
+		assertFalse(this.policy.isCompressible("application/json"));
+	}
+}
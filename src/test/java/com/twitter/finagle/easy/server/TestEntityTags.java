@@ -0,0 +1,154 @@
+package com.twitter.finagle.easy.server;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+
+/**
+ * Tests for entity tags and If-None-Match
+ *
+ * @author denis.rangel
+ */
+public class TestEntityTags {
+
+	private static final byte[] BODY = "{\"id\":42,\"name\":\"widget\"}".getBytes(Charsets.UTF_8);
+
+	@Test
+	public void testTagsDependOnlyOnContent() {
+		String tag = EntityTags.of(ChannelBuffers.wrappedBuffer(BODY));
+		assertTrue("not quoted", tag.startsWith("\"") && tag.endsWith("\""));
+		assertEquals(tag, EntityTags.of(ChannelBuffers.wrappedBuffer(BODY.clone())));
+		assertEquals("composite buffer", tag, EntityTags.of(ChannelBuffers.wrappedBuffer(
+				ChannelBuffers.wrappedBuffer(BODY, 0, 10), ChannelBuffers.wrappedBuffer(BODY, 10, BODY.length - 10))));
+		ChannelBuffer direct = ChannelBuffers.directBuffer(BODY.length);
+		direct.writeBytes(BODY);
+		assertEquals("direct buffer", tag, EntityTags.of(direct));
+		assertNotEquals(tag, EntityTags.of(ChannelBuffers.wrappedBuffer(BODY, 1, BODY.length - 1)));
+	}
+
+	@Test
+	public void testMatching() {
+		assertTrue(EntityTags.matches("\"abc\"", "\"abc\""));
+		assertTrue(EntityTags.matches("\"xyz\", \"abc\"", "\"abc\""));
+		assertTrue(EntityTags.matches("W/\"abc\"", "\"abc\""));
+		assertTrue(EntityTags.matches("*", "\"abc\""));
+		assertFalse(EntityTags.matches("\"xyz\"", "\"abc\""));
+		assertFalse(EntityTags.matches(null, "\"abc\""));
+		assertFalse(EntityTags.matches("\"abc\"", null));
+	}
+
+	@Test
+	public void testNotModified() {
+		HttpResponse response = new DefaultHttpResponse(HTTP_1_1, HttpResponseStatus.OK);
+		response.headers().set(HttpHeaders.Names.ETAG, "\"abc\"");
+		response.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+		response.setContent(ChannelBuffers.wrappedBuffer(BODY));
+		assertFalse(EntityTags.notModified("\"xyz\"", response));
+		assertEquals(BODY.length, response.getContent().readableBytes());
+		assertTrue(EntityTags.notModified("\"abc\"", response));
+		assertEquals(HttpResponseStatus.NOT_MODIFIED, response.getStatus());
+		assertEquals("\"abc\"", response.headers().get(HttpHeaders.Names.ETAG));
+		assertEquals(0, response.getContent().readableBytes());
+	}
+
+	@Test
+	public void testComputedTagAnswersNotModified() throws Exception {
+		Service<Request, Response> service = newService(new TaggedResource());
+		Response first = Await.result(service.apply(get("/tagged/computed", null)));
+		assertEquals(200, first.getStatus().getCode());
+		String etag = first.headers().get(HttpHeaders.Names.ETAG);
+		assertNotNull("no entity tag", etag);
+		assertEquals(EntityTags.of(first.getContent()), etag);
+
+		Response second = Await.result(service.apply(get("/tagged/computed", etag)));
+		assertEquals(304, second.getStatus().getCode());
+		assertEquals(etag, second.headers().get(HttpHeaders.Names.ETAG));
+		assertEquals(0, second.getContent().readableBytes());
+	}
+
+	@Test
+	public void testSuppliedTagSkipsSerialization() throws Exception {
+		TaggedResource resource = new TaggedResource();
+		Service<Request, Response> service = newService(resource);
+		Response notModified = Await.result(service.apply(get("/tagged/versioned", "\"v7\"")));
+		assertEquals(304, notModified.getStatus().getCode());
+		assertEquals(0, notModified.getContent().readableBytes());
+		assertEquals("entity was serialized", 0, resource.serialized.get());
+
+		Response changed = Await.result(service.apply(get("/tagged/versioned", "\"v6\"")));
+		assertEquals(200, changed.getStatus().getCode());
+		assertEquals("\"v7\"", changed.headers().get(HttpHeaders.Names.ETAG));
+		assertContentEquals(changed.getContent(), BODY);
+		assertEquals(1, resource.serialized.get());
+	}
+
+	private static Service<Request, Response> newService(TaggedResource resource) {
+		return ServiceBuilder.get().withExecutor(MoreExecutors.directExecutor()).withEntityTags(true)
+				.withEndpoint(resource).build();
+	}
+
+	private static Request get(String uri, String ifNoneMatch) {
+		Request request = Request.apply(Method.apply("GET"), uri);
+		if (ifNoneMatch != null) {
+			request.headers().set(HttpHeaders.Names.IF_NONE_MATCH, ifNoneMatch);
+		}
+		return request;
+	}
+
+	@Path("/tagged")
+	public static class TaggedResource {
+
+		final AtomicInteger serialized = new AtomicInteger();
+
+		@GET
+		@Path("/computed")
+		@Produces(MediaType.APPLICATION_JSON)
+		public String computed() {
+			return new String(BODY, Charsets.UTF_8);
+		}
+
+		@GET
+		@Path("/versioned")
+		@Produces(MediaType.APPLICATION_JSON)
+		public javax.ws.rs.core.Response versioned() {
+			StreamingOutput entity = new StreamingOutput() {
+				@Override
+				public void write(OutputStream out) throws IOException {
+					serialized.incrementAndGet();
+					out.write(BODY);
+				}
+			};
+			return javax.ws.rs.core.Response.ok(entity).tag("v7").build();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.twitter.finagle.easy.server;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+import com.twitter.util.Future;
+import com.twitter.util.Promise;
+
+/**
+ * Tests resource methods that return futures instead of entities
+ *
+ * @author denis.rangel
+ */
+public class TestFinagleDispatcher {
+
+	private FutureResource resource;
+	private Service<Request, Response> service;
+
+	@Before
+	public void setUp() {
+		this.resource = new FutureResource();
+		this.service = ServiceBuilder.get().withThreadPoolSize(1).withEndpoint(this.resource).build();
+	}
+
+	@Test
+	public void testSatisfiedTwitterFuture() throws Exception {
+		Response response = Await.result(this.service.apply(get("/futures/twitter/value")));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertContentEquals(response.getContent(), "value".getBytes(UTF_8));
+	}
+
+	@Test
+	public void testPendingTwitterFuture() throws Exception {
+		Future<Response> future = this.service.apply(get("/futures/twitter/pending"));
+		// the worker is free to take other requests while we wait
+		Response other = Await.result(this.service.apply(get("/futures/twitter/value")));
+		assertEquals("wrong code", 200, other.getStatus().getCode());
+		assertFalse("completed early", future.isDefined());
+
+		this.resource.pending.setValue("later");
+		assertContentEquals(Await.result(future).getContent(), "later".getBytes(UTF_8));
+	}
+
+	@Test
+	public void testFailedTwitterFuture() throws Exception {
+		Response response = Await.result(this.service.apply(get("/futures/twitter/missing")));
+		assertEquals("wrong code", 404, response.getStatus().getCode());
+	}
+
+	@Test
+	public void testNullValue() throws Exception {
+		Response response = Await.result(this.service.apply(get("/futures/twitter/empty")));
+		assertEquals("wrong code", 204, response.getStatus().getCode());
+	}
+
+	@Test
+	public void testCompletionStage() throws Exception {
+		Future<Response> future = this.service.apply(get("/futures/stage/pending"));
+		assertFalse("completed early", future.isDefined());
+
+		this.resource.stage.complete("staged");
+		assertContentEquals(Await.result(future).getContent(), "staged".getBytes(UTF_8));
+	}
+
+	@Test
+	public void testFailedCompletionStage() throws Exception {
+		Response response = Await.result(this.service.apply(get("/futures/stage/missing")));
+		assertEquals("wrong code", 404, response.getStatus().getCode());
+	}
+
+	@Test
+	public void testGenericValue() throws Exception {
+		Response response = Await.result(this.service.apply(get("/futures/stage/list")));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertContentEquals(response.getContent(), "[\"a\",\"b\"]".getBytes(UTF_8));
+	}
+
+	private static Request get(String uri) {
+		return Request.apply(Method.apply("GET"), uri);
+	}
+
+	@Path("/futures")
+	public static class FutureResource {
+
+		final Promise<String> pending = new Promise<String>();
+		final CompletableFuture<String> stage = new CompletableFuture<String>();
+
+		@GET
+		@Path("/twitter/value")
+		@Produces(MediaType.TEXT_PLAIN)
+		public Future<String> value() {
+			return Future.value("value");
+		}
+
+		@GET
+		@Path("/twitter/pending")
+		@Produces(MediaType.TEXT_PLAIN)
+		public Future<String> pending() {
+			return this.pending;
+		}
+
+		@GET
+		@Path("/twitter/missing")
+		@Produces(MediaType.TEXT_PLAIN)
+		public Future<String> missing() {
+			return Future.exception(new NotFoundException());
+		}
+
+		@GET
+		@Path("/twitter/empty")
+		@Produces(MediaType.TEXT_PLAIN)
+		public Future<String> empty() {
+			return Future.value(null);
+		}
+
+		@GET
+		@Path("/stage/pending")
+		@Produces(MediaType.TEXT_PLAIN)
+		public CompletionStage<String> stage() {
+			return this.stage;
+		}
+
+		@GET
+		@Path("/stage/missing")
+		@Produces(MediaType.TEXT_PLAIN)
+		public CompletionStage<String> stageMissing() {
+			CompletableFuture<String> failed = new CompletableFuture<String>();
+			failed.completeExceptionally(new NotFoundException());
+			return failed;
+		}
+
+		@GET
+		@Path("/stage/list")
+		@Produces(MediaType.APPLICATION_JSON)
+		public CompletionStage<List<String>> list() {
+			return CompletableFuture.<List<String>> completedFuture(ImmutableList.of("a", "b"));
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+
+/**
+ * Tests for static, pre-encoded response headers
+ *
+ * @author denis.rangel
+ */
+public class TestHeaderBlock {
+
+	private final HeaderBlock block = new HeaderBlock(ImmutableMap.of("Cache-Control", "max-age=60", "X-Static",
+			"yes"), Arrays.asList(MediaType.APPLICATION_JSON_TYPE));
+
+	@Test
+	public void testApplyToAddsMissingHeaders() throws Exception {
+		HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+		response.headers().set("cache-control", "no-store");
+		this.block.applyTo(response);
+		assertEquals("resource's header was replaced", "no-store", response.headers().get("Cache-Control"));
+		assertEquals("yes", response.headers().get("X-Static"));
+	}
+
+	@Test
+	public void testApplyToSkipsErrors() throws Exception {
+		HttpResponse response = new DefaultHttpResponse(HTTP_1_1, NOT_FOUND);
+		this.block.applyTo(response);
+		assertTrue("error response got static headers", response.headers().isEmpty());
+	}
+
+	@Test
+	public void testEncode() throws Exception {
+		assertEquals(MediaType.APPLICATION_JSON, this.block.encode(new MediaType("application", "json")));
+		assertNull("encoded a type the route doesn't produce", this.block.encode(MediaType.TEXT_PLAIN_TYPE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidHeaderIsRejected() throws Exception {
+		new HeaderBlock(ImmutableMap.of("Bad Name", "v"), Collections.<MediaType> emptyList());
+	}
+
+	@Test
+	public void testRouteHeaders() throws Exception {
+		Service<Request, Response> service = ServiceBuilder.get().withExecutor(MoreExecutors.directExecutor())
+				.withEndpoint(new StaticResource()).build();
+		Response cached = Await.result(service.apply(Request.apply(Method.apply("GET"), "/static/cached")));
+		assertEquals("method header lost", "max-age=60", cached.headers().get("Cache-Control"));
+		assertEquals("class header lost", "static", cached.headers().get("X-Resource"));
+		assertEquals("text/plain", cached.headers().get("Content-Type"));
+		Response overridden = Await.result(service.apply(Request.apply(Method.apply("GET"), "/static/plain")));
+		assertEquals("class header should give way", "plain", overridden.headers().get("X-Resource"));
+		assertNull("unexpected method header", overridden.headers().get("Cache-Control"));
+	}
+
+	@Path("/static")
+	@StaticHeader(name = "X-Resource", value = "static")
+	public static class StaticResource {
+
+		@GET
+		@Path("/cached")
+		@Produces("text/plain")
+		@StaticHeader(name = "Cache-Control", value = "max-age=60")
+		public String cached() {
+			return "cached";
+		}
+
+		@GET
+		@Path("/plain")
+		@Produces("text/plain")
+		@StaticHeader(name = "x-resource", value = "plain")
+		public String plain() {
+			return "plain";
+		}
+	}
+}
@@ -3,11 +3,16 @@ package com.twitter.finagle.easy.server;
 import static com.twitter.finagle.easy.AssertionHelpers.assertMultivaluedMapEquals;
 import static com.twitter.finagle.easy.AssertionHelpers.assertUriInfoEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.ws.rs.core.MediaType;
@@ -81,4 +86,52 @@ public class TestInboundServiceRequest {
 		assertUriInfoEquals(resteasyRequest.getUri(), new URI("http://localhost:80/foo?k=v&k=%3F"), "/foo",
 				ImmutableMap.<String, Object> of("k", Arrays.asList("v", "?")), new String[] { "foo" });
 	}
+
+	@Test
+	public void testAttributeNames() throws Exception {
+		HttpRequest resteasyRequest = new InboundServiceRequest(Request.apply(Method.apply("GET"), "/foo"));
+		assertFalse("unexpected attributes", resteasyRequest.getAttributeNames().hasMoreElements());
+		for (int i = 0; i < 6; i++) {
+			resteasyRequest.setAttribute("k" + i, i);
+		}
+		resteasyRequest.setAttribute("k0", "replaced");
+		resteasyRequest.removeAttribute("k2");
+		assertEquals("wrong names", Arrays.asList("k0", "k1", "k3", "k4", "k5"),
+				Collections.list(resteasyRequest.getAttributeNames()));
+		assertEquals("wrong attribute", "replaced", resteasyRequest.getAttribute("k0"));
+		assertEquals("wrong attribute", 5, resteasyRequest.getAttribute("k5"));
+	}
+
+	@Test
+	public void testReleasedRequestIsReset() throws Exception {
+		Request first = Request.apply(Method.apply("POST"), "/first");
+		first.headers().set(HttpHeaders.ACCEPT, MediaType.APPLICATION_XML);
+		InboundServiceRequest resteasyRequest = InboundServiceRequest.acquire(first, RequestTarget.parse("/first"),
+				new ByteArrayInputStream(ENCODED_PARAMS));
+		resteasyRequest.setAttribute("k", this);
+		assertEquals(MediaType.APPLICATION_XML_TYPE, resteasyRequest.getHttpHeaders().getAcceptableMediaTypes()
+				.get(0));
+		assertEquals("v1", resteasyRequest.getFormParameters().getFirst("k1"));
+		resteasyRequest.release();
+		assertNull("released adapter kept its URI", resteasyRequest.getUri());
+		assertTrue("released adapter kept its headers", resteasyRequest.getMutableHeaders().isEmpty());
+
+		Request second = Request.apply(Method.apply("GET"), "/second?k=v");
+		second.headers().set(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+		InboundServiceRequest reused = InboundServiceRequest.acquire(second, RequestTarget.parse("/second?k=v"),
+				null);
+		assertSame("adapter wasn't reused", resteasyRequest, reused);
+		assertEquals("wrong method", "GET", reused.getHttpMethod());
+		assertEquals("wrong path", "/second", reused.getUri().getPath());
+		assertEquals("wrong query", "v", reused.getUri().getQueryParameters().getFirst("k"));
+		assertEquals("stale headers", MediaType.APPLICATION_JSON_TYPE, reused.getHttpHeaders()
+				.getAcceptableMediaTypes().get(0));
+		assertNull("stale attribute", reused.getAttribute("k"));
+		assertEquals("stale body", -1, reused.getInputStream().read());
+		assertEquals("stale form", 0, reused.getFormParameters().size());
+
+		// only one adapter is kept per thread, and a taken one isn't shared
+		assertNotSame("adapter was shared", reused, InboundServiceRequest.acquire(first, RequestTarget
+				.parse("/first"), null));
+	}
 }
@@ -3,6 +3,8 @@ package com.twitter.finagle.easy.server;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.CONFLICT;
 import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -11,10 +13,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import javax.ws.rs.core.MediaType;
+
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 
 /**
@@ -99,6 +104,57 @@ public class TestNettyHeaderWrapper {
 		}
 	}
 
+	@Test
+	public void testSizeAndIsEmpty() throws Exception {
+		assertTrue("new response has headers", wrapper.isEmpty());
+		assertEquals(0, wrapper.size());
+		wrapper.add("k1", "v1");
+		wrapper.add("k1", "v2");
+		wrapper.add("k2", "v3");
+		assertFalse("headers weren't seen", wrapper.isEmpty());
+		assertEquals("size should count names, not values", 2, wrapper.size());
+		assertEquals(2, wrapper.entrySet().size());
+	}
+
+	@Test
+	public void testGetFirstOfMissingHeader() throws Exception {
+		assertNull(wrapper.getFirst("k"));
+		wrapper.add("k", "v1");
+		wrapper.add("k", "v2");
+		assertEquals("v1", wrapper.getFirst("k"));
+	}
+
+	@Test
+	public void testPutAll() throws Exception {
+		response.headers().set("k1", "old");
+		wrapper.putAll(ImmutableMap.<String, List<Object>> of("k1", Arrays.<Object> asList("v1"), "k2",
+				Arrays.<Object> asList("v2", 3)));
+		assertMapping("k1", "v1");
+		assertMapping("k2", "v2", "3");
+	}
+
+	@Test
+	public void testPreEncodedMediaTypes() throws Exception {
+		MediaType json = new MediaType("application", "json", ImmutableMap.of("charset", "UTF-8"));
+		HeaderBlock block = new HeaderBlock(ImmutableMap.<String, String> of(), Arrays.asList(json));
+		// an equal media type, which would be written differently if it were
+		// formatted again
+		MediaType unformatted = new MediaType("application", "json", ImmutableMap.of("charset", "UTF-8")) {
+			@Override
+			public String toString() {
+				return "unformatted";
+			}
+		};
+		NettyHeaderWrapper encoding = new NettyHeaderWrapper(response, block);
+		encoding.putSingle("Content-Type", unformatted);
+		assertMapping("Content-Type", block.encode(json));
+		encoding.putAll(ImmutableMap.<String, List<Object>> of("Content-Type", Arrays.<Object> asList(unformatted)));
+		assertMapping("Content-Type", block.encode(json));
+		// other types are formatted as usual
+		encoding.putSingle("Content-Type", MediaType.TEXT_PLAIN_TYPE);
+		assertMapping("Content-Type", "text/plain");
+	}
+
 	protected void assertMapping(String key, String... values) {
 		List<String> expectedVals = Arrays.asList(values);
 		assertEquals("underlying response has bad values for " + key, expectedVals,
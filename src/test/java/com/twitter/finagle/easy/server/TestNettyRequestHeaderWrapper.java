@@ -0,0 +1,95 @@
+package com.twitter.finagle.easy.server;
+
+import static org.jboss.netty.handler.codec.http.HttpMethod.GET;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests for the lazy view over inbound request headers, and the JAX-RS
+ * headers built on it
+ *
+ * @author denis.rangel
+ */
+public class TestNettyRequestHeaderWrapper {
+
+	private HttpRequest request = new DefaultHttpRequest(HTTP_1_1, GET, "/");
+	private NettyRequestHeaderWrapper wrapper = new NettyRequestHeaderWrapper(request.headers());
+
+	@Test
+	public void testReadsAreCaseInsensitive() throws Exception {
+		request.headers().add("X-Single", "a");
+		request.headers().add("X-Multi", Arrays.asList("b", "c"));
+		assertEquals(Arrays.asList("a"), wrapper.get("x-single"));
+		assertEquals(Arrays.asList("b", "c"), wrapper.get("X-MULTI"));
+		assertEquals("b", wrapper.getFirst("x-multi"));
+		assertTrue("missing key", wrapper.containsKey("x-single"));
+		assertNull("unexpected value", wrapper.get("x-missing"));
+		assertNull("unexpected value", wrapper.getFirst("x-missing"));
+		assertEquals(ImmutableSet.of("X-Single", "X-Multi"), wrapper.keySet());
+		assertEquals(2, wrapper.size());
+		assertEquals(2, wrapper.entrySet().size());
+		assertFalse("empty", wrapper.isEmpty());
+	}
+
+	@Test
+	public void testWritesGoThrough() throws Exception {
+		int version = wrapper.getModCount();
+		wrapper.putSingle("k", "v1");
+		wrapper.add("k", "v2");
+		wrapper.addFirst("k", "v0");
+		assertEquals(Arrays.asList("v0", "v1", "v2"), request.headers().getAll("k"));
+		assertEquals(Arrays.asList("v0", "v1", "v2"), wrapper.remove("k"));
+		assertFalse("not removed", request.headers().contains("k"));
+		assertTrue("wasn't counted", wrapper.getModCount() != version);
+	}
+
+	@Test
+	public void testEqualsIgnoreValueOrder() throws Exception {
+		request.headers().add("k", Arrays.asList("a", "b"));
+		NettyRequestHeaderWrapper other = new NettyRequestHeaderWrapper(
+				new DefaultHttpRequest(HTTP_1_1, GET, "/").headers());
+		other.addAll("k", "b", "a");
+		assertTrue("not equal", wrapper.equalsIgnoreValueOrder(other));
+		other.add("k", "c");
+		assertFalse("equal", wrapper.equalsIgnoreValueOrder(other));
+	}
+
+	@Test
+	public void testParsedValuesAreCached() throws Exception {
+		request.headers().set("Accept", "application/xml");
+		LazyHttpHeaders headers = new LazyHttpHeaders(wrapper);
+		List<MediaType> accepts = headers.getAcceptableMediaTypes();
+		assertEquals(Arrays.asList(MediaType.APPLICATION_XML_TYPE), accepts);
+		assertSame("not cached", accepts, headers.getAcceptableMediaTypes());
+
+		// changing the headers invalidates what we parsed
+		wrapper.putSingle("Accept", "application/json");
+		assertEquals(Arrays.asList(MediaType.APPLICATION_JSON_TYPE), headers.getAcceptableMediaTypes());
+	}
+
+	@Test
+	public void testCookies() throws Exception {
+		request.headers().add("Cookie", "a=1; b=2");
+		request.headers().add("Cookie", "c=3");
+		Map<String, Cookie> cookies = new LazyHttpHeaders(wrapper).getCookies();
+		assertEquals(ImmutableSet.of("a", "b", "c"), cookies.keySet());
+		assertEquals("2", cookies.get("b").getValue());
+	}
+}
@@ -7,6 +7,7 @@ import static org.junit.Assert.assertNotNull;
 
 import java.io.PrintStream;
 import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
 
 import javax.ws.rs.core.Cookie;
@@ -79,6 +80,16 @@ public class TestOutboundServiceResponse {
 		assertEquals(encoder.encode(), this.response.getNettyResponse().headers().get("Set-Cookie"));
 	}
 	
+	@Test
+	public void testLargeBodyIsSegmented() throws Exception {
+		OutboundServiceResponse large = new OutboundServiceResponse(HTTP_1_1, 64 * 1024);
+		byte[] body = new byte[100 * 1024];
+		new Random(42).nextBytes(body);
+		large.getOutputStream().write(body, 0, 60 * 1024);
+		large.getOutputStream().write(body, 60 * 1024, 40 * 1024);
+		assertContentEquals(large.getNettyResponse().getContent(), body);
+	}
+
 	private void assertStatusEquals(HttpResponseStatus expectedStatus) {
 		HttpResponseStatus actualStatus = this.response.getNettyResponse().getStatus();
 		assertNotNull("status is null", actualStatus);
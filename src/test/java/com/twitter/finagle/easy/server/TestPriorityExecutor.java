@@ -0,0 +1,163 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for scheduling requests by priority class
+ *
+ * @author denis.rangel
+ */
+public class TestPriorityExecutor {
+
+	private PriorityExecutor executor;
+	private CountDownLatch release;
+	private List<String> ran;
+	private List<String> shed;
+
+	@Before
+	public void setUp() throws Exception {
+		this.executor = new PriorityExecutor(1, 2);
+		this.release = new CountDownLatch(1);
+		this.ran = Collections.synchronizedList(Lists.<String> newArrayList());
+		this.shed = Collections.synchronizedList(Lists.<String> newArrayList());
+		// keep the only worker busy until we've queued everything
+		final CountDownLatch started = new CountDownLatch(1);
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		started.await();
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void testWeightedRoundRobin() throws Exception {
+		PriorityExecutor executor = new PriorityExecutor(1, 0);
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		for (int i = 1; i <= 2; i++) {
+			executor.execute(new NamedTask("L" + i, PriorityClass.LOW));
+		}
+		for (int i = 1; i <= 6; i++) {
+			executor.execute(new NamedTask("H" + i, PriorityClass.HIGH));
+		}
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		// high gets four turns per round, low gets one
+		assertEquals(Arrays.asList("H1", "H2", "H3", "H4", "L1", "H5", "H6", "L2"), this.ran);
+	}
+
+	@Test
+	public void testLowerClassesAreShedFirst() throws Exception {
+		this.executor.execute(new NamedTask("L1", PriorityClass.LOW));
+		this.executor.execute(new NamedTask("N1", PriorityClass.NORMAL));
+		this.executor.execute(new NamedTask("H1", PriorityClass.HIGH));
+		assertEquals(Arrays.asList("L1"), this.shed);
+		this.executor.execute(new NamedTask("C1", PriorityClass.CRITICAL));
+		assertEquals(Arrays.asList("L1", "N1"), this.shed);
+		try {
+			this.executor.execute(new NamedTask("L2", PriorityClass.LOW));
+			fail("low priority task was queued on a full executor");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(2, this.executor.getShedCount(PriorityClass.LOW));
+		assertEquals(1, this.executor.getShedCount(PriorityClass.NORMAL));
+		assertEquals(2, this.executor.getQueueDepth());
+
+		this.release.countDown();
+		this.executor.shutdown();
+		assertTrue(this.executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("C1", "H1"), this.ran);
+	}
+
+	@Test
+	public void testShutdownNowReturnsQueuedTasks() throws Exception {
+		this.executor.execute(new NamedTask("N1", PriorityClass.NORMAL));
+		List<Runnable> pending = this.executor.shutdownNow();
+		assertEquals(1, pending.size());
+		assertTrue(this.executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(this.ran.isEmpty());
+	}
+
+	@Test
+	public void testWorkerSurvivesErrors() throws Exception {
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				throw new AssertionError("expected error");
+			}
+		});
+		final CountDownLatch ran = new CountDownLatch(1);
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				ran.countDown();
+			}
+		});
+		this.release.countDown();
+		assertTrue("the only worker died", ran.await(5, TimeUnit.SECONDS));
+	}
+
+	private class NamedTask implements PriorityExecutor.Task {
+
+		private final String name;
+		private final PriorityClass priority;
+
+		NamedTask(String name, PriorityClass priority) {
+			this.name = name;
+			this.priority = priority;
+		}
+
+		@Override
+		public void run() {
+			ran.add(this.name);
+		}
+
+		@Override
+		public PriorityClass getPriority() {
+			return this.priority;
+		}
+
+		@Override
+		public void shed() {
+			shed.add(this.name);
+		}
+	}
+}
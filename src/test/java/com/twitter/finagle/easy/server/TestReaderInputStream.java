@@ -0,0 +1,91 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.twitter.io.Bufs;
+import com.twitter.io.Reader;
+import com.twitter.io.Reader$;
+import com.twitter.io.Writer;
+import com.twitter.util.Await;
+import com.twitter.util.Closable;
+
+/**
+ * Tests for reading streamed request bodies
+ *
+ * @author denis.rangel
+ */
+public class TestReaderInputStream {
+
+	private static final byte[] BODY = new byte[10000];
+
+	static {
+		new Random(7).nextBytes(BODY);
+	}
+
+	@Test
+	public void testReadsChunksInOrder() throws Exception {
+		Reader reader = Reader$.MODULE$.writable();
+		send(reader, BODY, 3000);
+		ReaderInputStream in = new ReaderInputStream(reader, 0L);
+		assertArrayEquals(BODY, ByteStreams.toByteArray(in));
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testSingleByteReads() throws Exception {
+		Reader reader = Reader$.MODULE$.writable();
+		send(reader, Arrays.copyOf(BODY, 10), 3);
+		ReaderInputStream in = new ReaderInputStream(reader, 0L);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(BODY[i] & 0xff, in.read());
+		}
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testOversizedBodyIsRejected() throws Exception {
+		Reader reader = Reader$.MODULE$.writable();
+		send(reader, BODY, 1000);
+		ReaderInputStream in = new ReaderInputStream(reader, 4096L);
+		try {
+			ByteStreams.toByteArray(in);
+			fail("read past the limit");
+		} catch (WebApplicationException e) {
+			assertEquals(413, e.getResponse().getStatus());
+		}
+	}
+
+	/*
+	 * Writes the body in chunks from another thread, the way Finagle would as
+	 * it arrives; each write waits for the previous one to be read
+	 */
+	private static void send(final Reader reader, final byte[] body, final int chunkSize) {
+		Thread sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Writer writer = (Writer) reader;
+				try {
+					for (int offset = 0; offset < body.length; offset += chunkSize) {
+						int end = Math.min(body.length, offset + chunkSize);
+						Await.result(writer.write(Bufs.ownedBuf(Arrays.copyOfRange(body, offset, end))));
+					}
+					Await.result(((Closable) writer).close());
+				} catch (Exception e) {
+					// the reader discarded the rest of the body
+				}
+			}
+		});
+		sender.setDaemon(true);
+		sender.start();
+	}
+}
@@ -0,0 +1,150 @@
+package com.twitter.finagle.easy.server;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+
+/**
+ * Tests for request deadlines and execution timeouts
+ *
+ * @author denis.rangel
+ */
+public class TestRequestDeadline {
+
+	private DeadlineResource resource;
+	private Service<Request, Response> service;
+
+	@Before
+	public void setUp() {
+		this.resource = new DeadlineResource();
+		this.service = ServiceBuilder.get().withThreadPoolSize(1).withEndpoint(this.resource)
+				.withDeadlineHeader(RequestDeadline.DEFAULT_HEADER).build();
+	}
+
+	@Test
+	public void testNoDeadline() {
+		RequestDeadline deadline = RequestDeadline.resolve(System.nanoTime(), null, null, null);
+		assertFalse(deadline.isBounded());
+		assertFalse(deadline.isExpired());
+		assertEquals(Long.MAX_VALUE, deadline.getRemaining(TimeUnit.MILLISECONDS));
+		assertNull(deadline.toFinagleDeadline());
+	}
+
+	@Test
+	public void testHeaderTimeout() {
+		RequestDeadline deadline = RequestDeadline.resolve(System.nanoTime(), null, "60000", null);
+		assertTrue(deadline.isBounded());
+		assertFalse(deadline.isExpired());
+		assertTrue(deadline.getRemaining(TimeUnit.SECONDS) > 50);
+		assertTrue(RequestDeadline.resolve(System.nanoTime(), null, "0", null).isExpired());
+		assertFalse(RequestDeadline.resolve(System.nanoTime(), null, "soon", null).isBounded());
+	}
+
+	@Test
+	public void testEarliestDeadlineWins() {
+		RequestDeadline deadline = RequestDeadline.resolve(System.nanoTime(),
+				RequestDeadline.in(1, TimeUnit.SECONDS).toFinagleDeadline(), "60000", null);
+		assertTrue(deadline.getRemaining(TimeUnit.MILLISECONDS) <= 1000);
+	}
+
+	@Test
+	public void testRemainingDeadlineIsInjected() throws Exception {
+		Request request = get("/deadline/remaining");
+		request.headers().set(RequestDeadline.DEFAULT_HEADER, "60000");
+		Response response = Await.result(this.service.apply(request));
+		assertEquals(200, response.getStatus().getCode());
+		long remaining = Long.parseLong(response.getContent().toString(UTF_8));
+		assertTrue("wrong remaining time: " + remaining, remaining > 50000 && remaining <= 60000);
+	}
+
+	@Test
+	public void testExpiredRequestIsNotDispatched() throws Exception {
+		Request request = get("/deadline/remaining");
+		request.headers().set(RequestDeadline.DEFAULT_HEADER, "0");
+		assertEquals(504, Await.result(this.service.apply(request)).getStatus().getCode());
+		assertEquals(0, this.resource.calls.get());
+	}
+
+	@Test
+	public void testExecutionTimeoutAnswersEarly() throws Exception {
+		Response response = Await.result(this.service.apply(get("/deadline/stuck")));
+		assertEquals(504, response.getStatus().getCode());
+		this.resource.release.countDown();
+		// the worker is free again afterwards
+		response = Await.result(this.service.apply(get("/deadline/remaining")));
+		assertEquals(200, response.getStatus().getCode());
+		assertContentEquals(response.getContent(), Long.toString(Long.MAX_VALUE).getBytes(UTF_8));
+	}
+
+	@Test
+	public void testCompletedRequestsLeaveTimerQueue() throws Exception {
+		BlockingQueue<Runnable> queue = ((ScheduledThreadPoolExecutor) ((ResteasyFinagleService) this.service)
+				.getTimer()).getQueue();
+		int before = queue.size();
+		for (int i = 0; i < 200; i++) {
+			assertEquals(200, Await.result(this.service.apply(get("/deadline/quick"))).getStatus().getCode());
+		}
+		// the last few may not have been cancelled yet
+		assertTrue("cancelled timeouts stayed queued", queue.size() - before < 10);
+	}
+
+	private static Request get(String uri) {
+		return Request.apply(Method.apply("GET"), uri);
+	}
+
+	@Path("/deadline")
+	public static class DeadlineResource {
+
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		@GET
+		@Path("remaining")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String remaining(@Context RequestDeadline deadline) {
+			this.calls.incrementAndGet();
+			return Long.toString(deadline.getRemaining(TimeUnit.MILLISECONDS));
+		}
+
+		@GET
+		@Path("quick")
+		@Produces(MediaType.TEXT_PLAIN)
+		@ExecutionTimeout(60000)
+		public String quick() {
+			return "quick";
+		}
+
+		@GET
+		@Path("stuck")
+		@Produces(MediaType.TEXT_PLAIN)
+		@ExecutionTimeout(50)
+		public String stuck() throws InterruptedException {
+			this.release.await();
+			return "too late";
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.jboss.resteasy.specimpl.ResteasyUriBuilder;
+import org.junit.Test;
+
+/**
+ * Tests for request-target parsing and the path cache
+ *
+ * @author denis.rangel
+ */
+public class TestRequestTarget {
+
+	@Test
+	public void testPathOnly() throws Exception {
+		RequestTarget target = RequestTarget.parse("/items/42");
+		assertEquals("/items/42", target.getPath());
+		assertNull("unexpected query", target.getQuery());
+		assertEquals(Arrays.asList("items", "42"), target.getSegments());
+		assertEquals(new URI("/items/42"), target.toUri());
+	}
+
+	@Test
+	public void testPathAndQuery() throws Exception {
+		RequestTarget target = RequestTarget.parse("/items/?k=v&k=%3F");
+		assertEquals("/items/", target.getPath());
+		assertEquals("k=v&k=%3F", target.getQuery());
+		assertEquals(Arrays.asList("items"), target.getSegments());
+		assertEquals(new URI("/items/?k=v&k=%3F"), target.toUri());
+	}
+
+	@Test
+	public void testRoot() throws Exception {
+		RequestTarget target = RequestTarget.parse("/");
+		assertEquals(Collections.emptyList(), target.getSegments());
+		assertEquals(new URI("/"), target.toUri());
+	}
+
+	@Test
+	public void testMatchesResteasyForUnusualTargets() throws Exception {
+		for (String raw : new String[] { "/a%20b", "/a;m=1/b", "/a?q=|", "//host/path", "/a?" }) {
+			assertEquals("disagrees on " + raw, ResteasyUriBuilder.fromUri(raw).build(),
+					RequestTarget.parse(raw).toUri());
+		}
+	}
+
+	@Test
+	public void testEncodedPathsAreLeftToResteasy() throws Exception {
+		assertNull("segments for encoded path", RequestTarget.parse("/a%2Fb").getSegments());
+		assertNull("segments for matrix params", RequestTarget.parse("/a;m=1").getSegments());
+	}
+
+	@Test
+	public void testCacheSharesPaths() throws Exception {
+		RequestTargetCache cache = new RequestTargetCache(2);
+		RequestTarget first = cache.parse("/items/42?a=1");
+		RequestTarget second = cache.parse("/items/42?a=2");
+		assertSame("path not shared", first.getSegments(), second.getSegments());
+		assertEquals("a=2", second.getQuery());
+		assertEquals(new URI("/items/42?a=2"), second.toUri());
+		assertEquals(1, cache.size());
+
+		cache.parse("/a");
+		cache.parse("/b");
+		assertEquals("cache not bounded", 2, cache.size());
+	}
+
+	@Test
+	public void testDisabledCache() throws Exception {
+		RequestTarget target = RequestTargetCache.DISABLED.parse("/items?a=1");
+		assertEquals(Arrays.asList("items"), target.getSegments());
+		assertEquals(0, RequestTargetCache.DISABLED.size());
+	}
+}
@@ -0,0 +1,215 @@
+package com.twitter.finagle.easy.server;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+
+/**
+ * Tests for caching rendered responses
+ *
+ * @author denis.rangel
+ */
+public class TestResponseCache {
+
+	private static final String TEXT = Strings.repeat("cached text ", 200);
+
+	private static final byte[] BODY = "{\"id\":42}".getBytes(Charsets.UTF_8);
+
+	private final ResponseCache cache = new ResponseCache(1 << 20);
+
+	@Test
+	public void testStoresCacheableResponses() {
+		ResponseCache.Key key = this.cache.keyFor(get("/items/42"));
+		assertNull(this.cache.get(key, HTTP_1_1));
+		assertTrue("not stored", this.cache.put(key, response("max-age=60")));
+		HttpResponse cached = this.cache.get(this.cache.keyFor(get("/items/42")), HTTP_1_1);
+		assertNotNull(cached);
+		assertEquals("application/json", cached.headers().get(HttpHeaders.Names.CONTENT_TYPE));
+		assertEquals("0", cached.headers().get(HttpHeaders.Names.AGE));
+		assertContentEquals(cached.getContent(), BODY);
+		assertEquals(1, this.cache.getStats().hitCount());
+		assertEquals(1, this.cache.getStats().missCount());
+		assertTrue(this.cache.getBytes() > BODY.length);
+	}
+
+	@Test
+	public void testHonoursCacheControl() {
+		ResponseCache.Key key = this.cache.keyFor(get("/items/42"));
+		assertFalse(this.cache.put(key, response(null)));
+		assertFalse(this.cache.put(key, response("no-store, max-age=60")));
+		assertFalse(this.cache.put(key, response("private, max-age=60")));
+		assertFalse(this.cache.put(key, response("max-age=0")));
+		assertTrue(this.cache.put(key, response("max-age=0, s-maxage=30")));
+	}
+
+	@Test
+	public void testKeyIncludesNegotiationHeaders() {
+		this.cache.withVaryHeaders("X-Tenant");
+		Request json = get("/items/42");
+		json.headers().set(HttpHeaders.Names.ACCEPT, "application/json");
+		Request xml = get("/items/42");
+		xml.headers().set(HttpHeaders.Names.ACCEPT, "application/xml");
+		Request tenant = get("/items/42");
+		tenant.headers().set(HttpHeaders.Names.ACCEPT, "application/json");
+		tenant.headers().set("X-Tenant", "acme");
+		this.cache.put(this.cache.keyFor(json), response("max-age=60"));
+		assertNotNull(this.cache.get(this.cache.keyFor(json), HTTP_1_1));
+		assertNull(this.cache.get(this.cache.keyFor(xml), HTTP_1_1));
+		assertNull(this.cache.get(this.cache.keyFor(tenant), HTTP_1_1));
+	}
+
+	@Test
+	public void testOnlyCachesPlainGets() {
+		Request post = Request.apply(Method.apply("POST"), "/items");
+		assertNull(this.cache.keyFor(post));
+		Request authorized = get("/items/42");
+		authorized.headers().set(HttpHeaders.Names.AUTHORIZATION, "Basic Zm9vOmJhcg==");
+		assertNull(this.cache.keyFor(authorized));
+		HttpResponse varies = response("max-age=60");
+		varies.headers().set(HttpHeaders.Names.VARY, "Cookie");
+		assertFalse(this.cache.put(this.cache.keyFor(get("/items/42")), varies));
+	}
+
+	@Test
+	public void testByteBudget() {
+		ResponseCache small = new ResponseCache(4096);
+		for (int i = 0; i < 100; i++) {
+			small.put(small.keyFor(get("/items/" + i)), response("max-age=60"));
+		}
+		assertTrue("over budget", small.getBytes() <= 4096);
+		assertTrue("nothing evicted", small.getStats().evictionCount() > 0);
+	}
+
+	@Test
+	public void testLargeEntryFitsBudget() {
+		HttpResponse large = response("max-age=60");
+		large.setContent(ChannelBuffers.wrappedBuffer(new byte[3000]));
+		ResponseCache small = new ResponseCache(4096);
+		ResponseCache.Key key = small.keyFor(get("/items/large"));
+		assertTrue(small.put(key, large));
+		assertNotNull("entry over a quarter of the budget was evicted", small.get(key, HTTP_1_1));
+		assertEquals(0L, small.getStats().evictionCount());
+	}
+
+	@Test
+	public void testMaxAge() {
+		assertEquals(60L, ResponseCache.maxAgeSeconds(Collections.singletonList("public, max-age=60")));
+		assertEquals(10L, ResponseCache.maxAgeSeconds(Arrays.asList("max-age=60", "s-maxage=10")));
+		assertEquals(0L, ResponseCache.maxAgeSeconds(Collections.singletonList("max-age=bogus")));
+		assertEquals(0L, ResponseCache.maxAgeSeconds(Collections.singletonList("no-cache")));
+	}
+
+	@Test
+	public void testServiceAnswersRepeatsFromCache() throws Exception {
+		CachedResource resource = new CachedResource();
+		Service<Request, Response> service = newService(resource);
+		for (int i = 0; i < 3; i++) {
+			Response response = Await.result(service.apply(get("/cached/text")));
+			assertEquals(200, response.getStatus().getCode());
+			assertContentEquals(response.getContent(), TEXT.getBytes(Charsets.UTF_8));
+		}
+		assertEquals("repeat reached the resource", 1, resource.calls.get());
+	}
+
+	@Test
+	public void testServiceCachesEncodingsApart() throws Exception {
+		CachedResource resource = new CachedResource();
+		Service<Request, Response> service = newService(resource);
+		for (int i = 0; i < 2; i++) {
+			Request gzip = get("/cached/text");
+			gzip.headers().set(HttpHeaders.Names.ACCEPT_ENCODING, "gzip");
+			Response compressed = Await.result(service.apply(gzip));
+			assertEquals("gzip", compressed.headers().get(HttpHeaders.Names.CONTENT_ENCODING));
+			Response plain = Await.result(service.apply(get("/cached/text")));
+			assertNull("plain request got a compressed copy", plain.headers().get(
+					HttpHeaders.Names.CONTENT_ENCODING));
+			assertContentEquals(plain.getContent(), TEXT.getBytes(Charsets.UTF_8));
+		}
+		assertEquals("one call per encoding", 2, resource.calls.get());
+	}
+
+	@Test
+	public void testNotModifiedLeavesCachedCopyAlone() throws Exception {
+		CachedResource resource = new CachedResource();
+		Service<Request, Response> service = newService(resource);
+		Response first = Await.result(service.apply(get("/cached/text")));
+		String etag = first.headers().get(HttpHeaders.Names.ETAG);
+		assertNotNull("no entity tag", etag);
+
+		Request conditional = get("/cached/text");
+		conditional.headers().set(HttpHeaders.Names.IF_NONE_MATCH, etag);
+		Response notModified = Await.result(service.apply(conditional));
+		assertEquals(304, notModified.getStatus().getCode());
+		assertEquals(0, notModified.getContent().readableBytes());
+
+		Response again = Await.result(service.apply(get("/cached/text")));
+		assertEquals(200, again.getStatus().getCode());
+		assertEquals(etag, again.headers().get(HttpHeaders.Names.ETAG));
+		assertContentEquals(again.getContent(), TEXT.getBytes(Charsets.UTF_8));
+		assertEquals("repeat reached the resource", 1, resource.calls.get());
+	}
+
+	private static Service<Request, Response> newService(CachedResource resource) {
+		return ServiceBuilder.get().withExecutor(MoreExecutors.directExecutor())
+				.withResponseCache(new ResponseCache(1 << 20)).withCompression(new CompressionPolicy())
+				.withEntityTags(true).withEndpoint(resource).build();
+	}
+
+	private static Request get(String uri) {
+		return Request.apply(Method.apply("GET"), uri);
+	}
+
+	private static HttpResponse response(String cacheControl) {
+		HttpResponse response = new DefaultHttpResponse(HTTP_1_1, HttpResponseStatus.OK);
+		response.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+		if (cacheControl != null) {
+			response.headers().set(HttpHeaders.Names.CACHE_CONTROL, cacheControl);
+		}
+		response.setContent(ChannelBuffers.wrappedBuffer(BODY));
+		return response;
+	}
+
+	@Path("/cached")
+	public static class CachedResource {
+
+		final AtomicInteger calls = new AtomicInteger();
+
+		@GET
+		@Path("/text")
+		@Produces(MediaType.TEXT_PLAIN)
+		@StaticHeader(name = "Cache-Control", value = "max-age=60")
+		public String text() {
+			this.calls.incrementAndGet();
+			return TEXT;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for adaptive response buffer sizing
+ *
+ * @author denis.rangel
+ */
+public class TestResponseSizePredictor {
+
+	private ResponseSizePredictor predictor = new ResponseSizePredictor();
+
+	@Test
+	public void testStartsSmall() throws Exception {
+		assertEquals(ResponseSizePredictor.MIN_SIZE, predictor.predict());
+	}
+
+	@Test
+	public void testGrowsImmediately() throws Exception {
+		predictor.record(50000);
+		assertEquals(65536, predictor.predict());
+		predictor.record(65536);
+		assertEquals("exact fit shouldn't grow", 65536, predictor.predict());
+	}
+
+	@Test
+	public void testIsBounded() throws Exception {
+		predictor.record(Integer.MAX_VALUE);
+		assertEquals(ResponseSizePredictor.MAX_SIZE, predictor.predict());
+		predictor.record(1);
+		assertEquals(ResponseSizePredictor.MAX_SIZE, predictor.predict());
+	}
+
+	@Test
+	public void testShrinksSlowly() throws Exception {
+		predictor.record(4096);
+		for (int i = 1; i < ResponseSizePredictor.DECAY_AFTER; i++) {
+			predictor.record(100);
+		}
+		assertEquals("shrank too soon", 4096, predictor.predict());
+		predictor.record(100);
+		assertEquals(2048, predictor.predict());
+	}
+
+	@Test
+	public void testLargeResponseResetsDecay() throws Exception {
+		predictor.record(4096);
+		for (int i = 1; i < ResponseSizePredictor.DECAY_AFTER; i++) {
+			predictor.record(100);
+		}
+		predictor.record(4000);
+		predictor.record(100);
+		assertEquals("shrank after a large response", 4096, predictor.predict());
+	}
+
+	@Test
+	public void testRoundUp() throws Exception {
+		assertEquals(ResponseSizePredictor.MIN_SIZE, ResponseSizePredictor.roundUp(0));
+		assertEquals(1024, ResponseSizePredictor.roundUp(1024));
+		assertEquals(2048, ResponseSizePredictor.roundUp(1025));
+	}
+}
@@ -5,27 +5,45 @@ import static com.twitter.finagle.easy.AssertionHelpers.assertHeaderEquals;
 import static org.jboss.netty.handler.codec.http.HttpMethod.GET;
 import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
 import org.jboss.resteasy.core.SynchronousDispatcher;
 import org.jboss.resteasy.spi.HttpRequest;
 import org.jboss.resteasy.spi.HttpResponse;
+import org.junit.Assume;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.twitter.finagle.Service;
 import com.twitter.finagle.easy.util.ServiceUtils;
 import com.twitter.finagle.httpx.Method;
 import com.twitter.finagle.httpx.Request;
 import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+import com.twitter.util.Duration;
 import com.twitter.util.Future;
+import com.twitter.util.Time;
+
+import scala.runtime.BoxedUnit;
 
 /**
  * Tests the paths through the finagle service implementation (this exercises
@@ -37,11 +55,20 @@ import com.twitter.util.Future;
  */
 public class TestResteasyFinagleService {
 
+	/*
+	 * Ceiling on the bytes a recycled GET through the dispatch path allocates
+	 * (the request itself is built beforehand): what it costs today plus some
+	 * headroom. Lower it when a change makes the path leaner; raising it
+	 * should be a decision, not a side effect.
+	 */
+	private static final long ALLOCATION_BUDGET = 16 * 1024;
+
 	// everyone gives their classes the same name, so we are just going
 	// to tough it out with fully-qualified names, to make things nice
 	// and explicit
 	protected Request nettyRequest;
 	protected Response nettyResponse;
+	protected ResteasyFinagleService service;
 
 	protected org.jboss.resteasy.spi.HttpRequest resteasyRequest;
 	protected org.jboss.resteasy.spi.HttpResponse resteasyResponse;
@@ -52,9 +79,14 @@ public class TestResteasyFinagleService {
 		this.nettyRequest = Request.apply(Method.apply("GET"), "/foo");
 
 		this.nettyRequest.headers().set("single", "a");
+		final List<String> seen = Lists.newArrayList();
 		invoke(new Runnable() {
 			@Override
 			public void run() {
+				// the request adapter is recycled once the response is done
+				seen.add(resteasyRequest.getHttpMethod());
+				seen.add(resteasyRequest.getUri().getPath());
+				seen.addAll(resteasyRequest.getHttpHeaders().getRequestHeader("single"));
 				resteasyResponse.setStatus(200);
 				resteasyResponse.getOutputHeaders().putSingle("single", "b");
 				try {
@@ -67,9 +99,9 @@ public class TestResteasyFinagleService {
 		assertNotNull("no input resteasy message", this.resteasyRequest);
 		assertNotNull("no output resteasy message", this.resteasyResponse);
 		assertNotNull("no output netty message", this.nettyResponse);
-		assertEquals("wrong method", "GET", resteasyRequest.getHttpMethod());
-		assertEquals("wrong path", "/foo", resteasyRequest.getUri().getPath());
-		assertHeaderEquals("wrong header", "a", resteasyRequest.getHttpHeaders().getRequestHeader("single"));
+		assertEquals("wrong method", "GET", seen.get(0));
+		assertEquals("wrong path", "/foo", seen.get(1));
+		assertHeaderEquals("wrong header", "a", seen.subList(2, seen.size()));
 		assertEquals("wrong code", 200, nettyResponse.getStatus().getCode());
 		assertHeaderEquals("wrong header", "b", nettyResponse.headers().getAll("single"));
 		assertContentEquals(nettyResponse.getContent(), expectedContent);
@@ -95,6 +127,11 @@ public class TestResteasyFinagleService {
 		assertNotNull("no output netty message", this.nettyResponse);
 		assertEquals("wrong code", 500, nettyResponse.getStatus().getCode());
 		assertEquals("wrong message", error.toString(), nettyResponse.getStatus().getReasonPhrase());
+		// the request can't be measured, but it still has to stop counting
+		for (int i = 0; i < 100 && this.service.getPendingCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals("wrong pending count", 0, this.service.getPendingCount());
 	}
 
 	@Test
@@ -118,6 +155,191 @@ public class TestResteasyFinagleService {
 		assertEquals("wrong message", error.toString(), nettyResponse.getStatus().getReasonPhrase());
 	}
 
+	@Test
+	public void testNonBlockingRouteRunsInline() throws Exception {
+		Service<Request, Response> service = ServiceBuilder.get().withExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				fail("non-blocking route was sent to the executor");
+			}
+		}).withEndpoint(new TestRouteTable.RoutedResource()).build();
+		Future<Response> future = service.apply(Request.apply(Method.apply("GET"), "/routes/fast"));
+		assertTrue("response wasn't computed inline", future.isDefined());
+		assertEquals("wrong code", 200, Await.result(future).getStatus().getCode());
+	}
+
+	@Test
+	public void testAllocationBudget() throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue("allocations can't be measured on this JVM",
+				threads instanceof com.sun.management.ThreadMXBean
+						&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled());
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		ResteasyFinagleService recycling = newDirectService();
+		ResteasyFinagleService allocating = newDirectService();
+		allocating.setReuseAdapters(false);
+		// both warm before either is measured, and the best of a few
+		// alternating rounds counts, so neither gets a warmer JIT
+		warmUp(recycling);
+		warmUp(allocating);
+		long recycled = Long.MAX_VALUE;
+		long allocated = Long.MAX_VALUE;
+		for (int round = 0; round < 3; round++) {
+			recycled = Math.min(recycled, bytesPerRequest(recycling, allocations));
+			allocated = Math.min(allocated, bytesPerRequest(allocating, allocations));
+		}
+		assertTrue(String.format("allocated %d bytes per request, over the budget of %d", recycled,
+				ALLOCATION_BUDGET), recycled <= ALLOCATION_BUDGET);
+		// a recycled adapter saves the adapter itself, its header views and
+		// its attributes; giving any of that up again shows here
+		assertTrue(String.format("recycling adapters allocated %d bytes per request, against %d without", recycled,
+				allocated), recycled < allocated);
+	}
+
+	/*
+	 * Everything runs on this thread, so that's where the allocations are
+	 */
+	private static ResteasyFinagleService newDirectService() {
+		return ServiceBuilder.get().withExecutor(MoreExecutors.directExecutor())
+				.withAccessLog(AccessLog.disabled()).withEndpoint(new TestRouteTable.RoutedResource()).build();
+	}
+
+	private static void warmUp(ResteasyFinagleService service) throws Exception {
+		for (int i = 0; i < 5000; i++) {
+			assertEquals("wrong code", 200, Await.result(service.apply(Request.apply(Method.apply("GET"),
+					"/routes/slow"))).getStatus().getCode());
+		}
+	}
+
+	private static long bytesPerRequest(ResteasyFinagleService service,
+			com.sun.management.ThreadMXBean allocations) throws Exception {
+		Request[] requests = new Request[2000];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = Request.apply(Method.apply("GET"), "/routes/slow");
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes(threadId);
+		for (Request request : requests) {
+			service.apply(request);
+		}
+		return (allocations.getThreadAllocatedBytes(threadId) - before) / requests.length;
+	}
+
+	@Test
+	public void testRejectedRequestIsShed() throws Exception {
+		this.nettyRequest = Request.apply(Method.apply("GET"), "/foo");
+		ResteasyFinagleService service = new ResteasyFinagleService(new MockDispatcher(new Runnable() {
+			@Override
+			public void run() {
+				fail("we should never get here");
+			}
+		}), new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("queue is full");
+			}
+		});
+		this.nettyResponse = Await.result(service.apply(this.nettyRequest));
+		assertNull("unexpected resteasy input", this.resteasyRequest);
+		assertEquals("wrong code", 503, nettyResponse.getStatus().getCode());
+		assertEquals("wrong retry-after", "1", nettyResponse.headers().get("Retry-After"));
+		assertEquals("wrong rejection count", 1, service.getAdmissionControl().getRejectedCount());
+	}
+
+	@Test
+	public void testExpiredRequestIsShed() throws Exception {
+		this.nettyRequest = Request.apply(Method.apply("GET"), "/foo");
+		Executor slowExecutor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				command.run();
+			}
+		};
+		ResteasyFinagleService service = new ResteasyFinagleService(new MockDispatcher(new Runnable() {
+			@Override
+			public void run() {
+				fail("we should never get here");
+			}
+		}), slowExecutor);
+		service.setAdmissionControl(new AdmissionControl(slowExecutor, 1, TimeUnit.MILLISECONDS, 5));
+		this.nettyResponse = Await.result(service.apply(this.nettyRequest));
+		assertNull("unexpected resteasy input", this.resteasyRequest);
+		assertEquals("wrong code", 503, nettyResponse.getStatus().getCode());
+		assertEquals("wrong retry-after", "5", nettyResponse.headers().get("Retry-After"));
+		assertEquals("wrong expiry count", 1, service.getAdmissionControl().getExpiredCount());
+	}
+
+	@Test
+	public void testCloseDrainsPendingRequests() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		ResteasyFinagleService service = new ResteasyFinagleService(new MockDispatcher(new Runnable() {
+			@Override
+			public void run() {
+				awaitQuietly(release);
+			}
+		}), executor);
+		service.setOwnsExecutor(true);
+		Future<Response> pending = service.apply(Request.apply(Method.apply("GET"), "/foo"));
+		Future<BoxedUnit> closed = service.close(Time.now().plus(Duration.fromSeconds(10)));
+		assertTrue("service isn't closing", service.isClosing());
+
+		Response late = Await.result(service.apply(Request.apply(Method.apply("GET"), "/foo")));
+		assertEquals("wrong code", 503, late.getStatus().getCode());
+		assertFalse("closed before draining", closed.isDefined());
+		assertFalse("executor shut down before draining", executor.isShutdown());
+
+		release.countDown();
+		assertTrue("pending request wasn't answered", Await.result(pending).getStatus().getCode() != 503);
+		Await.result(closed);
+		assertEquals("wrong pending count", 0, service.getPendingCount());
+		assertTrue("executor wasn't shut down", executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCloseDeadlineShedsQueuedRequests() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		ResteasyFinagleService service = new ResteasyFinagleService(new MockDispatcher(new Runnable() {
+			@Override
+			public void run() {
+				awaitQuietly(new CountDownLatch(1));
+			}
+		}), executor);
+		service.setOwnsExecutor(true);
+		Future<Response> running = service.apply(Request.apply(Method.apply("GET"), "/foo"));
+		Future<Response> queued = service.apply(Request.apply(Method.apply("GET"), "/foo"));
+		Await.result(service.close(Time.now()));
+		assertEquals("wrong code", 503, Await.result(queued).getStatus().getCode());
+		Await.result(running);
+		assertTrue("executor wasn't stopped", executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCloseLeavesSuppliedExecutorRunning() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		ResteasyFinagleService service = new ResteasyFinagleService(new MockDispatcher(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}), executor);
+		Await.result(service.close(Time.now().plus(Duration.fromSeconds(1))));
+		assertFalse("supplied executor was shut down", executor.isShutdown());
+		executor.shutdown();
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	/*
 	 * Sets up the service plumbing and invokes the supplied runner in the
 	 * middle of the processing chain. We're ignoring generic types because it
@@ -126,9 +348,8 @@ public class TestResteasyFinagleService {
 	@SuppressWarnings("deprecation")
 	protected void invoke(final Runnable runner) {
 		assertNotNull("no input netty message", this.nettyRequest);
-		Service<Request, Response> service = new ResteasyFinagleService(new MockDispatcher(runner),
-				Executors.newSingleThreadExecutor());
-		Future<Response> future = service.apply(this.nettyRequest);
+		this.service = new ResteasyFinagleService(new MockDispatcher(runner), Executors.newSingleThreadExecutor());
+		Future<Response> future = this.service.apply(this.nettyRequest);
 		this.nettyResponse = future.get();
 	}
 
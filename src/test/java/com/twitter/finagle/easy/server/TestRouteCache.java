@@ -0,0 +1,116 @@
+package com.twitter.finagle.easy.server;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.twitter.finagle.easy.util.ServiceUtils;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+
+/**
+ * Tests for remembering how requests were matched
+ *
+ * @author denis.rangel
+ */
+public class TestRouteCache {
+
+	private RouteCache cache;
+	private ResteasyFinagleService service;
+
+	@Before
+	public void setUp() {
+		FinagleDispatcher dispatcher = new FinagleDispatcher(ServiceUtils.getDefaultProviderFactory());
+		dispatcher.getRegistry().addSingletonResource(new CachedResource());
+		this.cache = new RouteCache(16, RouteTable.build(dispatcher.getRegistry()));
+		dispatcher.setRouteCache(this.cache);
+		this.service = new ResteasyFinagleService(dispatcher, Executors.newSingleThreadExecutor());
+	}
+
+	@Test
+	public void testLiteralMatchesAreRemembered() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Response response = call("GET", "/cached/status");
+			assertEquals(200, response.getStatus().getCode());
+			assertContentEquals(response.getContent(), "ok".getBytes(UTF_8));
+		}
+		assertEquals(1, this.cache.size());
+	}
+
+	@Test
+	public void testParameterMatchesAreNot() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Response response = call("GET", "/cached/items/" + i);
+			assertContentEquals(response.getContent(), ("item " + i).getBytes(UTF_8));
+		}
+		assertEquals(0, this.cache.size());
+	}
+
+	@Test
+	public void testFailuresAreRemembered() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			assertEquals(404, call("GET", "/cached/nothing").getStatus().getCode());
+			Response notAllowed = call("DELETE", "/cached/status");
+			assertEquals(405, notAllowed.getStatus().getCode());
+			assertTrue("no Allow header", notAllowed.headers().get("Allow").contains("GET"));
+		}
+		assertEquals(2, this.cache.size());
+	}
+
+	@Test
+	public void testContentTypeParametersAreIgnored() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Request request = Request.apply(Method.apply("POST"), "/cached/status");
+			request.headers().set("Content-Type", "text/plain; charset=UTF-8; boundary=b" + i);
+			Response response = Await.result(this.service.apply(request));
+			assertContentEquals(response.getContent(), "set".getBytes(UTF_8));
+		}
+		assertEquals(1, this.cache.size());
+		assertEquals("text/plain", RouteCache.withoutParameters("text/plain;charset=UTF-8"));
+		assertEquals("text/plain", RouteCache.withoutParameters("text/plain"));
+	}
+
+	private Response call(String method, String uri) throws Exception {
+		return Await.result(this.service.apply(Request.apply(Method.apply(method), uri)));
+	}
+
+	@Path("/cached")
+	public static class CachedResource {
+
+		@GET
+		@Path("/status")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String getStatus() {
+			return "ok";
+		}
+
+		@POST
+		@Path("/status")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String setStatus() {
+			return "set";
+		}
+
+		@GET
+		@Path("/items/{id}")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String getItem(@PathParam("id") String id) {
+			return "item " + id;
+		}
+	}
+}
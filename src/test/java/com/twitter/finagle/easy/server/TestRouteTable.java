@@ -0,0 +1,134 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+
+import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.core.SynchronousDispatcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.twitter.finagle.easy.util.ServiceUtils;
+
+/**
+ * Tests for resolving requests to routes ahead of dispatch
+ *
+ * @author denis.rangel
+ */
+public class TestRouteTable {
+
+	private RouteTable routes;
+
+	@Before
+	public void setUp() {
+		Dispatcher dispatcher = new SynchronousDispatcher(ServiceUtils.getDefaultProviderFactory());
+		dispatcher.getRegistry().addSingletonResource(new RoutedResource());
+		this.routes = RouteTable.build(dispatcher.getRegistry());
+	}
+
+	@Test
+	public void testLiteralRoutes() throws Exception {
+		assertTrue(this.routes.hasNonBlockingRoutes());
+		assertRoute("RoutedResource.fast", true, "GET", "/routes/fast");
+		assertRoute("RoutedResource.slow", false, "GET", "/routes/slow");
+		assertRoute("RoutedResource.create", false, "POST", "/routes/slow");
+	}
+
+	@Test
+	public void testTrailingSlashAndQuery() throws Exception {
+		assertRoute("RoutedResource.fast", true, "GET", "/routes/fast/");
+		assertRoute("RoutedResource.fast", true, "GET", "/routes/fast?k=v&k=%3F");
+	}
+
+	@Test
+	public void testParameterRoutes() throws Exception {
+		assertRoute("RoutedResource.item", true, "GET", "/routes/items/42");
+		// literal segments win over parameters
+		assertRoute("RoutedResource.latest", false, "GET", "/routes/items/latest");
+	}
+
+	@Test
+	public void testUnresolvable() throws Exception {
+		assertNull("unknown path", this.routes.resolve("GET", "/routes/missing"));
+		assertNull("unknown method", this.routes.resolve("DELETE", "/routes/fast"));
+		assertNull("regex template", this.routes.resolve("GET", "/routes/numbers/42"));
+		assertNull("encoded path", this.routes.resolve("GET", "/routes/items/a%2Fb"));
+		assertNull("matrix params", this.routes.resolve("GET", "/routes/fast;k=v"));
+		assertNull("empty segment", this.routes.resolve("GET", "/routes//fast"));
+	}
+
+	@Test
+	public void testSplitPath() throws Exception {
+		assertEquals(Collections.emptyList(), RouteTable.splitPath("/"));
+		assertEquals(Collections.emptyList(), RouteTable.splitPath(""));
+		assertEquals(Arrays.asList("a"), RouteTable.splitPath("/a"));
+		assertEquals(Arrays.asList("a", "b"), RouteTable.splitPath("/a/b/?x=/y"));
+		assertEquals(Arrays.asList("a", "b"), RouteTable.splitPath("a/b#frag"));
+	}
+
+	@Test
+	public void testEmptyTable() throws Exception {
+		assertFalse(RouteTable.EMPTY.hasNonBlockingRoutes());
+		assertNull(RouteTable.EMPTY.resolve("GET", "/routes/fast"));
+	}
+
+	protected void assertRoute(String name, boolean nonBlocking, String method, String uri) {
+		Route route = this.routes.resolve(method, uri);
+		assertEquals("wrong route for " + method + " " + uri, name, route == null ? null : route.getName());
+		assertEquals("wrong mode for " + method + " " + uri, nonBlocking, route.isNonBlocking());
+	}
+
+	@Path("/routes")
+	public static class RoutedResource {
+
+		@GET
+		@Path("/fast")
+		@NonBlocking
+		public String fast() {
+			return "fast";
+		}
+
+		@GET
+		@Path("/slow")
+		public String slow() {
+			return "slow";
+		}
+
+		@POST
+		@Path("/slow")
+		public String create() {
+			return "created";
+		}
+
+		@GET
+		@Path("/items/{id}")
+		@NonBlocking
+		public String item(@PathParam("id") String id) {
+			return id;
+		}
+
+		@GET
+		@Path("/items/latest")
+		public String latest() {
+			return "latest";
+		}
+
+		@GET
+		@Path("/numbers/{n: [0-9]+}")
+		@Produces("text/plain")
+		public String number(@PathParam("n") int n) {
+			return Integer.toString(n);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.twitter.finagle.easy.server;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.util.Await;
+
+/**
+ * Tests for compressed request and response bodies, through a service built
+ * with {@link ServiceBuilder#withCompression(CompressionPolicy)}
+ *
+ * @author denis.rangel
+ */
+public class TestServiceCompression {
+
+	private static final String TEXT = Strings.repeat("compressible text ", 200);
+
+	private final Service<Request, Response> service = newService(0L);
+
+	@Test
+	public void testGzipRequestIsDecoded() throws Exception {
+		Response response = Await.result(this.service.apply(post("gzip", gzip(TEXT))));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertContentEquals(response.getContent(), Integer.toString(TEXT.length()).getBytes(Charsets.UTF_8));
+	}
+
+	@Test
+	public void testDeflateRequestIsDecoded() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out = new DeflaterOutputStream(bytes);
+		out.write(TEXT.getBytes(Charsets.UTF_8));
+		out.close();
+		Response response = Await.result(this.service.apply(post("deflate", bytes.toByteArray())));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertContentEquals(response.getContent(), Integer.toString(TEXT.length()).getBytes(Charsets.UTF_8));
+	}
+
+	@Test
+	public void testUnknownEncodingIsRejected() throws Exception {
+		Response response = Await.result(this.service.apply(post("br", TEXT.getBytes(Charsets.UTF_8))));
+		assertEquals("wrong code", 415, response.getStatus().getCode());
+	}
+
+	@Test
+	public void testCorruptBodyIsRejected() throws Exception {
+		Response response = Await.result(this.service.apply(post("gzip", TEXT.getBytes(Charsets.UTF_8))));
+		assertEquals("wrong code", 400, response.getStatus().getCode());
+	}
+
+	@Test
+	public void testDecodedBodyIsLimited() throws Exception {
+		// a few dozen bytes on the wire, thousands once decoded
+		byte[] compressed = gzip(TEXT);
+		assertTrue("body didn't compress", compressed.length < 256);
+		Response response = Await.result(newService(256L).apply(post("gzip", compressed)));
+		assertEquals("wrong code", 413, response.getStatus().getCode());
+	}
+
+	@Test
+	public void testResponseIsCompressedWhenAccepted() throws Exception {
+		Request request = Request.apply(Method.apply("GET"), "/compressed/text");
+		request.headers().set("Accept-Encoding", "deflate;q=0.5, gzip");
+		Response response = Await.result(this.service.apply(request));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertEquals("wrong encoding", "gzip", response.headers().get("Content-Encoding"));
+		assertEquals("wrong vary", "Accept-Encoding", response.headers().get("Vary"));
+		assertArrayEquals("wrong body", TEXT.getBytes(Charsets.UTF_8), gunzip(response.getContent()));
+	}
+
+	@Test
+	public void testResponseIsPlainOtherwise() throws Exception {
+		Response response = Await.result(this.service.apply(Request.apply(Method.apply("GET"), "/compressed/text")));
+		assertEquals("wrong code", 200, response.getStatus().getCode());
+		assertNull("unexpected encoding", response.headers().get("Content-Encoding"));
+		assertContentEquals(response.getContent(), TEXT.getBytes(Charsets.UTF_8));
+	}
+
+	private static Service<Request, Response> newService(long maxRequestBodySize) {
+		return ServiceBuilder.get().withExecutor(MoreExecutors.directExecutor())
+				.withCompression(new CompressionPolicy()).withMaxRequestBodySize(maxRequestBodySize)
+				.withEndpoint(new CompressedResource()).build();
+	}
+
+	private static Request post(String encoding, byte[] body) {
+		Request request = Request.apply(Method.apply("POST"), "/compressed/length");
+		request.headers().set("Content-Type", MediaType.TEXT_PLAIN);
+		request.headers().set("Content-Encoding", encoding);
+		request.setContent(ChannelBuffers.wrappedBuffer(body));
+		return request;
+	}
+
+	private static byte[] gzip(String text) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out = new GZIPOutputStream(bytes);
+		out.write(text.getBytes(Charsets.UTF_8));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static byte[] gunzip(ChannelBuffer content) throws Exception {
+		byte[] compressed = new byte[content.readableBytes()];
+		content.getBytes(content.readerIndex(), compressed);
+		return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+	}
+
+	@Path("/compressed")
+	public static class CompressedResource {
+
+		@POST
+		@Path("/length")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String length(String body) {
+			return Integer.toString(body.length());
+		}
+
+		@GET
+		@Path("/text")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String text() {
+			return TEXT;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.finagle.stats.InMemoryStatsReceiver;
+import com.twitter.util.Await;
+
+import scala.collection.JavaConversions;
+import scala.collection.Seq;
+
+/**
+ * Tests for request metrics
+ *
+ * @author denis.rangel
+ */
+public class TestServiceStats {
+
+	private InMemoryStatsReceiver receiver;
+	private Service<Request, Response> service;
+
+	@Before
+	public void setUp() {
+		this.receiver = new InMemoryStatsReceiver();
+		this.service = ServiceBuilder.get().withThreadPoolSize(1).withEndpoint(new ItemResource())
+				.withStatsReceiver(this.receiver).build();
+	}
+
+	@Test
+	public void testPerRouteCounters() throws Exception {
+		Await.result(this.service.apply(get("/stats/items/1")));
+		Await.result(this.service.apply(get("/stats/items/2")));
+		Await.result(this.service.apply(get("/stats/items/missing")));
+		assertEquals(3, counter("routes", "ItemResource.getItem", "requests"));
+		assertEquals(2, counter("routes", "ItemResource.getItem", "status", "2XX"));
+		assertEquals(1, counter("routes", "ItemResource.getItem", "status", "4XX"));
+		assertEquals(3, samples("routes", "ItemResource.getItem", "latency_ms"));
+		assertEquals(3, samples("routes", "ItemResource.getItem", "queue_wait_ms"));
+		assertEquals(3, samples("routes", "ItemResource.getItem", "dispatch_ms"));
+		assertEquals(3, samples("routes", "ItemResource.getItem", "serialization_ms"));
+	}
+
+	@Test
+	public void testUnroutedRequests() throws Exception {
+		Response response = Await.result(this.service.apply(get("/nowhere")));
+		assertEquals(404, response.getStatus().getCode());
+		assertEquals(1, counter("unrouted", "requests"));
+	}
+
+	@Test
+	public void testExecutorGauges() {
+		assertTrue("no active gauge", this.receiver.gauges().contains(name("executor", "active")));
+		assertTrue("no queued gauge", this.receiver.gauges().contains(name("executor", "queued")));
+	}
+
+	private int counter(String... name) {
+		return ((Number) this.receiver.counters().apply(name(name))).intValue();
+	}
+
+	private int samples(String... name) {
+		return this.receiver.stats().apply(name(name)).size();
+	}
+
+	private static Seq<String> name(String... name) {
+		return JavaConversions.asScalaBuffer(Arrays.asList(name));
+	}
+
+	private static Request get(String uri) {
+		return Request.apply(Method.apply("GET"), uri);
+	}
+
+	@Path("/stats/items")
+	public static class ItemResource {
+
+		@GET
+		@Path("/{id}")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String getItem(@PathParam("id") String id) {
+			if (id.equals("missing")) {
+				throw new NotFoundException();
+			}
+			return "item " + id;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * Tests for spilling request bodies to disk
+ *
+ * @author denis.rangel
+ */
+public class TestSpillingInputStream {
+
+	private static final byte[] BODY = new byte[10000];
+
+	static {
+		new Random(11).nextBytes(BODY);
+	}
+
+	private File directory;
+
+	@Before
+	public void setUp() {
+		this.directory = Files.createTempDir();
+	}
+
+	@After
+	public void tearDown() {
+		this.directory.delete();
+	}
+
+	@Test
+	public void testSmallBodyStaysInMemory() throws Exception {
+		SpillingInputStream in = new SpillingInputStream(new ByteArrayInputStream(BODY), BODY.length, this.directory);
+		assertArrayEquals(BODY, ByteStreams.toByteArray(in));
+		assertFalse("spilled", in.isSpilled());
+		assertEquals(0, this.directory.list().length);
+	}
+
+	@Test
+	public void testBodyBelowLargeThresholdStaysInMemory() throws Exception {
+		// the in-memory part grows past its initial size, but never spills
+		SpillingInputStream in = new SpillingInputStream(new ByteArrayInputStream(BODY), 64 * 1024 * 1024,
+				this.directory);
+		assertArrayEquals(BODY, ByteStreams.toByteArray(in));
+		assertFalse("spilled", in.isSpilled());
+		assertEquals(0, this.directory.list().length);
+	}
+
+	@Test
+	public void testLargeBodyIsSpilled() throws Exception {
+		SpillingInputStream in = new SpillingInputStream(new ByteArrayInputStream(BODY), 1024, this.directory);
+		assertEquals(BODY[0] & 0xff, in.read());
+		assertTrue("not spilled", in.isSpilled());
+		assertEquals(1, this.directory.list().length);
+		byte[] rest = ByteStreams.toByteArray(in);
+		assertEquals(BODY.length - 1, rest.length);
+		assertEquals(BODY[BODY.length - 1], rest[rest.length - 1]);
+		assertEquals("spill file left behind", 0, this.directory.list().length);
+	}
+
+	@Test
+	public void testCloseDeletesSpillFile() throws Exception {
+		SpillingInputStream in = new SpillingInputStream(new ByteArrayInputStream(BODY), 16, this.directory);
+		in.read(new byte[32]);
+		assertEquals(1, this.directory.list().length);
+		in.close();
+		assertEquals(0, this.directory.list().length);
+	}
+}
@@ -0,0 +1,128 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for running requests on virtual threads. The limits are tested with
+ * platform threads, so they run on any JVM.
+ *
+ * @author denis.rangel
+ */
+public class TestVirtualThreadExecutor {
+
+	@Test
+	public void testConcurrencyIsCapped() throws Exception {
+		VirtualThreadExecutor executor = new VirtualThreadExecutor(Executors.defaultThreadFactory(), 2, 0);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger completed = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					awaitQuietly(release);
+					completed.incrementAndGet();
+				}
+			});
+		}
+		waitFor(executor, 2, 3);
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(5, completed.get());
+	}
+
+	@Test
+	public void testFullQueueRejects() throws Exception {
+		VirtualThreadExecutor executor = new VirtualThreadExecutor(Executors.defaultThreadFactory(), 1, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable blocked = new Runnable() {
+			@Override
+			public void run() {
+				awaitQuietly(release);
+			}
+		};
+		executor.execute(blocked);
+		executor.execute(blocked);
+		waitFor(executor, 1, 1);
+		try {
+			executor.execute(blocked);
+			fail("task was accepted by a full executor");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testShutdownNowReturnsWaitingTasks() throws Exception {
+		VirtualThreadExecutor executor = new VirtualThreadExecutor(Executors.defaultThreadFactory(), 1, 0);
+		Runnable blocked = new Runnable() {
+			@Override
+			public void run() {
+				awaitQuietly(new CountDownLatch(1));
+			}
+		};
+		executor.execute(blocked);
+		executor.execute(blocked);
+		waitFor(executor, 1, 1);
+		List<Runnable> pending = executor.shutdownNow();
+		assertEquals(1, pending.size());
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testVirtualThreads() throws Exception {
+		Assume.assumeTrue("no virtual threads on this JVM", VirtualThreadExecutor.isSupported());
+		VirtualThreadExecutor executor = new VirtualThreadExecutor(10000, 0);
+		final CountDownLatch done = new CountDownLatch(10000);
+		for (int i = 0; i < 10000; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				}
+			});
+		}
+		// ten thousand sleeping platform threads would take far longer
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+	}
+
+	/*
+	 * Waits for the tasks to settle into running and waiting
+	 */
+	private static void waitFor(VirtualThreadExecutor executor, int active, int queued) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (executor.getActiveCount() != active || executor.getQueueDepth() != queued) {
+			assertTrue("executor never settled", System.nanoTime() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.twitter.finagle.easy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.twitter.finagle.Service;
+import com.twitter.finagle.httpx.Method;
+import com.twitter.finagle.httpx.Request;
+import com.twitter.finagle.httpx.Response;
+import com.twitter.finagle.stats.InMemoryStatsReceiver;
+
+import scala.collection.JavaConversions;
+
+/**
+ * Tests for warming services up before they're announced
+ *
+ * @author denis.rangel
+ */
+public class TestWarmup {
+
+	@Test
+	public void testRunsEveryIteration() {
+		WarmResource resource = new WarmResource();
+		final List<Warmup.Report> progress = Lists.newArrayList();
+		Warmup warmup = new Warmup().withRequest("GET", "/warm/ping").withMaxIterations(20).withStability(0, 0.0)
+				.withListener(new Warmup.Listener() {
+					@Override
+					public void onProgress(Warmup.Report report) {
+						progress.add(report);
+					}
+				});
+		Warmup.Report report = warmup.run(newService(resource));
+		assertEquals(20, report.getIterations());
+		assertEquals(0, report.getFailures());
+		assertFalse(report.isStable());
+		assertEquals(20, progress.size());
+		assertEquals(20, resource.pings.get());
+	}
+
+	@Test
+	public void testReplaysRecordedRequests() {
+		WarmResource resource = new WarmResource();
+		Request sample = Request.apply(Method.apply("POST"), "/warm/echo");
+		sample.headers().set("Content-Type", MediaType.TEXT_PLAIN);
+		sample.setContent(ChannelBuffers.wrappedBuffer("hello".getBytes()));
+		new Warmup().withRequest(sample).withMaxIterations(3).withStability(0, 0.0)
+				.run(newService(resource));
+		assertEquals(3, resource.echoes.get());
+		assertEquals(15, resource.echoedBytes.get());
+	}
+
+	@Test
+	public void testCountsFailures() {
+		Warmup.Report report = new Warmup().withRequest("GET", "/warm/broken").withMaxIterations(5)
+				.withStability(0, 0.0).run(newService(new WarmResource()));
+		assertEquals(5, report.getFailures());
+	}
+
+	@Test
+	public void testStopsOnceStable() {
+		Warmup.Report report = new Warmup().withRequest("GET", "/warm/ping").withMaxIterations(100000)
+				.withStability(5, 100.0).run(newService(new WarmResource()));
+		assertTrue(report.isStable());
+		assertEquals(10, report.getIterations());
+	}
+
+	@Test
+	public void testBuilderKeepsWarmupOutOfStats() {
+		WarmResource resource = new WarmResource();
+		InMemoryStatsReceiver receiver = new InMemoryStatsReceiver();
+		ServiceBuilder.get().withEndpoint(resource).withStatsReceiver(receiver)
+				.withWarmup(new Warmup().withRequest("GET", "/warm/ping").withMaxIterations(10)).build();
+		assertEquals(10, resource.pings.get());
+		assertFalse(receiver.counters().contains(
+				JavaConversions.asScalaBuffer(Lists.newArrayList("routes", "WarmResource.ping", "requests"))));
+	}
+
+	private static Service<Request, Response> newService(Object resource) {
+		return ServiceBuilder.get().withEndpoint(resource).build();
+	}
+
+	@Path("/warm")
+	public static class WarmResource {
+
+		final AtomicInteger pings = new AtomicInteger();
+		final AtomicInteger echoes = new AtomicInteger();
+		final AtomicInteger echoedBytes = new AtomicInteger();
+
+		@GET
+		@Path("ping")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String ping() {
+			this.pings.incrementAndGet();
+			return "pong";
+		}
+
+		@POST
+		@Path("echo")
+		@Consumes(MediaType.TEXT_PLAIN)
+		@Produces(MediaType.TEXT_PLAIN)
+		public String echo(String body) {
+			this.echoes.incrementAndGet();
+			this.echoedBytes.addAndGet(body.length());
+			return body;
+		}
+
+		@GET
+		@Path("broken")
+		public String broken() {
+			throw new IllegalStateException("broken");
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.twitter.finagle.easy.util;
+
+import static com.twitter.finagle.easy.AssertionHelpers.assertContentEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+/**
+ * Tests for segmented output and segment pooling
+ *
+ * @author denis.rangel
+ */
+public class TestSegmentedOutputStream {
+
+	private SegmentPool pool = new SegmentPool(16, 4, false);
+
+	@Test
+	public void testWritesSpanSegments() throws Exception {
+		byte[] bytes = new byte[50];
+		new Random(42).nextBytes(bytes);
+		SegmentedOutputStream out = new SegmentedOutputStream(this.pool);
+		out.write(bytes[0]);
+		out.write(bytes, 1, 30);
+		out.write(bytes, 31, 19);
+		assertEquals(50, out.size());
+		assertEquals("wrong segment count", 4, this.pool.getAllocatedCount());
+		assertContentEquals(out.toChannelBuffer(), bytes);
+	}
+
+	@Test
+	public void testEmptyStream() throws Exception {
+		SegmentedOutputStream out = new SegmentedOutputStream(this.pool);
+		assertSame(ChannelBuffers.EMPTY_BUFFER, out.toChannelBuffer());
+		assertEquals(0, this.pool.getAllocatedCount());
+	}
+
+	@Test
+	public void testReleasedSegmentsAreReused() throws Exception {
+		SegmentedOutputStream out = new SegmentedOutputStream(this.pool);
+		out.write(new byte[40], 0, 40);
+		out.release();
+		assertEquals(0, out.size());
+		assertEquals(3, this.pool.getPooledCount());
+
+		SegmentedOutputStream next = new SegmentedOutputStream(this.pool);
+		next.write("reused".getBytes(), 0, 6);
+		assertContentEquals(next.toChannelBuffer(), "reused".getBytes());
+		assertEquals("allocated instead of reusing", 3, this.pool.getAllocatedCount());
+	}
+
+	@Test
+	public void testPoolIsBounded() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			this.pool.release(ByteBuffer.allocate(16));
+		}
+		assertEquals(4, this.pool.getPooledCount());
+		this.pool.release(ByteBuffer.allocate(8));
+		assertEquals("kept a foreign segment", 4, this.pool.getPooledCount());
+	}
+
+	@Test
+	public void testUnpooled() throws Exception {
+		SegmentPool unpooled = SegmentPool.unpooled(16);
+		unpooled.release(unpooled.acquire());
+		assertEquals(0, unpooled.getPooledCount());
+	}
+}
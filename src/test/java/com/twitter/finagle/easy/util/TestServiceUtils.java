@@ -10,23 +10,33 @@ import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_LANGUA
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.lang.annotation.Annotation;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.UriInfo;
 
 //import com.twitter.finagle.httpx.Request.MockRequest;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.twitter.finagle.easy.server.ServiceBuilder;
 import com.twitter.finagle.httpx.Method;
 import com.twitter.finagle.httpx.Request;
 
@@ -42,6 +52,31 @@ public class TestServiceUtils {
 
 	public static final String JSON_UTF8 = APPLICATION_JSON + ";charset=UTF-8";
 
+	@Test
+	public void testNewProviderFactory() throws Exception {
+		ResteasyProviderFactory factory = ServiceUtils.newProviderFactory(ServiceUtils.CORE_PROVIDERS);
+		assertNotSame(ResteasyProviderFactory.getInstance(), factory);
+		assertNotNull("no writer for strings", factory.getMessageBodyWriter(String.class, String.class,
+				new Annotation[0], MediaType.TEXT_PLAIN_TYPE));
+		assertNull("unexpected JSON writer", factory.getMessageBodyWriter(Map.class, Map.class,
+				new Annotation[0], APPLICATION_JSON_TYPE));
+	}
+
+	@Test
+	public void testServicesLeaveFactoryAlone() throws Exception {
+		ResteasyProviderFactory factory = ServiceUtils.newProviderFactory(ServiceUtils.CORE_PROVIDERS);
+		int requestFilters = factory.getContainerRequestFilterRegistry().preMatch().length;
+		int responseFilters = factory.getContainerResponseFilterRegistry().postMatch(null, null).length;
+		for (int i = 0; i < 2; i++) {
+			ServiceBuilder.get().withProviderFactory(factory).withEntityTags(true)
+					.withExecutor(MoreExecutors.directExecutor()).withEndpoint(new PingResource()).build();
+		}
+		assertEquals("service registered a request filter in the base factory", requestFilters, factory
+				.getContainerRequestFilterRegistry().preMatch().length);
+		assertEquals("service registered a response filter in the base factory", responseFilters, factory
+				.getContainerResponseFilterRegistry().postMatch(null, null).length);
+	}
+
 	@Test
 	public void testNewMultiValuedMap() throws Exception {
 		MultivaluedMap<String, String> actual = ServiceUtils.newMultiValuedMap("single-value", "a", "multi-value",
@@ -138,6 +173,15 @@ public class TestServiceUtils {
 				ImmutableMap.<String, Object> of("k", "?"), new String[] { "a" });
 	}
 
+	@Path("/ping")
+	public static class PingResource {
+
+		@GET
+		public String ping() {
+			return "pong";
+		}
+	}
+
 	protected void assertIsMutable(String key, List<String> list) {
 		assertNotNull(key + " is null", list);
 		try {